@@ -0,0 +1,108 @@
+package com.ikarus.solartaxi;
+
+/**
+ * DEBUG: fails as soon as an iteration of a game thread allocates in steady state, GC pauses
+ * drop frames on older devices. Code that allocates by design (a new level, a passenger
+ * spawning, the credits text, arrays growing) marks the iteration with {@link #allowAllocation()},
+ * any other allocation throws.<br>
+ * Off unless a {@link Counter} is set with {@link #enable(Counter)} before the game threads
+ * start, {@link GameActivity} does that for debug builds started with its
+ * CHECK_ALLOCATIONS extra. Plain Java, the counter is the only Android part.
+ * One instance per thread.
+ *
+ * @author Nikolaus Leopold
+ */
+public class AllocationCheck {
+
+	/**
+	 * Allocation count of the calling thread, e.g. of android.os.Debug
+	 */
+	public interface Counter {
+
+		/**
+		 * Start counting, called once per checked thread
+		 */
+		void start();
+
+		/**
+		 * Set the count of the calling thread to 0
+		 */
+		void reset();
+
+		/**
+		 * @return allocations of the calling thread since the last reset
+		 */
+		int get();
+	}
+
+	// null while the check is off
+	private static volatile Counter counter;
+
+	// check of the iteration running on the calling thread
+	private final static ThreadLocal<AllocationCheck> current = new ThreadLocal<AllocationCheck>();
+
+	private final String name;
+	private Counter started;
+	private int iterations;
+	private boolean allowed;
+
+	/**
+	 * Switch the check on or off for threads starting afterwards
+	 * @param counter counter of the platform, null to switch the check off
+	 */
+	public static void enable(Counter counter) {
+		AllocationCheck.counter = counter;
+	}
+
+	/**
+	 * Mark the current iteration of the calling thread as allocating by design, does nothing
+	 * if the check is off or the thread is not checked
+	 */
+	public static void allowAllocation() {
+		if (counter == null) {
+			return;
+		}
+		AllocationCheck check = current.get();
+		if (check != null) {
+			check.allowed = true;
+		}
+	}
+
+	/**
+	 * @param name name of the checked loop, e.g. "frame" or "tick", for the error message
+	 */
+	public AllocationCheck(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Start counting the allocations of an iteration of the loop, call on the checked thread
+	 */
+	public void begin() {
+		if (counter == null) {
+			return;
+		}
+		if (started == null) {
+			started = counter;
+			started.start();
+			current.set(this);
+		}
+		allowed = false;
+		started.reset();
+	}
+
+	/**
+	 * @param steady whether the game is running, allocations while paused or in help mode are allowed
+	 * @throws IllegalStateException if the iteration allocated without being marked
+	 */
+	public void end(boolean steady) {
+		if (started == null) {
+			return;
+		}
+		++iterations;
+		int count = started.get();
+		if (steady && !allowed && count > 0) {
+			throw new IllegalStateException(count + " allocations in " + name + " " + iterations);
+		}
+	}
+}
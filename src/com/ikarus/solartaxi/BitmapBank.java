@@ -5,7 +5,9 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
 /**
- * Static class to load bitmaps and manage references to them
+ * Static class to load bitmaps and manage references to them.
+ * Frames of the sprite sheets are cut out once when loading, getters never allocate,
+ * which is checked after loading while allocations are checked ({@link AllocationCheck}).
  * 
  * @author Nikolaus Leopold
  */
@@ -18,6 +20,15 @@ public class BitmapBank {
 	private static Bitmap passenger_moognu, passenger_weirdo;
 	private static Bitmap help_arrow;
 
+	// taxi bitmap state of each frame in the taxi sprite sheet
+	private final static int[] TAXI_STATES = {00, 01, 10, 11, 100};
+
+	// battery charge above which the next frame of the battery sprite sheet is shown
+	private final static double[] BATTERY_LEVELS = {0.12, 0.25, 0.37, 0.5, 0.63, 0.75, 0.87};
+
+	// frames cut out of the sprite sheets
+	private static Bitmap[] taxiFrames, batteryFrames;
+
 	public static void init(Resources res) {
 		taxi_sprites = BitmapFactory.decodeResource(res, R.drawable.taxi_sprites);
 		taxi_explode = BitmapFactory.decodeResource(res, R.drawable.taxi_explode);
@@ -39,6 +50,8 @@ public class BitmapBank {
 		
 		help_arrow = BitmapFactory.decodeResource(res, R.drawable.help_arrow);
 		
+		sliceFrames();
+		checkGetters();
 	}
 
 	/**
@@ -49,32 +62,21 @@ public class BitmapBank {
 	 * 10   ... left thruster enabled<br>
 	 * 11   ... both thrusters enabled<br>
 	 * 100  ... no thrust, legs extended<br>
-	 * -1   ... taxi explode
+	 * 1100 ... shield<br>
+	 * -1   ... taxi explode<br>
+	 * Frames are sliced once in init(), does not allocate.
 	 * 
 	 * @param bitmapState current bitmap state code
 	 * @return the corresponding bitmap
 	 */
 	public static Bitmap getTaxiBitmap(int bitmapState) {
 		
-		int frame_wid = (int)Math.floor(taxi_sprites.getWidth()/5.0);
-		int frame_hgt = taxi_sprites.getHeight();
-		
-		if (bitmapState == 00) {
-			return Bitmap.createBitmap(taxi_sprites, 0*frame_wid, 0, frame_wid, frame_hgt);
-		} else if (bitmapState == 01) {
-			return Bitmap.createBitmap(taxi_sprites, 1*frame_wid, 0, frame_wid, frame_hgt);
-		} else if (bitmapState == 10) {
-			return Bitmap.createBitmap(taxi_sprites, 2*frame_wid, 0, frame_wid, frame_hgt);
-		} else if (bitmapState == 11) {
-			return Bitmap.createBitmap(taxi_sprites, 3*frame_wid, 0, frame_wid, frame_hgt);
-		} else if (bitmapState == 100) {
-			return Bitmap.createBitmap(taxi_sprites, 4*frame_wid, 0, frame_wid, frame_hgt);
-		} else if (bitmapState == 1100) {
+		if (bitmapState == 1100) {
 			return taxi_shield;
 		} else if (bitmapState == -1) {
 			return taxi_explode;
 		} else {
-			return Bitmap.createBitmap(taxi_sprites, 0*frame_wid, 0, frame_wid, frame_hgt);
+			return taxiFrames[taxiFrame(bitmapState)];
 		}
 	}
 
@@ -100,33 +102,14 @@ public class BitmapBank {
 	}
 
 	/**
+	 * Frames are sliced once in init(), does not allocate.
 	 * @param d the charge amount of the battery
 	 * @return Bitmap used for taxi battery
 	 */
 	public static Bitmap getBatteryBitmap(double d) {
-		
-		int frame_wid = (int)Math.floor(battery.getWidth()/4.0);
-		int frame_hgt = (int)Math.floor(battery.getHeight()/2.0);
-
-		if (d > 0.87) {
-			return Bitmap.createBitmap(battery, 3*frame_wid, 0, frame_wid, frame_hgt);
-		} else if (d > 0.75) {
-			return Bitmap.createBitmap(battery, 3*frame_wid, frame_hgt, frame_wid, frame_hgt);
-		} else if (d > 0.63) {
-			return Bitmap.createBitmap(battery, 2*frame_wid, 0, frame_wid, frame_hgt);
-		} else if (d > 0.5) {
-			return Bitmap.createBitmap(battery, 2*frame_wid, frame_hgt, frame_wid, frame_hgt);
-		} else if (d > 0.37) {
-			return Bitmap.createBitmap(battery, 1*frame_wid, 0, frame_wid, frame_hgt);
-		} else if (d > 0.25) {
-			return Bitmap.createBitmap(battery, 1*frame_wid, frame_hgt, frame_wid, frame_hgt);
-		} else if (d > 0.12) {
-			return Bitmap.createBitmap(battery, 0*frame_wid, 0, frame_wid, frame_hgt);
-		} else {
-			return Bitmap.createBitmap(battery, 0*frame_wid, frame_hgt, frame_wid, frame_hgt);
-		}
+		return batteryFrames[batteryFrame(d)];
 	}
-	
+
 	public static Bitmap getPauseBtnBitmap(int on) {
 		return on == 0 ? btn_pauseBM : btn_unpauseBM;
 	}
@@ -142,4 +125,77 @@ public class BitmapBank {
 	public static Bitmap getHelpArrow() {
 		return help_arrow;
 	}
+
+	/**
+	 * @return index of the taxi frame of a bitmap state, frame 0 for unknown codes
+	 */
+	private static int taxiFrame(int bitmapState) {
+		for (int i = 0; i < TAXI_STATES.length; i++) {
+			if (TAXI_STATES[i] == bitmapState) {
+				return i;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return index of the battery frame of a charge amount, 0 is empty
+	 */
+	private static int batteryFrame(double d) {
+		int frame = 0;
+		while (frame < BATTERY_LEVELS.length && d > BATTERY_LEVELS[frame]) {
+			++frame;
+		}
+		return frame;
+	}
+
+	/**
+	 * Cut frames out of the sprite sheets
+	 */
+	private static void sliceFrames() {
+		int frame_wid = (int)Math.floor(taxi_sprites.getWidth()/5.0);
+		int frame_hgt = taxi_sprites.getHeight();
+
+		// frames are side by side in the order of TAXI_STATES
+		taxiFrames = new Bitmap[TAXI_STATES.length];
+		for (int i = 0; i < TAXI_STATES.length; i++) {
+			taxiFrames[i] = Bitmap.createBitmap(taxi_sprites, i*frame_wid, 0, frame_wid, frame_hgt);
+		}
+
+		frame_wid = (int)Math.floor(battery.getWidth()/4.0);
+		frame_hgt = (int)Math.floor(battery.getHeight()/2.0);
+
+		// 4 columns of 2 levels, the fuller one on top, emptiest in the lower left
+		batteryFrames = new Bitmap[BATTERY_LEVELS.length + 1];
+		for (int i = 0; i < batteryFrames.length; i++) {
+			int left = (i/2)*frame_wid, top = (i % 2 == 1 ? 0 : 1)*frame_hgt;
+			batteryFrames[i] = Bitmap.createBitmap(battery, left, top, frame_wid, frame_hgt);
+		}
+	}
+
+	/**
+	 * DEBUG: call every getter used per frame with all its arguments, fails if one allocates.
+	 * Does nothing unless allocations are checked.
+	 */
+	private static void checkGetters() {
+		AllocationCheck check = new AllocationCheck("bitmap getters");
+		check.begin();
+
+		for (int i = 0; i < TAXI_STATES.length; i++) {
+			getTaxiBitmap(TAXI_STATES[i]);
+		}
+		getTaxiBitmap(1100);
+		getTaxiBitmap(-1);
+		for (int i = 0; i <= 20; i++) {
+			getBatteryBitmap(i/20.0);
+		}
+		getPauseBtnBitmap(0);
+		getPauseBtnBitmap(1);
+		getMusicBtnBitmap(0);
+		getMusicBtnBitmap(1);
+		getPassengerBitmap(1);
+		getPassengerBitmap(2);
+
+		check.end(true);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,224 @@
+package com.ikarus.solartaxi;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RadialGradient;
+import android.graphics.RectF;
+import android.graphics.Shader;
+
+import com.ikarus.solartaxi.celestialbodies.CelestialBody;
+import com.ikarus.solartaxi.celestialbodies.Sun;
+import com.ikarus.solartaxi.render.Renderer;
+
+/**
+ * Prerendered sprites of planets and suns, planets are shaded and suns have a glow.
+ * A sprite is rendered once per surface color, body type and level of detail, which is
+ * the sprite size as a power of two just above the size on screen. Large bodies use the
+ * largest sprite scaled up. Sprites are kept under a memory budget, the least recently
+ * used ones are dropped first.<br>
+ * Lookups don't allocate, only rendering a missing sprite does.
+ *
+ * @author Nikolaus Leopold
+ */
+public class BodySpriteCache {
+
+	// sprite edge length range in pixels, smallest and largest level of detail
+	private final static int MIN_SPRITE_SIZE = 16;
+	private final static int MAX_SPRITE_SIZE = 512;
+
+	// bytes of all cached sprites, and most sprites kept regardless of size
+	private final static int MEMORY_BUDGET = 6*1024*1024;
+	private final static int MAX_SPRITES = 64;
+
+	// glow around suns, in sun radii
+	private final static float SUN_GLOW = 1.3f;
+
+	// cached sprites, unused slots have a null sprite
+	private final long[] keys = new long[MAX_SPRITES];
+	private final Bitmap[] sprites = new Bitmap[MAX_SPRITES];
+	private final int[] lastUsed = new int[MAX_SPRITES];
+	private int usedBytes, frame;
+
+	// sprites rendered since the cache was created, for statistics
+	private int rendered;
+
+	private final Paint spritePaint, renderPaint;
+	private final RectF dst = new RectF();
+
+	/**
+	 * Constructor, the cache is empty
+	 */
+	public BodySpriteCache() {
+		spritePaint = new Paint();
+		spritePaint.setFilterBitmap(true);
+
+		renderPaint = new Paint();
+		renderPaint.setAntiAlias(true);
+	}
+
+	/**
+	 * Start a new frame, sprites used in the current frame are not dropped
+	 */
+	public void nextFrame() {
+		++frame;
+	}
+
+	/**
+	 * Draw a body centered on a position, a sprite is rendered if none is cached
+	 * @param renderer renderer to draw with
+	 * @param body planet or sun to draw
+	 * @param x world x-coordinate of the body center, e.g. from a snapshot
+	 * @param y world y-coordinate of the body center
+	 * @param scale on screen pixels per world unit, picks the level of detail
+	 */
+	public void draw(Renderer renderer, CelestialBody body, float x, float y, float scale) {
+		float extent = getExtent(body);
+		Bitmap sprite = sprite(body, levelOfDetail(2*extent*scale));
+
+		dst.set(x - extent, y - extent, x + extent, y + extent);
+		renderer.drawBitmap(sprite, dst, spritePaint);
+	}
+
+	/**
+	 * @param filtering whether sprites are filtered when scaled, off is faster but blockier
+	 */
+	public void setFiltering(boolean filtering) {
+		spritePaint.setFilterBitmap(filtering);
+	}
+
+	/**
+	 * @param body planet or sun
+	 * @return radius of the area covered by the sprite of the body, larger than the body for the glow of suns
+	 */
+	public static float getExtent(CelestialBody body) {
+		return body instanceof Sun ? body.getRadius()*SUN_GLOW : body.getRadius();
+	}
+
+	/**
+	 * Drop all sprites, e.g. when a new level starts
+	 */
+	public void clear() {
+		for (int i = 0; i < MAX_SPRITES; i++) {
+			drop(i);
+		}
+	}
+
+	/**
+	 * @return bytes used by the cached sprites
+	 */
+	public int getUsedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * @return number of sprites rendered since the cache was created
+	 */
+	public int getRenderedCount() {
+		return rendered;
+	}
+
+	/**
+	 * @return sprite edge length for a size on screen, a power of two within the sprite size range
+	 */
+	private static int levelOfDetail(float size) {
+		int lod = MIN_SPRITE_SIZE;
+		while (lod < size && lod < MAX_SPRITE_SIZE) {
+			lod *= 2;
+		}
+		return lod;
+	}
+
+	/**
+	 * @return cached sprite of the body in the given size, rendered if missing
+	 */
+	private Bitmap sprite(CelestialBody body, int size) {
+		long key = ((long) body.getSurfaceColor() << 32) | ((long) size << 1) | (body instanceof Sun ? 1 : 0);
+
+		int free = -1;
+		for (int i = 0; i < MAX_SPRITES; i++) {
+			if (sprites[i] == null) {
+				free = free == -1 ? i : free;
+			} else if (keys[i] == key) {
+				lastUsed[i] = frame;
+				return sprites[i];
+			}
+		}
+
+		// make room, least recently used first, sprites of this frame stay
+		int bytes = size*size*4;
+		while (free == -1 || usedBytes + bytes > MEMORY_BUDGET) {
+			int oldest = -1;
+			for (int i = 0; i < MAX_SPRITES; i++) {
+				if (sprites[i] != null && lastUsed[i] != frame && (oldest == -1 || lastUsed[i] < lastUsed[oldest])) {
+					oldest = i;
+				}
+			}
+			if (oldest == -1) {
+				break;
+			}
+			drop(oldest);
+			free = free == -1 ? oldest : free;
+		}
+
+		Bitmap sprite = render(body, size);
+		if (free != -1) {
+			keys[free] = key;
+			sprites[free] = sprite;
+			lastUsed[free] = frame;
+			usedBytes += bytes;
+		}
+		return sprite;
+	}
+
+	private void drop(int i) {
+		if (sprites[i] != null) {
+			usedBytes -= sprites[i].getWidth()*sprites[i].getHeight()*4;
+			sprites[i].recycle();
+			sprites[i] = null;
+		}
+	}
+
+	/**
+	 * Render a body into a new sprite, the body fills the sprite (suns including their glow)
+	 */
+	private Bitmap render(CelestialBody body, int size) {
+		AllocationCheck.allowAllocation();
+		++rendered;
+
+		Bitmap sprite = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+		Canvas canvas = new Canvas(sprite);
+		float center = size/2f;
+		int color = body.getSurfaceColor();
+
+		if (body instanceof Sun) {
+			// bright core, surface color at the rim, glow fading out beyond it
+			float rim = 1/SUN_GLOW;
+			renderPaint.setShader(new RadialGradient(center, center, center,
+					new int[] {blend(color, Color.WHITE, 0.5f), color, Color.argb(90, Color.red(color), Color.green(color), 0), Color.TRANSPARENT},
+					new float[] {0, rim*0.98f, rim, 1}, Shader.TileMode.CLAMP));
+			canvas.drawCircle(center, center, center, renderPaint);
+		}
+		else {
+			// lit from the upper left, darker towards the opposite rim
+			renderPaint.setShader(new RadialGradient(center*0.7f, center*0.7f, center*1.3f,
+					new int[] {blend(color, Color.WHITE, 0.25f), color, blend(color, Color.BLACK, 0.55f)},
+					new float[] {0, 0.45f, 1}, Shader.TileMode.CLAMP));
+			canvas.drawCircle(center, center, center - 0.5f, renderPaint);
+		}
+		renderPaint.setShader(null);
+
+		sprite.prepareToDraw();
+		return sprite;
+	}
+
+	/**
+	 * @return opaque color between a and b, 0 is a and 1 is b
+	 */
+	private static int blend(int a, int b, float t) {
+		return Color.rgb((int) (Color.red(a) + (Color.red(b) - Color.red(a))*t),
+				(int) (Color.green(a) + (Color.green(b) - Color.green(a))*t),
+				(int) (Color.blue(a) + (Color.blue(b) - Color.blue(a))*t));
+	}
+}
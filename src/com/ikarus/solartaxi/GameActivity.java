@@ -2,8 +2,10 @@ package com.ikarus.solartaxi;
 
 import android.app.Activity;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.content.res.Configuration;
 import android.os.Bundle;
+import android.os.Debug;
 
 /**
  * Activity for the game
@@ -11,13 +13,49 @@ import android.os.Bundle;
  */
 public class GameActivity extends Activity {
 
+	// boolean intent extra, play the endless galaxy instead of the levels
+	public final static String EXTRA_ENDLESS = "ENDLESS";
+
+	// int intent extra, number of computer controlled taxis competing for passengers, none by default
+	public final static String EXTRA_RIVALS = "RIVALS";
+
+	// DEBUG: boolean intent extra, fail on allocations in steady state (see AllocationCheck), debug builds only
+	public final static String EXTRA_CHECK_ALLOCATIONS = "CHECK_ALLOCATIONS";
+
+	// DEBUG: boolean intent extra, log the objects drawn and culled per frame (see ViewCuller), debug builds only
+	public final static String EXTRA_LOG_CULLING = "LOG_CULLING";
+
 	private GameView gameView;
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 
-		gameView = new GameView(this);
+		// e.g. adb shell am start -n com.ikarus.solartaxi/.GameActivity --ez CHECK_ALLOCATIONS true
+		boolean debuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+		if (debuggable && getIntent().getBooleanExtra(EXTRA_CHECK_ALLOCATIONS, false)) {
+			AllocationCheck.enable(new AllocationCheck.Counter() {
+				@Override
+				public void start() {
+					Debug.startAllocCounting();
+				}
+
+				@Override
+				public void reset() {
+					Debug.resetThreadAllocCount();
+				}
+
+				@Override
+				public int get() {
+					return Debug.getThreadAllocCount();
+				}
+			});
+		} else {
+			AllocationCheck.enable(null);
+		}
+		GameLoopThread.setLogCulling(debuggable && getIntent().getBooleanExtra(EXTRA_LOG_CULLING, false));
+
+		gameView = new GameView(this, getIntent().getBooleanExtra(EXTRA_ENDLESS, false), getIntent().getIntExtra(EXTRA_RIVALS, 0));
 		setContentView(gameView);
 
 		// initialize and load sounds
@@ -1,7 +1,5 @@
 package com.ikarus.solartaxi;
 
-import java.util.Collection;
-
 import android.app.Activity;
 import android.content.Intent;
 import android.graphics.Bitmap;
@@ -11,44 +9,104 @@ import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
 import android.graphics.Typeface;
-import android.util.Log;
 
 import com.ikarus.solartaxi.celestialbodies.CelestialBody;
-import com.ikarus.solartaxi.celestialbodies.Planet;
 import com.ikarus.solartaxi.level.Level;
+import com.ikarus.solartaxi.render.CanvasBackend;
+import com.ikarus.solartaxi.render.CommandBuffer;
+import com.ikarus.solartaxi.render.RecordingRenderer;
+import com.ikarus.solartaxi.render.Renderer;
+import com.ikarus.solartaxi.simulation.GameSimulation;
+import com.ikarus.solartaxi.simulation.InputSource;
 
 /**
- * Main game logic class, stores relevant object references and provides 
- * update and draw routines. 
+ * Renders a {@link GameSimulation} and feeds touch input into it, the game rules
+ * themselves are in the simulation. Also plays the taxi sounds.<br>
+ * Updates run on the simulation thread and draws on the render thread, they only
+ * share the {@link WorldSnapshot}s handed over after each batch of updates.
  * 
  * @author Nikolaus Leopold, Sebastian Kirchner<br>
  * ViewMatrix Transformations by Nikolaus Leopold<br>
  * Spaceship Controls related methods by Sebastian
  */
-public class GameEngine {
+public class GameEngine implements InputSource, TaxiListener {
 	
+	// max number of thrust inputs queued between two simulation steps
+	private final static int MAX_PENDING_THRUST = 8;
+
 	Matrix identityMatrix = new Matrix();
 	
 	private GameView view;
-	private Paint canvasPaint, starPaint, bitmapPaint, textPaint, helpPaint, levelPaint;
-	private Bitmap batteryBM, shieldsBM, btn_pauseBM, btn_unpauseBM, btn_musicOnBM, btn_musicOffBM,
-					targetIndicatorBM, panelChargeLeftBM, panelChargeRightBM, taxiBM, 
+	private Paint canvasPaint, bitmapPaint, passengerPaint, textPaint, helpPaint, levelPaint, trajectoryPaint;
+	private Bitmap targetIndicatorBM, panelChargeLeftBM, panelChargeRightBM, taxiBM, 
 					passengerBM,
 					help_arrowBM;
 	
-	private int lastLevelsScore, width_s_Margin, height_s_Margin, height_l_margin, frame_count, alpha_level; 
-	private String credits, credits_required;
+	private int width_s_Margin, height_l_margin, frame_count, alpha_level; 
+
+	// battery, credits, shields, passengers on board and buttons, drawn again only when they change
+	private HudLayer hud;
 		
+	private GameSimulation simulation;
+	private TrajectoryPredictor trajectory;
+
+	// state of the simulation for the render thread
+	private final SnapshotExchange snapshots = new SnapshotExchange();
+
+	// level drawn by the render thread, follows the level of the snapshots
 	private Level level;
-	private Spaceship taxi;
+
+	// background stars of the current level
+	private StarField starField;
+
+	// prerendered planets and suns
+	private BodySpriteCache bodySprites = new BodySpriteCache();
+
+	// level overview, its layout is built by the simulation thread and drawn into a cached map by the render thread
+	private MinimapLayout minimapLayout;
+	private Minimap minimap;
+
+	// left, right thrust pairs from touch events, applied at the start of the next simulation step
+	private final float[] pendingThrust = new float[2*MAX_PENDING_THRUST];
+	private int pendingThrustCount;
+
+	// reused every frame, so drawing does not allocate
+	private Matrix viewMatrix = new Matrix(), targetMatrix = new Matrix();
+	private Matrix passengerMatrix = new Matrix(), rivalMatrix = new Matrix();
+
+	// visible area of the world, screen corners mapped to the world and the inverse view matrix
+	private ViewCuller culler = new ViewCuller();
+	private Matrix inverseViewMatrix = new Matrix();
+	private final float[] viewCorners = new float[8];
+
+	// draws of a frame are recorded and then replayed on the canvas in one go
+	private final CommandBuffer commands = new CommandBuffer();
+	private final RecordingRenderer recorder = new RecordingRenderer(commands);
+	private final CanvasBackend canvasBackend = new CanvasBackend();
+
+	// passengers are centered on the surface, their bitmap reaches out by at most half its diagonal
+	private final float passengerReach;
+
+	// half diagonal of the rival taxi bitmaps, how far a rival can reach into the view
+	private final float rivalReach;
+
+	// end of game activity has been started
+	private boolean ended;
+
+	// drawing quality set by the render thread, see QualityGovernor
+	private int quality = QualityGovernor.FULL;
+
+	// the last frame drawn was between two updates or fading in the level title, render thread only
+	private boolean animating = true;
 	
 	/**
 	 * Constructor
 	 * 
 	 * @param view the view the game should run on
 	 * @param level the level/world the engine should run
+	 * @param rivalCount number of computer controlled taxis competing for passengers, 0 for none
 	 */
-	public GameEngine(GameView view, Level firstLevel) {
+	public GameEngine(GameView view, Level firstLevel, int rivalCount) {
 
 		this.view = view;
 		
@@ -56,12 +114,6 @@ public class GameEngine {
 		BitmapBank.init(view.getResources());
 		HelpDialogue.init();
 		
-		// showing credits
-		credits = view.getResources().getString(R.string.credits_sign) + " 0";
-		credits_required = view.getResources().getString(R.string.required_credits) + ": " + firstLevel.getRequiredCredits();
-
-		level = firstLevel;
-		lastLevelsScore = 0;
 		frame_count = 0;
 		alpha_level = 255;
 		
@@ -70,257 +122,350 @@ public class GameEngine {
 		
 		// initialize Paints
 		initPaints();
+
+		// showing credits
+		hud = new HudLayer(view.getResources().getString(R.string.credits_sign),
+				view.getResources().getString(R.string.required_credits), textPaint, helpPaint, bitmapPaint);
 		
-		// Initialize new SpaceTaxi
-		taxi = new Spaceship(level.getTaxiStartPosX(), level.getTaxiStartPosY(), level.getTaxiStartOrientation());
-		
-		taxi.setGravityFactor(view.getResources().getDimension(R.dimen.gravity_factor));
+		// game rules, input is polled from this engine
+		simulation = new GameSimulation(firstLevel, this);
+		simulation.setListener(this);
+		simulation.setRivals(rivalCount, System.nanoTime());
+		level = simulation.getLevel();
+
+		trajectory = new TrajectoryPredictor();
+		starField = new StarField(level.getStarSeed());
+		minimap = new Minimap(view.getResources().getColor(R.color.main_blue), view.getResources().getColor(R.color.main_theme));
+
+		passengerReach = Math.max(halfDiagonal(BitmapBank.getPassengerBitmap(1)), halfDiagonal(BitmapBank.getPassengerBitmap(2)));
+		rivalReach = Math.max(halfDiagonal(BitmapBank.getTaxiBitmap(00)), halfDiagonal(BitmapBank.getTaxiBitmap(100)));
+
+		// first snapshot, the threads are not started yet
+		publish(1.0f / Spaceship.REFERENCE_TICK_RATE, 0);
 	}
 
 	/**
-	 * Update the Game state, calls {@link com.ikarus.solartaxi.SpaceShip} update method
+	 * Update the Game state, steps the {@link GameSimulation}. Called from the simulation thread.
+	 * @param dt simulated time step in seconds
 	 */
-	public void update() {
+	public void update(float dt) {
 
-		taxi.update(level.getCelestialBodies());
-		taxi.checkWorldBoundaryCollision(level.getMinX(), level.getMinY(), level.getMaxX(), level.getMaxY());
+		simulation.step(dt);
+		trajectory.update(simulation.getTaxi(), simulation.getLevel(), dt);
 		
-		Log.d("speed", "speed: " + taxi.getSpeed());
-		// would have to be changed if credits could go past one million :D
-		int score = taxi.getCredits();
-		credits = view.getResources().getString(R.string.credits_sign) + String.format(" %,d", score);
-		credits_required = view.getResources().getString(R.string.required_credits) + ": " + String.format(" %,d", level.getRequiredCredits());
-
-		// Crash with Planets
-		if (taxi.isCrashed()) {
-			startEndOfGame(0);
-		}
-		
-		// Crash with Sun
-		if (taxi.isIkarused()) {
-			startEndOfGame(1);
+		if (simulation.isFinished() && !ended) {
+			ended = true;
+			startEndOfGame(simulation.getEndState());
 		}
+	}
 
-		// Battery Dead
-		if (taxi.isOutOfBattery()) {
-			startEndOfGame(2);
-		}
-		
-		// first level cleared
-		if (taxi.getCredits() > level.getRequiredCredits()) {
-			nextLevel();
+	/**
+	 * Hand the state after the last update over to the render thread. Called from the simulation thread.
+	 * @param tickLength length of the last update in seconds
+	 * @param pendingTime time already passed of the next update in nanoseconds
+	 */
+	public void publish(float tickLength, long pendingTime) {
+		// bodies and passengers in reach of the farthest screen corner, the taxi is drawn at 70% of the screen height
+		float range = (float) Math.sqrt(view.getWidth()*view.getWidth()/4f + view.getHeight()*view.getHeight()*0.49f) + passengerReach;
+		WorldSnapshot back = snapshots.getBack();
+		back.capture(simulation, trajectory, range, tickLength, pendingTime);
+
+		// a new layout only if the body table or waiting passengers changed, otherwise the map stays cached
+		minimapLayout = MinimapLayout.update(minimapLayout, simulation.getLevel());
+		back.captureMinimap(minimapLayout);
+
+		snapshots.publish();
+	}
+
+	/**
+	 * Apply the thrust queued by touch events since the last step
+	 */
+	@Override
+	public void poll(GameSimulation simulation, long tick) {
+		synchronized (pendingThrust) {
+			for (int i = 0; i < pendingThrustCount; i++) {
+				simulation.applyThrust(pendingThrust[2*i], pendingThrust[2*i+1]);
+			}
+			pendingThrustCount = 0;
 		}
 	}
 
+	@Override
+	public void onExplosion() {
+		SoundPlayer.playSound(R.raw.taxi_explosion, 0, 0.5f);
+	}
+
+	@Override
+	public void onShieldHit() {
+		SoundPlayer.playSound(R.raw.taxi_shield, 0, 1.75f);
+	}
+
+	@Override
+	public void onCreditsEarned(int credits) {
+		SoundPlayer.playSound(R.raw.credits_earned, 0, 1.75f);
+	}
+
 	/**
-	 * Main draw Routine, calls private draw methods.
+	 * Main draw Routine, the frame is recorded into the command buffer and replayed on the canvas.
 	 * @param canvas canvas to draw on
 	 */
 	public void draw(Canvas canvas) {
+		// at reduced resolution the surface is smaller than the view, frames are recorded at view size and scaled down
+		int width = canvas.getWidth(), height = canvas.getHeight();
+		float scale = 1;
+		if (view.getWidth() > 0 && view.getWidth() != width) {
+			scale = (float) width / view.getWidth();
+			width = view.getWidth();
+			height = view.getHeight();
+		}
+
+		recorder.begin(width, height);
+		draw(recorder);
+
+		canvasBackend.setScale(scale);
+		canvasBackend.setCanvas(canvas);
+		commands.replay(canvasBackend);
+		canvasBackend.setCanvas(null);
+	}
+
+	/**
+	 * Draw a frame of the latest snapshot, calls private draw methods. Called from the render thread.
+	 * @param renderer renderer to draw with, e.g. a recording one
+	 */
+	public void draw(Renderer renderer) {
+
+		WorldSnapshot world = snapshots.getLatest();
+
+		// moving objects are drawn between their state before and after the last update
+		float alpha = world.getAlpha(System.nanoTime());
+
+		// new level started
+		if (world.level != level) {
+			nextLevel(world.level);
+		}
 		
 		// draw black background
-		canvas.drawPaint(canvasPaint);
+		renderer.drawPaint(canvasPaint);
 
 		// draw game stats like battery, score, nr. of passengers, 
-		drawRelativeToTaxi(canvas);
+		drawRelativeToTaxi(renderer, world, alpha);
 
 		// draw game objects like planets, suns, passengers or stars
-		drawRelativeToCanvasOrigin(canvas);
-		
+		drawRelativeToCanvasOrigin(renderer, world, alpha);
+
+		animating = alpha < 1 || frame_count < 255;
+	}
+
+	/**
+	 * @return whether the next frame would differ from the last one drawn without any update or
+	 * input in between, i.e. moving objects have not reached their latest state or the level title is
+	 * fading. Called from the render thread.
+	 */
+	public boolean isAnimating() {
+		return animating;
 	}
 
 	/**
 	 * Draw with canvas matrix set to Taxi view Matrix
-	 * @param canvas canvas to draw on
+	 * @param renderer renderer to draw with
+	 * @param world snapshot to draw
+	 * @param alpha share of the update after the snapshot that has passed
 	 */
-	private void drawRelativeToTaxi(Canvas canvas) {
+	private void drawRelativeToTaxi(Renderer renderer, WorldSnapshot world, float alpha) {
 
-		canvas.setMatrix(getViewMatrix(canvas));
+		float taxiX = world.getTaxiX(alpha), taxiY = world.getTaxiY(alpha);
+		Matrix viewMatrix = getViewMatrix(renderer, taxiX, taxiY, world.getTaxiOrientation(alpha));
+		renderer.setMatrix(viewMatrix);
+		setVisibleArea(renderer, viewMatrix);
+		bodySprites.nextFrame();
 
-		// draw stars on background, randomly created in Level class
-		canvas.drawPoints(level.getStars(), starPaint);
+		// draw stars on background, prerendered tiles in layers of depth
+		starField.draw(renderer, viewMatrix, taxiX, taxiY, culler);
 
-		// draw celestial bodies as circles
-		for (CelestialBody cb : level.getCelestialBodies()) {
-			canvas.drawCircle(cb.getX(), cb.getY(), cb.getRadius(), cb.getSurfaceColor());
+		// draw predicted flight path
+		renderer.drawLines(world.trajectory, 0, world.trajectoryCount, trajectoryPaint);
 
-			// if it is a planet, draw passengers
-			if (cb instanceof Planet) {
-				Collection<Matrix> passengersMatrices = ((Planet)cb).getPassengerMatrices();
+		// draw celestial bodies in range of the taxi from cached sprites
+		int bodiesDrawn = 0, passengersDrawn = 0;
+		for (int k = 0; k < world.bodyCount; k++) {
+			CelestialBody cb = world.bodies[k];
+			float x = world.getBodyX(k, alpha), y = world.getBodyY(k, alpha);
 
-				for (Matrix passengerMatrix : passengersMatrices) {
-					passengerMatrix.preTranslate(-passengerBM.getWidth()/2, -passengerBM.getHeight()/2);
-					canvas.drawBitmap(passengerBM, passengerMatrix, canvasPaint);
-				}
+			if (culler.intersects(x, y, BodySpriteCache.getExtent(cb))) {
+				bodySprites.draw(renderer, cb, x, y, 1);
+				++bodiesDrawn;
+			}
+		}
+		culler.count(ViewCuller.BODIES, bodiesDrawn, world.bodyCount - bodiesDrawn);
+
+		// passengers of all planets after the bodies, so their draws are not interleaved with the body sprites
+		renderer.beginUnordered();
+		for (int i = 0; i < world.waitingCount; i++) {
+			float x = world.getWaitingX(i, alpha), y = world.getWaitingY(i, alpha);
+			if (!culler.intersects(x, y, passengerReach)) {
+				continue;
+			}
+			passengerMatrix.setTranslate(-passengerBM.getWidth()/2, -passengerBM.getHeight()/2);
+			passengerMatrix.postRotate((float)(world.waitingRotation[i]*180/Math.PI + 90));
+			passengerMatrix.postTranslate(x, y);
+			renderer.drawBitmap(passengerBM, passengerMatrix, passengerPaint);
+			++passengersDrawn;
+		}
+		renderer.endUnordered();
+		culler.count(ViewCuller.PASSENGERS, passengersDrawn, world.waitingCount - passengersDrawn);
+
+		// draw rival taxis in view, grouped by bitmap (overlapping rivals may swap which one is on top)
+		int rivalsDrawn = 0;
+		renderer.beginUnordered();
+		for (int i = 0; i < world.rivalCount; i++) {
+			float x = world.getRivalX(i, alpha), y = world.getRivalY(i, alpha);
+			if (!culler.intersects(x, y, rivalReach)) {
+				continue;
 			}
+			Bitmap rivalBM = BitmapBank.getTaxiBitmap(world.rivalLanded[i] ? 100 : 00);
+			rivalMatrix.setTranslate(-rivalBM.getWidth()/2, -rivalBM.getHeight()/2);
+			rivalMatrix.postRotate((float)(world.getRivalOrientation(i, alpha)*180/Math.PI + 90));
+			rivalMatrix.postTranslate(x, y);
+			renderer.drawBitmap(rivalBM, rivalMatrix, bitmapPaint);
+			++rivalsDrawn;
 		}
+		renderer.endUnordered();
+		culler.count(ViewCuller.RIVALS, rivalsDrawn, world.rivalCount - rivalsDrawn);
 
 		// draw passenger target planet indicators
-		for (Planet p : taxi.getTargetPlanets()) {
+		for (int i = 0; i < world.passengerCount; i++) {
 
-			double targetAngle = GeometricCalc.angle(p.getX(), p.getY(), taxi.getX(), taxi.getY());
+			double targetAngle = GeometricCalc.angle(world.targetX[i], world.targetY[i], taxiX, taxiY);
 
-			Matrix targetMatrix = new Matrix();
-			targetMatrix.postRotate(90);
-			targetMatrix.postTranslate(canvas.getHeight()/5 - targetIndicatorBM.getWidth()/2, - targetIndicatorBM.getHeight()/2);
+			targetMatrix.setRotate(90);
+			targetMatrix.postTranslate(renderer.getHeight()/5 - targetIndicatorBM.getWidth()/2, - targetIndicatorBM.getHeight()/2);
 			targetMatrix.postRotate((float)(targetAngle*180/Math.PI));
-			targetMatrix.postTranslate(taxi.getX(), taxi.getY());
+			targetMatrix.postTranslate(taxiX, taxiY);
 
-			canvas.drawBitmap(targetIndicatorBM, targetMatrix, canvasPaint);
+			renderer.drawBitmap(targetIndicatorBM, targetMatrix, canvasPaint);
 		}
 	}
 	
 	/**
 	 * Draws with canvas matrix set to identity matrix (everything that is constantly on the screen like 
 	 * credits, taxi, battery, etc)
-	 * @param canvas canvas to draw on
+	 * @param renderer renderer to draw with
+	 * @param world snapshot to draw
+	 * @param alpha share of the update after the snapshot that has passed
 	 */
-	private void drawRelativeToCanvasOrigin(Canvas canvas) {
+	private void drawRelativeToCanvasOrigin(Renderer renderer, WorldSnapshot world, float alpha) {
 
-		canvas.setMatrix(null);
+		renderer.setMatrix(null);
 		
 		// update taxi bitmap state
-		taxiBM = BitmapBank.getTaxiBitmap(taxi.getBitmapState());
+		taxiBM = BitmapBank.getTaxiBitmap(world.taxiBitmapState);
 		
 		// set taxi position here
-		float taxiXPosition = canvas.getWidth()/2 - taxiBM.getWidth()/2;
-		float taxiYPosition = canvas.getHeight()*0.7f - taxiBM.getHeight()/2;
+		float taxiXPosition = renderer.getWidth()/2 - taxiBM.getWidth()/2;
+		float taxiYPosition = renderer.getHeight()*0.7f - taxiBM.getHeight()/2;
 		
 		// set margin values based on view stats
 		width_s_Margin		= (int) Math.ceil(this.view.getWidth() * 0.01);
-		height_s_Margin 	= (int) Math.ceil(this.view.getHeight() * 0.01);
 		height_l_margin		= (int) Math.ceil(this.view.getHeight() * 0.1);
 
-		// draw battery (correct Bitmap is chosen depending on charge percentage)
-		batteryBM = BitmapBank.getBatteryBitmap(taxi.getBatteryState());
-		canvas.drawBitmap(batteryBM, width_s_Margin, height_s_Margin, bitmapPaint);
-
-		// draw credits 
-		canvas.drawText(credits_required, width_s_Margin, 1.7f*height_l_margin, textPaint);
-		canvas.drawText(credits, width_s_Margin, (float) (2.4f*height_l_margin), textPaint);
-		
 		// DRAW DEBUG FOR LEVEL TESTING
-		//canvas.drawText("x: " + Math.round(taxi.getX()) + ", y: " + Math.round(taxi.getY()), width_s_Margin, 4f*height_l_margin, textPaint);
+		//renderer.drawText("x: " + Math.round(world.taxiX) + ", y: " + Math.round(world.taxiY), width_s_Margin, 4f*height_l_margin, textPaint);
 		
 		// draw galaxy/level title at start of level
 		if (frame_count < 255) {
 			levelPaint.setAlpha(alpha_level);
 			alpha_level--;
 			frame_count++;
-			canvas.drawText("HELP MODE", canvas.getWidth()*0.6f, 2*height_l_margin, textPaint);
-			canvas.drawText(level.toString(), canvas.getWidth()*0.1f, 5.5f*height_l_margin, levelPaint);
-			canvas.drawBitmap(help_arrowBM, canvas.getWidth()*0.75f, 0.9f*height_l_margin, bitmapPaint);
-		}
-
-		// draw shields (small taxis with shield on)
-		float scaleFactor = 0.5f;
-		float startPos = view.getWidth()/2 - shieldsBM.getWidth()*scaleFactor/2;
-		float offset = (height_s_Margin+shieldsBM.getWidth()*scaleFactor);
-		Matrix shieldsMatrix = new Matrix();
-		shieldsMatrix.postScale(scaleFactor, scaleFactor);
-		shieldsMatrix.postTranslate(startPos - taxi.getShields()/2 * offset, height_s_Margin);
-		for (int i = 0; i < taxi.getShields(); ++i) {
-			canvas.drawBitmap(shieldsBM, shieldsMatrix, canvasPaint);
-			shieldsMatrix.postTranslate(offset, 0);
-		}
-	
-		// draw passengers currently onboard
-		scaleFactor = 0.75f;
-		startPos = width_s_Margin;
-		offset = (passengerBM.getWidth() + passengerBM.getWidth()/6)*scaleFactor;
-		Matrix passengerMatrix = new Matrix();
-		passengerMatrix.postScale(scaleFactor, scaleFactor);
-		passengerMatrix.postTranslate(startPos, 2.5f*height_l_margin);
-		for (int i = 0; i < taxi.getPassengerCount(); ++i) {
-			canvas.drawBitmap(passengerBM, passengerMatrix, bitmapPaint);
-			passengerMatrix.postTranslate(offset, 0);
+			renderer.drawText("HELP MODE", renderer.getWidth()*0.6f, 2*height_l_margin, textPaint);
+			renderer.drawText(level.toString(), renderer.getWidth()*0.1f, 5.5f*height_l_margin, levelPaint);
+			renderer.drawBitmap(help_arrowBM, renderer.getWidth()*0.75f, 0.9f*height_l_margin, bitmapPaint);
 		}
 
 		// draw taxi (taxi is always in canvas center looking in -y)
-		canvas.drawBitmap(taxiBM, taxiXPosition, taxiYPosition, bitmapPaint);
+		renderer.drawBitmap(taxiBM, taxiXPosition, taxiYPosition, bitmapPaint);
 
 		// draw overlay reflection on panel if sun is left or right to taxi
 		// note: two bitmaps are used instead of mirroring one, since taxi panels are not exactly symmetrical
 		// also only draw if taxi is not currently exploding
-		if (taxi.getBitmapState() != -1 && taxi.isCharging()) {
-			if (taxi.getChargingSide() == 1) {
-				canvas.drawBitmap(panelChargeRightBM, canvas.getWidth()/2 - panelChargeRightBM.getWidth()/2, canvas.getHeight()*0.7f - panelChargeRightBM.getHeight()/2, bitmapPaint);
-			} else if (taxi.getChargingSide() == 2) {
-				canvas.drawBitmap(panelChargeLeftBM, canvas.getWidth()/2 - panelChargeLeftBM.getWidth()/2, canvas.getHeight()*0.7f - panelChargeLeftBM.getHeight()/2, bitmapPaint);
+		if (world.taxiBitmapState != -1 && world.charging) {
+			if (world.chargingSide == 1) {
+				renderer.drawBitmap(panelChargeRightBM, renderer.getWidth()/2 - panelChargeRightBM.getWidth()/2, renderer.getHeight()*0.7f - panelChargeRightBM.getHeight()/2, bitmapPaint);
+			} else if (world.chargingSide == 2) {
+				renderer.drawBitmap(panelChargeLeftBM, renderer.getWidth()/2 - panelChargeLeftBM.getWidth()/2, renderer.getHeight()*0.7f - panelChargeLeftBM.getHeight()/2, bitmapPaint);
 			}
 		}
 
-		// draw Buttons
-		drawButtons(canvas);
+		// draw battery, credits, shields, passengers onboard and buttons
+		hud.draw(renderer, world, passengerBM, view.isPaused(), view.isMusicOn(), view.inHelpMode());
+
+		// draw minimap, the level from its cached image with the taxi and target planets on top
+		minimap.draw(renderer, world, world.getTaxiX(alpha), world.getTaxiY(alpha), world.getTaxiOrientation(alpha));
 		
 		// draw HelpDialogue if in HelpMode
 		if (view.inHelpMode()) {
-			HelpDialogue.draw(canvas, this.view.getResources());
+			HelpDialogue.draw(renderer, this.view.getResources());
 		}
 	}
 
 	/**
-	 * Draw all Buttons on Canvas in correct State (pressed or not).
-	 * @param canvas canvas to draw on 
+	 * The simulation continued with the next level, show its title.
+	 * @param next level of the latest snapshot
 	 */
-	public void drawButtons(Canvas canvas) {
-
-		canvas.setMatrix(null);
-
-		// draw pause/unpause button
-		if (view.isPaused()) {
-			canvas.drawBitmap(btn_unpauseBM, view.getWidth()*0.99f - btn_unpauseBM.getWidth(), view.getHeight() * 0.02f, null);
-		} else {
-			canvas.drawBitmap(btn_pauseBM, view.getWidth()*0.99f - btn_pauseBM.getWidth(), view.getHeight() * 0.02f, null);
-		}
-
-		// draw background music toggle button
-		if (view.isMusicOn()) {
-			canvas.drawBitmap(btn_musicOnBM, view.getWidth()*0.92f - btn_musicOnBM.getWidth(), view.getHeight() * 0.02f, null);
-		} else {
-			canvas.drawBitmap(btn_musicOffBM, view.getWidth()*0.92f - btn_musicOffBM.getWidth(), view.getHeight() * 0.02f, null);
-		}
-		
-		// draw helpMode button
-		if (view.inHelpMode()) {
-			helpPaint.setARGB(255, 255, 0, 0);
-		} else {
-			helpPaint.setARGB(255, 255, 255, 255);
-		}
-		canvas.drawText("?", (float) (view.getWidth()*0.85f - btn_musicOnBM.getWidth()*0.63f), view.getHeight() * 0.067f, helpPaint);
+	private void nextLevel(Level next) {
+		AllocationCheck.allowAllocation();
+		alpha_level = 255;
+		frame_count = 0;
+		level = next;
+		starField.recycle();
+		starField = new StarField(level.getStarSeed());
+		minimap.recycle();
+		setQuality(quality);
+		bodySprites.clear();
+		passengerBM = BitmapBank.getPassengerBitmap(2);
 	}
 
 	/**
-	 * If the current level points to a next level, continue with that one,
-	 * if there is no more level, the game ends victoriously. 
+	 * Turn expensive drawing features off or on again, each level turns off one more.
+	 * Called from the render thread between frames.
+	 * @param quality quality level, see {@link QualityGovernor}
 	 */
-	private void nextLevel() {
+	public void setQuality(int quality) {
+		AllocationCheck.allowAllocation();
+		this.quality = quality;
 
-		Level nextLevel = level.getNextLevel();
-		
-		if (nextLevel != null) {
-			alpha_level = 255;
-			frame_count = 0;
-			level = nextLevel;
-			lastLevelsScore += taxi.getCredits();
-			passengerBM = BitmapBank.getPassengerBitmap(2);
-			taxi = new Spaceship(level.getTaxiStartPosX(), level.getTaxiStartPosY(), level.getTaxiStartOrientation());
+		passengerPaint.setFilterBitmap(quality < QualityGovernor.NO_PASSENGER_FILTERING);
 
+		boolean antiAliasing = quality < QualityGovernor.NO_ANTI_ALIASING;
+		bitmapPaint.setFilterBitmap(antiAliasing);
+		bitmapPaint.setAntiAlias(antiAliasing);
+		trajectoryPaint.setAntiAlias(antiAliasing);
+		bodySprites.setFiltering(antiAliasing);
+
+		starField.setQuality(antiAliasing, quality < QualityGovernor.FEWER_STARS);
+
+		if (quality >= QualityGovernor.LOW_RESOLUTION) {
+			view.setRenderScale(0.5f);
+		} else if (quality >= QualityGovernor.REDUCED_RESOLUTION) {
+			view.setRenderScale(0.75f);
 		} else {
-			// Game Cleared
-			startEndOfGame(3);
+			view.setRenderScale(1);
 		}
 	}
 
 	/**
 	 * Apply thrust to taxi, each thruster can be set independently to 
-	 * control translation/rotation.
+	 * control translation/rotation. Queued until the next simulation step,
+	 * further input is dropped if the queue is full.
 	 * @param thrust of left thruster
 	 * @param thrust of right thruster
 	 */
 	public void taxiApplyThrust(float thrustLeft, float thrustRight) {
-		if (!taxi.isOutOfBattery()) {
-			taxi.applyThrust(thrustLeft, thrustRight);	
+		synchronized (pendingThrust) {
+			if (pendingThrustCount < MAX_PENDING_THRUST) {
+				pendingThrust[2*pendingThrustCount] = thrustLeft;
+				pendingThrust[2*pendingThrustCount+1] = thrustRight;
+				++pendingThrustCount;
+			}
 		}
 	}
 
@@ -328,25 +473,60 @@ public class GameEngine {
 	 * this matrix transforms canvas center and orientation to Taxi
 	 * such that taxi appears at screen center and looks in -y<br>
 	 * make sure to apply to canvas identity matrix only
-	 * @param canvas needed to center taxi center at canvas/screen center (not origin)
-	 * @return the Taxi view transformation Matrix
+	 * @param renderer needed to center taxi center at canvas/screen center (not origin)
+	 * @param taxiX x-coordinate of the taxi as drawn
+	 * @param taxiY y-coordinate of the taxi as drawn
+	 * @param taxiOrientation orientation of the taxi as drawn
+	 * @return the Taxi view transformation Matrix, reused on every call
 	 */
-	private Matrix getViewMatrix(Canvas canvas) {
+	private Matrix getViewMatrix(Renderer renderer, float taxiX, float taxiY, double taxiOrientation) {
 
 		//transform world coordinates to taxi view space (taxi appears at screen center, looking in -y)
 		//matrix could be set in fewer steps, done like this for clarity
-		Matrix viewMatrix = new Matrix();
-
-		viewMatrix.set(null);
-		viewMatrix.postTranslate(-taxi.getX(), -taxi.getY()); //translate such that taxi center is at 0 (canvas origin)
-		viewMatrix.postRotate((float)((-taxi.getOrientation())/Math.PI*180)); //rotate such that taxi looks at canvas 0 orientation
-		//viewMatrix.postScale(0.2f, 0.2f); //could be scaled for minimap or similar
+		viewMatrix.reset();
+		viewMatrix.postTranslate(-taxiX, -taxiY); //translate such that taxi center is at 0 (canvas origin)
+		viewMatrix.postRotate((float)((-taxiOrientation)/Math.PI*180)); //rotate such that taxi looks at canvas 0 orientation
+		//viewMatrix.postScale(0.2f, 0.2f); //could be scaled for zooming out, the minimap is drawn from a cached image instead (see Minimap)
 		viewMatrix.postRotate((float)((-Math.PI/2)/Math.PI*180)); //rotate such that taxi looks at -pi/2 (= up, -y)
-		viewMatrix.postTranslate(canvas.getWidth()/2, canvas.getHeight()*0.7f); //translate such that taxi is at screen center
+		viewMatrix.postTranslate(renderer.getWidth()/2, renderer.getHeight()*0.7f); //translate such that taxi is at screen center
 
 		return viewMatrix;
 	}
 	
+	/**
+	 * Map the screen corners to the world with the inverse view matrix, nothing outside of them is drawn
+	 * @param renderer renderer drawn with
+	 * @param viewMatrix the Taxi view transformation Matrix
+	 */
+	private void setVisibleArea(Renderer renderer, Matrix viewMatrix) {
+		viewCorners[0] = 0;
+		viewCorners[1] = 0;
+		viewCorners[2] = renderer.getWidth();
+		viewCorners[3] = 0;
+		viewCorners[4] = renderer.getWidth();
+		viewCorners[5] = renderer.getHeight();
+		viewCorners[6] = 0;
+		viewCorners[7] = renderer.getHeight();
+
+		viewMatrix.invert(inverseViewMatrix);
+		inverseViewMatrix.mapPoints(viewCorners);
+		culler.setView(viewCorners);
+	}
+
+	/**
+	 * @return visible area of the last frame drawn, with the number of objects drawn and culled
+	 */
+	public ViewCuller getCuller() {
+		return culler;
+	}
+
+	/**
+	 * @return commands of the last frame drawn, e.g. to replay them on a {@link com.ikarus.solartaxi.render.DrawCallCounter}
+	 */
+	public CommandBuffer getCommandBuffer() {
+		return commands;
+	}
+
 	/**
 	 * Start the next Activity, pass Credits on and the Cause of Termination
 	 * @param endState <br>
@@ -356,11 +536,12 @@ public class GameEngine {
 	 * 				3 ... cleared Game		
 	 */
 	private void startEndOfGame(int endState) {
+		AllocationCheck.allowAllocation();
 		Activity gameActivity = (Activity)view.getContext();
 		Intent intent = new Intent(gameActivity, EndOfGameActivity.class);
 
 		// make value of credits available for next Activity
-		intent.putExtra("CREDITS", lastLevelsScore + taxi.getCredits());
+		intent.putExtra("CREDITS", simulation.getScore());
 		intent.putExtra("ENDSTATE", endState);
 		gameActivity.startActivity(intent);
 
@@ -368,6 +549,13 @@ public class GameEngine {
 		gameActivity.finish();
 	}
 	
+	/**
+	 * @return half the diagonal of a bitmap
+	 */
+	private static float halfDiagonal(Bitmap bitmap) {
+		return (float) Math.sqrt(bitmap.getWidth()*bitmap.getWidth() + bitmap.getHeight()*bitmap.getHeight())/2;
+	}
+
 	/**
 	 * Initialize all Paints, created method for better clarity
 	 */
@@ -383,10 +571,9 @@ public class GameEngine {
 		bitmapPaint.setFilterBitmap(true); //Bitmap Antialiasing
 		bitmapPaint.setAntiAlias(true);
 
-		// Paint for drawing stars in the background
-		starPaint = new Paint();
-		starPaint.setAntiAlias(true);
-		starPaint.setARGB(255, 255, 255, 255);
+		// Paint for waiting passengers, rotated with their planet
+		passengerPaint = new Paint();
+		passengerPaint.setFilterBitmap(true);
 
 		// Paint for text
 		textPaint = new Paint();
@@ -411,10 +598,17 @@ public class GameEngine {
 		levelPaint.setTextSize(view.getResources().getDimension(R.dimen.s_Planet));
 		levelPaint.setFakeBoldText(true);
 		levelPaint.setAntiAlias(true);
+
+		// Paint for predicted flight path
+		trajectoryPaint = new Paint();
+		trajectoryPaint.setColor(view.getResources().getColor(R.color.main_blue));
+		trajectoryPaint.setAlpha(100);
+		trajectoryPaint.setStrokeWidth(3);
+		trajectoryPaint.setAntiAlias(true);
 	}
 	
 	/**
-	 * Initialize all constant bitmaps such as buttons, shields, passengers
+	 * Initialize all constant bitmaps such as passengers and overlays
 	 */
 	private void initConstantBMs() {
 		
@@ -425,15 +619,7 @@ public class GameEngine {
 		panelChargeLeftBM 	= BitmapBank.getPanelChargeLeftBitmap();
 		panelChargeRightBM 	= BitmapBank.getPanelChargeRightBitmap();
 
-		// Bitmaps of buttons for music and pause
-		btn_pauseBM 	= BitmapBank.getPauseBtnBitmap(0);
-		btn_unpauseBM 	= BitmapBank.getPauseBtnBitmap(1);
-		btn_musicOnBM 	= BitmapBank.getMusicBtnBitmap(0);
-		btn_musicOffBM 	= BitmapBank.getMusicBtnBitmap(1);
-		
-		// Bitmap for shields
-		shieldsBM = BitmapBank.getTaxiBitmap(1100);
-		
+
 		// Bitmap for help_arrow
 		help_arrowBM = BitmapBank.getHelpArrow();
 	}
@@ -1,91 +1,132 @@
 package com.ikarus.solartaxi;
 
 import android.graphics.Canvas;
+import android.util.Log;
 import android.view.SurfaceHolder;
 
+import com.ikarus.solartaxi.render.DrawCallCounter;
+
 /**
- * Thread for frame independent update and draw calls
- * 
+ * Thread drawing frames at the frame rate. The game state is updated on the
+ * {@link SimulationThread}, each frame draws the latest snapshot it handed over,
+ * so a slow frame doesn't hold up the updates and the reverse.<br>
+ * While the game is paused or in help mode the thread idles: once the last frame is
+ * still it waits until a frame is requested ({@link #requestRender()}) by input or a
+ * new snapshot, instead of drawing the same frame again.
+ *
  * @author Sebastian Kirchner<br>
  * Reference: http://obviam.net/index.php/the-android-game-loop/
  */
 public class GameLoopThread extends Thread {
-	
-	private final static int MAX_FPS = 50;
-	private final static int MAX_FPS_SKIPS = 5;
-	private final static int FRAME_PERIOD = 1000 / MAX_FPS;
-	
+
+	private final static int DEFAULT_FRAME_RATE = 50;
+
+	// DEBUG: period of the culling log in nanoseconds
+	private final static long CULLING_LOG_PERIOD = 5000000000L;
+	private static volatile boolean logCulling;
+
 	private SurfaceHolder surfaceHolder;
 	private GameView view;
 	private GameEngine engine;
-	private boolean finished; // if this is set the loop terminates
-	
-	
+	private volatile boolean finished; // if this is set the loop terminates
+
+	// frames per second
+	private volatile int frameRate;
+
+	private final AllocationCheck allocationCheck = new AllocationCheck("frame");
+
+	// turns drawing features off when frames take too long, so the frame rate is held
+	private final QualityGovernor governor = new QualityGovernor();
+
+	// objects drawn and culled since the last culling log, by kind of ViewCuller, and when counting started
+	private final long[] drawnSum = new long[ViewCuller.KINDS], culledSum = new long[ViewCuller.KINDS];
+	private int countedFrames;
+	private long lastCullingLog;
+
+	// costs of the last frame's commands, logged with the culling counts
+	private final DrawCallCounter drawCalls = new DrawCallCounter();
+
+	// set when a frame is requested, waited for while idle
+	private final Object renderLock = new Object();
+	private boolean renderRequested;
+
 	public GameLoopThread(SurfaceHolder surfaceHolder, GameView view, GameEngine engine) {
+		super("render");
 		this.surfaceHolder = surfaceHolder;
 		this.view = view;
 		this.engine = engine;
+		this.frameRate = DEFAULT_FRAME_RATE;
+	}
+
+	/**
+	 * DEBUG: log the objects drawn and culled per frame of the running game every few seconds,
+	 * and the draw calls of the last frame, set before the thread starts
+	 * @param log whether to log
+	 */
+	public static void setLogCulling(boolean log) {
+		logCulling = log;
 	}
-	
+
 	public void setFinished(boolean finished) {
 		this.finished = finished;
+		// wake the thread if it is idle
+		requestRender();
 	}
-	
+
+	/**
+	 * Draw a frame even if the game is paused, e.g. after a touch or when a help page or button
+	 * changed. While the game is running frames are drawn anyway. Thread safe.
+	 */
+	public void requestRender() {
+		synchronized (renderLock) {
+			renderRequested = true;
+			renderLock.notify();
+		}
+	}
+
+	/**
+	 * @param frameRate maximum number of frames drawn per second
+	 */
+	public void setFrameRate(int frameRate) {
+		this.frameRate = frameRate;
+	}
+
 	/**
-	 * Frame independent run method
+	 * Frame rate bound draw loop
 	 */
 	@Override
 	public void run() {
 		Canvas canvas;
 		long beginTime;
-		long timeDiff;
-		int sleepTime;
-		int skippedFrames;
-		
+		long drawTime;
+		long sleepTime;
+
 		while (!finished) {
-			
+
+			// paused or in help mode nothing changes until a frame is requested
+			if ((view.isPaused() || view.inHelpMode()) && !engine.isAnimating()) {
+				awaitRenderRequest();
+				if (finished) {
+					break;
+				}
+			}
+
+			allocationCheck.begin();
+
 			canvas = null; //redraw
-			
-			try {				
+			drawTime = 0;
+
+			beginTime = System.nanoTime();
+
+			try {
 				canvas = this.surfaceHolder.lockCanvas(null);
 				synchronized (this.surfaceHolder) {
-					
-					beginTime = System.currentTimeMillis();
-					skippedFrames = 0;
-					
-					// update game state
-					if (!view.isPaused() && !view.inHelpMode()) {
-						engine.update();
-					}
-					
-					// draw on canvas
+
+					// draw on canvas, lockCanvas and unlockCanvasAndPost wait for the display and are not timed
 					if (canvas != null) {
+						long drawStart = System.nanoTime();
 						engine.draw(canvas);
-					}		
-					
-					// calculate the time that has passed
-					timeDiff = System.currentTimeMillis() - beginTime;
-					
-					// sleep time 
-					sleepTime = (int) (FRAME_PERIOD - timeDiff);
-					
-					// are we ahead?
-					if (sleepTime > 0) {
-						// send Thread to sleep for a bit
-						try {
-							Thread.sleep(sleepTime);
-						} 
-						catch (InterruptedException e) {}
-					}
-					
-					while (sleepTime < 0 && skippedFrames < MAX_FPS_SKIPS) {
-						// behind and in need to catch up
-						if (!view.isPaused() && !view.inHelpMode()) {
-							engine.update();
-						}
-						
-						sleepTime += FRAME_PERIOD;
-						skippedFrames++;
+						drawTime = System.nanoTime() - drawStart;
 					}
 				}
 			}
@@ -94,7 +135,83 @@ public class GameLoopThread extends Thread {
 					this.surfaceHolder.unlockCanvasAndPost(canvas);
 				}
 			}
+
+			// frames of the running game pick the quality, frames drawn on request while idle don't count
+			boolean running = !view.isPaused() && !view.inHelpMode();
+			if (running && canvas != null && governor.frameDrawn(drawTime, 1000000000L / frameRate)) {
+				engine.setQuality(governor.getLevel());
+			}
+			if (logCulling && running && canvas != null) {
+				countCulling(System.nanoTime());
+			}
+
+			// steady state gameplay must not allocate
+			allocationCheck.end(running);
+
+			// sleep for the rest of the frame period
+			sleepTime = (1000000000L / frameRate - (System.nanoTime() - beginTime)) / 1000000L;
+
+			// are we ahead?
+			if (sleepTime > 0) {
+				// send Thread to sleep for a bit
+				try {
+					Thread.sleep(sleepTime);
+				}
+				catch (InterruptedException e) {}
+			}
 		}
 	}
-	
-}
\ No newline at end of file
+
+	/**
+	 * Add the counts of the frame just drawn, log the averages per frame once the period is over,
+	 * together with the draw calls the frame just drawn replayed
+	 */
+	private void countCulling(long now) {
+		if (countedFrames == 0) {
+			lastCullingLog = now;
+		}
+		ViewCuller culler = engine.getCuller();
+		for (int kind = 0; kind < ViewCuller.KINDS; kind++) {
+			drawnSum[kind] += culler.getDrawnCount(kind);
+			culledSum[kind] += culler.getCulledCount(kind);
+		}
+		++countedFrames;
+		if (now - lastCullingLog < CULLING_LOG_PERIOD) {
+			return;
+		}
+
+		AllocationCheck.allowAllocation();
+		Log.d("SolarTaxi", String.format("drawn/culled per frame over %d frames: bodies %.1f/%.1f, passengers %.1f/%.1f, star tiles %.1f/%.1f, rivals %.1f/%.1f",
+				countedFrames,
+				(float) drawnSum[ViewCuller.BODIES]/countedFrames, (float) culledSum[ViewCuller.BODIES]/countedFrames,
+				(float) drawnSum[ViewCuller.PASSENGERS]/countedFrames, (float) culledSum[ViewCuller.PASSENGERS]/countedFrames,
+				(float) drawnSum[ViewCuller.STAR_TILES]/countedFrames, (float) culledSum[ViewCuller.STAR_TILES]/countedFrames,
+				(float) drawnSum[ViewCuller.RIVALS]/countedFrames, (float) culledSum[ViewCuller.RIVALS]/countedFrames));
+
+		drawCalls.reset();
+		engine.getCommandBuffer().replay(drawCalls);
+		Log.d("SolarTaxi", String.format("last frame: %d draw calls, %d bitmap switches, %d bitmaps, %d matrix changes",
+				drawCalls.getDrawCalls(), drawCalls.getBitmapSwitches(), drawCalls.getDistinctBitmaps(), drawCalls.getMatrixChanges()));
+		for (int kind = 0; kind < ViewCuller.KINDS; kind++) {
+			drawnSum[kind] = 0;
+			culledSum[kind] = 0;
+		}
+		countedFrames = 0;
+	}
+
+	/**
+	 * Block until a frame is requested, requests made since the last wait count as well
+	 */
+	private void awaitRenderRequest() {
+		synchronized (renderLock) {
+			while (!renderRequested && !finished) {
+				try {
+					renderLock.wait();
+				}
+				catch (InterruptedException e) {}
+			}
+			renderRequested = false;
+		}
+	}
+
+}
@@ -18,8 +18,11 @@ import com.ikarus.solartaxi.level.*;
  */
 public class GameView extends SurfaceView implements SurfaceHolder.Callback {
 
-	//calls update and draw
-	private GameLoopThread thread;
+	//calls draw, also read by the simulation thread to request frames
+	private volatile GameLoopThread thread;
+
+	//calls update
+	private SimulationThread simulationThread;
 	
 	//provides main game logic
 	private GameEngine engine; 
@@ -30,11 +33,21 @@ public class GameView extends SurfaceView implements SurfaceHolder.Callback {
 	// MediaPlayer for background music
 	private MediaPlayer mediaPlayer;
 
-	private boolean paused, helpMode;
+	// read by the simulation and render threads
+	private volatile boolean paused, helpMode;
 
 	private float soundVol, taxiSpeed;
 
-	public GameView(Context context) {
+	// surface size in view sizes, below 1 the surface is scaled up to the view when shown
+	private float renderScale = 1;
+
+	/**
+	 * Constructor
+	 * @param context the game activity
+	 * @param endless whether to play the endless galaxy instead of the levels
+	 * @param rivalCount number of computer controlled taxis competing for passengers, 0 for none
+	 */
+	public GameView(Context context, boolean endless, int rivalCount) {
 		super(context);
 
 		surfaceHolder = getHolder();
@@ -52,7 +65,12 @@ public class GameView extends SurfaceView implements SurfaceHolder.Callback {
 		mediaPlayer = MediaPlayer.create(this.getContext(), R.raw.background_music);
 		mediaPlayer.setLooping(true);
 
-		engine = new GameEngine(this, new Level1(this));
+		LevelMetrics metrics = new LevelMetrics(getResources().getDimension(R.dimen.s_Planet),
+				getResources().getDimension(R.dimen.m_Planet), getResources().getDimension(R.dimen.l_Planet),
+				getResources().getDimension(R.dimen.uniform_dist), getResources().getDimension(R.dimen.level_1_boundary),
+				getResources().getDimension(R.dimen.gravity_factor), taxiSpeed);
+		Level firstLevel = endless ? new EndlessLevel(metrics, System.nanoTime()) : new Level1(metrics, System.nanoTime());
+		engine = new GameEngine(this, firstLevel, rivalCount);
 	}
 
 	/**
@@ -72,6 +90,46 @@ public class GameView extends SurfaceView implements SurfaceHolder.Callback {
 			mediaPlayer.start();
 			gameActivity.getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 		}
+
+		// show the pause button in its new state
+		requestRender();
+
+		// the simulation thread blocks while paused or in help mode, the help toggle ends up here as well
+		if (simulationThread != null) {
+			simulationThread.wake();
+		}
+	}
+
+	/**
+	 * Have a frame drawn while the game is paused or in help mode, the render thread idles
+	 * then until something changed. Thread safe.
+	 */
+	public void requestRender() {
+		GameLoopThread renderThread = thread;
+		if (renderThread != null) {
+			renderThread.requestRender();
+		}
+	}
+
+	/**
+	 * Change the resolution frames are drawn at, the surface is resized on the UI thread.
+	 * @param scale surface size in view sizes, 1 for full resolution
+	 */
+	public void setRenderScale(final float scale) {
+		post(new Runnable() {
+			@Override
+			public void run() {
+				if (scale == renderScale) {
+					return;
+				}
+				renderScale = scale;
+				if (scale < 1) {
+					surfaceHolder.setFixedSize(Math.round(getWidth()*scale), Math.round(getHeight()*scale));
+				} else {
+					surfaceHolder.setSizeFromLayout();
+				}
+			}
+		});
 	}
 
 	/**
@@ -104,7 +162,11 @@ public class GameView extends SurfaceView implements SurfaceHolder.Callback {
 			mediaPlayer.start();
 		}
 
-		// start gameloop
+		// start gameloop, updates and drawing on threads of their own
+		simulationThread = new SimulationThread(this, engine);
+		simulationThread.setFinished(false);
+		simulationThread.start();
+
 		thread = new GameLoopThread(getHolder(), this, engine);
 		thread.setFinished(false);
 		thread.start(); //calls thread constructor and run()
@@ -115,10 +177,22 @@ public class GameView extends SurfaceView implements SurfaceHolder.Callback {
 		mediaPlayer.pause();
 
 		thread.setFinished(true);
+		simulationThread.setFinished(true);
+		join(thread);
+		join(simulationThread);
+
+		// the help page image is as large as the screen, it is rendered again when help is shown next
+		HelpDialogue.release();
+	}
+
+	/**
+	 * Wait until a finished thread has terminated
+	 */
+	private void join(Thread finishedThread) {
 		boolean retry = true;
 		while (retry) {
 			try {
-				thread.join();
+				finishedThread.join();
 				retry = false;
 			} 
 			catch (InterruptedException e) {
@@ -239,6 +313,9 @@ public class GameView extends SurfaceView implements SurfaceHolder.Callback {
 
 		}
 
+		// buttons, help pages and pause state may have changed
+		requestRender();
+
 		// return true, otherwise MotionEvent.ACTION_MOVE will not be detected
 		return true;
 	}
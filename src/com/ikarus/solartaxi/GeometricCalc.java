@@ -1,17 +1,50 @@
 package com.ikarus.solartaxi;
 
 /**
- * Helper Class for geometrical Calculations
+ * Helper Class for geometrical Calculations.<br>
+ * Besides the exact methods there are allocation free fast variants for the
+ * update loop: squared distance, normalisation without trigonometry and
+ * lookup table sin/cos/atan2 with documented error bounds.
  * @author Nikolaus Leopold
  *
  */
 public class GeometricCalc {
 
+	private final static float TWO_PI = (float) (2*Math.PI);
+
+	// sin lookup table over [0, 2pi], linearly interpolated, the last entry repeats the first
+	private final static int SIN_TABLE_SIZE = 4096;
+	private final static float SIN_TABLE_STEP = TWO_PI / SIN_TABLE_SIZE;
+	private final static float[] SIN_TABLE = new float[SIN_TABLE_SIZE + 1];
+
+	// atan lookup table over [0, 1], linearly interpolated
+	private final static int ATAN_TABLE_SIZE = 1024;
+	private final static float[] ATAN_TABLE = new float[ATAN_TABLE_SIZE + 1];
+
+	static {
+		for (int i = 0; i <= SIN_TABLE_SIZE; i++) {
+			SIN_TABLE[i] = (float) Math.sin(i*(2*Math.PI/SIN_TABLE_SIZE));
+		}
+		for (int i = 0; i <= ATAN_TABLE_SIZE; i++) {
+			ATAN_TABLE[i] = (float) Math.atan((double) i/ATAN_TABLE_SIZE);
+		}
+	}
+
 	/**
 	 * @return euclidean distance between two points
 	 */
 	public static float dist(float x1, float y1, float x2, float y2) {
-		return (float)Math.sqrt(Math.pow(x2 - x1, 2) + Math.pow(y2 - y1, 2));
+		float dx = x2 - x1, dy = y2 - y1;
+		return (float)Math.sqrt(dx*dx + dy*dy);
+	}
+
+	/**
+	 * Use to compare distances without a square root.
+	 * @return squared euclidean distance between two points
+	 */
+	public static float distSq(float x1, float y1, float x2, float y2) {
+		float dx = x2 - x1, dy = y2 - y1;
+		return dx*dx + dy*dy;
 	}
 
 	/**
@@ -22,5 +55,161 @@ public class GeometricCalc {
 		if (angle < 0)
 			angle += 2*Math.PI;
 		return (float) angle;
-	} 
+	}
+
+	/**
+	 * Fast approximation of 1/sqrt(x) (bit level initial guess refined by two
+	 * newton iterations), relative error below 5e-6.
+	 * @param x value > 0
+	 * @return approximately 1/sqrt(x)
+	 */
+	public static float invSqrt(float x) {
+		float half = 0.5f*x;
+		float y = Float.intBitsToFloat(0x5f375a86 - (Float.floatToRawIntBits(x) >> 1));
+		y = y*(1.5f - half*y*y);
+		y = y*(1.5f - half*y*y);
+		return y;
+	}
+
+	/**
+	 * Normalise a vector without trigonometry. Does not allocate.
+	 * @param dx vector x component
+	 * @param dy vector y component
+	 * @param out array of at least 2 floats the unit vector (x, y) is written to,
+	 * (0, 0) for a zero vector
+	 * @return length of the vector
+	 */
+	public static float normalize(float dx, float dy, float[] out) {
+		float lengthSq = dx*dx + dy*dy;
+
+		if (lengthSq == 0) {
+			out[0] = 0;
+			out[1] = 0;
+			return 0;
+		}
+
+		float inv = invSqrt(lengthSq);
+		out[0] = dx*inv;
+		out[1] = dy*inv;
+		return lengthSq*inv;
+	}
+
+	/**
+	 * Lookup table sine, absolute error below 1e-6 for angles in [-2pi, 2pi],
+	 * larger angles additionally lose float precision when reduced.
+	 * @param angle angle in radians
+	 * @return approximately sin(angle)
+	 */
+	public static float sin(float angle) {
+		float pos = (angle % TWO_PI) / SIN_TABLE_STEP;
+		if (pos < 0) {
+			pos += SIN_TABLE_SIZE;
+		}
+
+		int ind = (int) pos;
+		if (ind >= SIN_TABLE_SIZE) {
+			ind = SIN_TABLE_SIZE - 1;
+		}
+		float t = pos - ind;
+		return SIN_TABLE[ind] + (SIN_TABLE[ind + 1] - SIN_TABLE[ind])*t;
+	}
+
+	/**
+	 * Lookup table cosine, same error bound as {@link #sin(float)}.
+	 * @param angle angle in radians
+	 * @return approximately cos(angle)
+	 */
+	public static float cos(float angle) {
+		return sin(angle + TWO_PI/4);
+	}
+
+	/**
+	 * Lookup table atan2, absolute error below 1e-6.
+	 * @return approximately Math.atan2(y, x) in range [-pi, pi]
+	 */
+	public static float atan2(float y, float x) {
+		float ax = Math.abs(x), ay = Math.abs(y);
+
+		if (ax == 0 && ay == 0) {
+			return 0;
+		}
+
+		// reduce to first octant, atan of a ratio in [0, 1]
+		float angle;
+		if (ay <= ax) {
+			angle = atanTable(ay/ax);
+		} else {
+			angle = TWO_PI/4 - atanTable(ax/ay);
+		}
+
+		// back to the actual quadrant
+		if (x < 0) {
+			angle = TWO_PI/2 - angle;
+		}
+		return y < 0 ? -angle : angle;
+	}
+
+	/**
+	 * Lookup table variant of {@link #angle(double, double, double, double)}, absolute error below 1e-6.
+	 * @return angle of a point p on a circle with center c in range [0, 2pi[
+	 */
+	public static float fastAngle(float px, float py, float cx, float cy) {
+		float angle = atan2(py - cy, px - cx);
+		if (angle < 0)
+			angle += TWO_PI;
+		return angle;
+	}
+
+	/**
+	 * Time of impact of a point moving along a segment with a circle, equivalent to a
+	 * moving circle against a static circle with the sum of both radii.
+	 * @param px start x-coordinate of the point
+	 * @param py start y-coordinate of the point
+	 * @param dx displacement in x along the segment
+	 * @param dy displacement in y along the segment
+	 * @param cx circle center x
+	 * @param cy circle center y
+	 * @param r circle radius
+	 * @return fraction of the displacement in [0, 1] at which the point first touches the circle,
+	 * 0 if it starts inside and moves further in, -1 if there is no contact
+	 */
+	public static float sweptCircleTime(float px, float py, float dx, float dy, float cx, float cy, float r) {
+		float fx = px - cx, fy = py - cy;
+
+		float a = dx*dx + dy*dy;
+		float b = fx*dx + fy*dy;
+		float c = fx*fx + fy*fy - r*r;
+
+		// starting inside: contact now, unless moving out
+		if (c <= 0) {
+			return b < 0 || a == 0 ? 0 : -1;
+		}
+
+		// not moving or moving away
+		if (a == 0 || b >= 0) {
+			return -1;
+		}
+
+		float discriminant = b*b - a*c;
+		if (discriminant < 0) {
+			return -1;
+		}
+
+		float t = (-b - (float) Math.sqrt(discriminant)) / a;
+		return t <= 1 ? t : -1;
+	}
+
+	/**
+	 * @param ratio value in [0, 1]
+	 * @return interpolated atan(ratio)
+	 */
+	private static float atanTable(float ratio) {
+		float pos = ratio*ATAN_TABLE_SIZE;
+		int ind = (int) pos;
+		if (ind >= ATAN_TABLE_SIZE) {
+			return ATAN_TABLE[ATAN_TABLE_SIZE];
+		}
+		float t = pos - ind;
+		return ATAN_TABLE[ind] + (ATAN_TABLE[ind + 1] - ATAN_TABLE[ind])*t;
+	}
 }
@@ -0,0 +1,177 @@
+package com.ikarus.solartaxi;
+
+import java.util.Random;
+
+/**
+ * Compares the fast variants in {@link GeometricCalc} with the exact methods they replace
+ * in the update loop, on a desktop JVM: time per call and the largest error seen.<br>
+ * Each pair runs over the same random inputs, a few warm-up rounds let the JIT compile
+ * both before timing, results are summed into a sink so they are not optimized away.
+ *
+ * @author Nikolaus Leopold
+ */
+public class GeometricCalcBenchmark {
+
+	private final static int WARMUP_ROUNDS = 5;
+
+	private final int n;
+	private final float[] x1, y1, x2, y2, angles;
+	private final float[] unit = new float[2];
+
+	// keeps the results alive
+	private double sink;
+
+	/**
+	 * @param n inputs per round
+	 * @param seed seed of the random inputs
+	 */
+	public GeometricCalcBenchmark(int n, long seed) {
+		this.n = n;
+		x1 = new float[n];
+		y1 = new float[n];
+		x2 = new float[n];
+		y2 = new float[n];
+		angles = new float[n];
+
+		// points spread like bodies of a level, angles as of taxi orientations
+		Random random = new Random(seed);
+		for (int i = 0; i < n; i++) {
+			x1[i] = (random.nextFloat() - 0.5f)*20000;
+			y1[i] = (random.nextFloat() - 0.5f)*20000;
+			x2[i] = (random.nextFloat() - 0.5f)*20000;
+			y2[i] = (random.nextFloat() - 0.5f)*20000;
+			angles[i] = (random.nextFloat() - 0.5f)*4*(float) Math.PI;
+		}
+	}
+
+	/**
+	 * Run all comparisons and print one line per pair
+	 * @param rounds timed rounds over all inputs
+	 */
+	public void run(int rounds) {
+		for (int r = 0; r < WARMUP_ROUNDS; r++) {
+			for (int pair = 0; pair < 4; pair++) {
+				time(pair, false);
+				time(pair, true);
+			}
+		}
+
+		String[] names = {"dist < r  vs distSq < r*r", "angle+sin/cos  vs normalize",
+				"Math.sin/cos  vs LUT sin/cos", "Math.atan2  vs LUT atan2"};
+		for (int pair = 0; pair < 4; pair++) {
+			long exact = 0, fast = 0;
+			for (int r = 0; r < rounds; r++) {
+				exact += time(pair, false);
+				fast += time(pair, true);
+			}
+			System.out.printf("%-30s %6.2f ns  %6.2f ns  x%.1f%n", names[pair],
+					(double) exact/rounds/n, (double) fast/rounds/n, (double) exact/fast);
+		}
+
+		System.out.printf("max error: sin/cos %.2e, atan2 %.2e, invSqrt relative %.2e%n",
+				sinError(), atan2Error(), invSqrtError());
+		System.out.println("(sink " + sink + ")");
+	}
+
+	/**
+	 * @return nanoseconds for one round of a pair, the exact or the fast variant
+	 */
+	private long time(int pair, boolean fastVariant) {
+		double sum = 0;
+		long start = System.nanoTime();
+
+		switch (pair) {
+		// range check, e.g. bodies near the taxi
+		case 0:
+			if (fastVariant) {
+				for (int i = 0; i < n; i++) {
+					sum += GeometricCalc.distSq(x1[i], y1[i], x2[i], y2[i]) < 5000*5000 ? 1 : 0;
+				}
+			} else {
+				for (int i = 0; i < n; i++) {
+					sum += GeometricCalc.dist(x1[i], y1[i], x2[i], y2[i]) < 5000 ? 1 : 0;
+				}
+			}
+			break;
+		// direction from a body to the taxi, e.g. for gravity
+		case 1:
+			if (fastVariant) {
+				for (int i = 0; i < n; i++) {
+					GeometricCalc.normalize(x1[i] - x2[i], y1[i] - y2[i], unit);
+					sum += unit[0] + unit[1];
+				}
+			} else {
+				for (int i = 0; i < n; i++) {
+					float angle = GeometricCalc.angle(x1[i], y1[i], x2[i], y2[i]);
+					sum += Math.cos(angle) + Math.sin(angle);
+				}
+			}
+			break;
+		case 2:
+			if (fastVariant) {
+				for (int i = 0; i < n; i++) {
+					sum += GeometricCalc.sin(angles[i]) + GeometricCalc.cos(angles[i]);
+				}
+			} else {
+				for (int i = 0; i < n; i++) {
+					sum += Math.sin(angles[i]) + Math.cos(angles[i]);
+				}
+			}
+			break;
+		case 3:
+			if (fastVariant) {
+				for (int i = 0; i < n; i++) {
+					sum += GeometricCalc.atan2(y1[i], x1[i]);
+				}
+			} else {
+				for (int i = 0; i < n; i++) {
+					sum += Math.atan2(y1[i], x1[i]);
+				}
+			}
+			break;
+		}
+
+		long time = System.nanoTime() - start;
+		sink += sum;
+		return time;
+	}
+
+	private double sinError() {
+		double max = 0;
+		for (int i = 0; i < n; i++) {
+			max = Math.max(max, Math.abs(GeometricCalc.sin(angles[i]) - Math.sin(angles[i])));
+			max = Math.max(max, Math.abs(GeometricCalc.cos(angles[i]) - Math.cos(angles[i])));
+		}
+		return max;
+	}
+
+	private double atan2Error() {
+		double max = 0;
+		for (int i = 0; i < n; i++) {
+			max = Math.max(max, Math.abs(GeometricCalc.atan2(y1[i], x1[i]) - Math.atan2(y1[i], x1[i])));
+		}
+		return max;
+	}
+
+	private double invSqrtError() {
+		double max = 0;
+		for (int i = 0; i < n; i++) {
+			double x = GeometricCalc.distSq(x1[i], y1[i], x2[i], y2[i]);
+			if (x > 0) {
+				max = Math.max(max, Math.abs(GeometricCalc.invSqrt((float) x)*Math.sqrt(x) - 1));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Arguments: [inputs per round] [timed rounds] [seed]
+	 */
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+		new GeometricCalcBenchmark(n, seed).run(rounds);
+	}
+}
@@ -10,6 +10,8 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 
+import com.ikarus.solartaxi.render.Renderer;
+
 /**
  * Represents the HelpDialogue. All Methods are static, Methods are called in @GameView and 
  * draw() in @GameEngine. All Strings can be found in res/values/strings.xml. Call init() 
@@ -33,19 +35,51 @@ public class HelpDialogue {
 	
 	// float array to draw prev/skip arrows, needs 12 floats (4 per line)
 	private static float[] rightArrow, leftArrow;
+
+	// image of the current page drawn every frame, and which page it shows (-1 for none)
+	private static Bitmap pageBM;
+	private static int drawnPage = -1;
+	private static Paint pagePaint;
 		
 	/**
-	 * Draws the Help Dialogue directly on the canvas, uses R.dimen and 
-	 * canvas width/height for independent positioning. 
+	 * Draws the Help Dialogue on top of the game, the current page is drawn from a cached
+	 * image, which is rendered again only when the page or the surface size changed.
+	 * 
+	 * @param renderer renderer to draw with
+	 * @param res Resources to access like dimen, color or strings
+	 */
+	public static void draw(Renderer renderer, Resources res) {
+		int page = currentPage();
+
+		if (pageBM == null || pageBM.getWidth() != renderer.getWidth() || pageBM.getHeight() != renderer.getHeight()) {
+			if (pageBM != null) {
+				pageBM.recycle();
+			}
+			pageBM = Bitmap.createBitmap(renderer.getWidth(), renderer.getHeight(), Bitmap.Config.ARGB_8888);
+			drawnPage = -1;
+		}
+		if (page != drawnPage) {
+			pageBM.eraseColor(Color.TRANSPARENT);
+			renderPage(new Canvas(pageBM), res);
+			pageBM.prepareToDraw();
+			drawnPage = page;
+		}
+
+		renderer.drawBitmap(pageBM, 0, 0, pagePaint);
+	}
+
+	/**
+	 * Renders the current page into a page image, uses R.dimen and 
+	 * screen width/height for independent positioning. 
 	 * 
 	 * <br>IMPORTANTE NOTICE:
 	 * If the order should be changed, skip and prev have to be changed 
 	 * accordingly to ensure correct behaviour.
 	 * 
-	 * @param canvas canvas to draw on
+	 * @param canvas canvas of the page image, the size of the surface
 	 * @param res Resources to access like dimen, color or strings
 	 */
-	public static void draw(Canvas canvas, Resources res) {
+	private static void renderPage(Canvas canvas, Resources res) {
 		// used as spaceing between lines and for corners on Rect
 		float spaceing 	= res.getDimension(R.dimen.help_text_size);
 		
@@ -309,6 +343,31 @@ public class HelpDialogue {
 		}
 	}
 	
+	/**
+	 * @return index of the current page in the order of draw(), next() and prev()
+	 */
+	private static int currentPage() {
+		if (draw_help) {
+			return 0;
+		}
+		else if (draw_controls) {
+			return 1;
+		}
+		else if (draw_aim) {
+			return 2;
+		}
+		else if (draw_shields) {
+			return 3;
+		}
+		else if (draw_battery) {
+			return 4;
+		}
+		else if (draw_stats) {
+			return 5;
+		}
+		return 6;
+	}
+
 	/**
 	 * Skips to the next help page, if called on last page nothing happens.
 	 * For this to work the order has to be the same as in draw() method.
@@ -404,6 +463,22 @@ public class HelpDialogue {
 		bitmapPaint.setStrokeWidth(10);
 		bitmapPaint.setFilterBitmap(true);
 		bitmapPaint.setAntiAlias(true);
+
+		// the page image is kept for the next time, the first page is rendered into it then
+		pagePaint = new Paint();
+		drawnPage = -1;
+	}
+
+	/**
+	 * Frees the page image, e.g. when the game is left, it is created again on the next draw.
+	 * Must not be called while a frame is drawn.
+	 */
+	public static void release() {
+		if (pageBM != null) {
+			pageBM.recycle();
+			pageBM = null;
+		}
+		drawnPage = -1;
 	}
 
 }
@@ -0,0 +1,307 @@
+package com.ikarus.solartaxi;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.RectF;
+
+import com.ikarus.solartaxi.render.Renderer;
+
+/**
+ * Game stats and buttons on top of the screen (battery, credits, shields, passengers on
+ * board, pause, music and help button), kept in an overlay bitmap that is drawn in one
+ * call per frame. Only parts whose values changed are drawn into the overlay again,
+ * where a part has to be cleared, the parts overlapping that area are drawn again as well.
+ *
+ * @author Nikolaus Leopold
+ */
+public class HudLayer {
+
+	// parts of the overlay, each has a bit in the dirty flags
+	private final static int BATTERY = 0;
+	private final static int CREDITS = 1;
+	private final static int SHIELDS = 2;
+	private final static int PASSENGERS = 3;
+	private final static int BUTTONS = 4;
+	private final static int PARTS = 5;
+
+	private final String creditsSign, requiredCreditsLabel;
+	private final Paint textPaint, helpPaint, bitmapPaint;
+
+	// overlay and the screen size it is laid out for
+	private Bitmap overlay;
+	private Canvas overlayCanvas;
+	private int width, height;
+	private float width_s_Margin, height_s_Margin, height_l_margin;
+
+	// values currently shown
+	private Bitmap batteryBM, passengerBM;
+	private int credits, requiredCredits, shields, passengerCount;
+	private boolean paused, musicOn, helpMode;
+	private String creditsText, requiredCreditsText;
+
+	// parts to be drawn again, one bit per part
+	private int dirty;
+
+	// area of each part in the overlay as last drawn, and as it is drawn now
+	private final RectF[] drawnBounds = new RectF[PARTS], bounds = new RectF[PARTS];
+	private final RectF dirtyArea = new RectF();
+
+	// reused for the scaled shield and passenger icons
+	private final Matrix iconMatrix = new Matrix();
+
+	// parts drawn into the overlay since it was laid out, for statistics
+	private int partsDrawn;
+
+	/**
+	 * Constructor, the overlay is created on the first draw
+	 * @param creditsSign label of the credits earned
+	 * @param requiredCreditsLabel label of the credits required to clear the level
+	 * @param textPaint paint for the credits
+	 * @param helpPaint paint for the help button
+	 * @param bitmapPaint paint for battery and passenger icons
+	 */
+	public HudLayer(String creditsSign, String requiredCreditsLabel, Paint textPaint, Paint helpPaint, Paint bitmapPaint) {
+		this.creditsSign = creditsSign;
+		this.requiredCreditsLabel = requiredCreditsLabel;
+		this.textPaint = textPaint;
+		this.helpPaint = helpPaint;
+		this.bitmapPaint = bitmapPaint;
+
+		for (int part = 0; part < PARTS; part++) {
+			drawnBounds[part] = new RectF();
+			bounds[part] = new RectF();
+		}
+	}
+
+	/**
+	 * Draw the overlay, parts whose values changed since the last frame are updated first.
+	 * Does not allocate unless the screen size or the credits change.
+	 * @param renderer renderer to draw with, with identity matrix
+	 * @param world snapshot with battery, credits, shields and passengers of the player taxi
+	 * @param passengerBM bitmap of passengers on board
+	 * @param paused whether the game is paused
+	 * @param musicOn whether background music is playing
+	 * @param helpMode whether help mode is on
+	 */
+	public void draw(Renderer renderer, WorldSnapshot world, Bitmap passengerBM,
+			boolean paused, boolean musicOn, boolean helpMode) {
+
+		if (overlay == null || renderer.getWidth() != width || renderer.getHeight() != height) {
+			layout(renderer.getWidth(), renderer.getHeight(), passengerBM);
+		}
+
+		Bitmap battery = BitmapBank.getBatteryBitmap(world.batteryState);
+		if (battery != batteryBM) {
+			batteryBM = battery;
+			dirty |= 1 << BATTERY;
+		}
+
+		// would have to be changed if credits could go past one million :D
+		if (creditsText == null || world.credits != credits || world.requiredCredits != requiredCredits) {
+			credits = world.credits;
+			requiredCredits = world.requiredCredits;
+			AllocationCheck.allowAllocation();
+			creditsText = creditsSign + String.format(" %,d", credits);
+			requiredCreditsText = requiredCreditsLabel + ": " + String.format(" %,d", requiredCredits);
+			dirty |= 1 << CREDITS;
+		}
+
+		if (world.shields != shields) {
+			shields = world.shields;
+			dirty |= 1 << SHIELDS;
+		}
+
+		if (world.passengerCount != passengerCount || passengerBM != this.passengerBM) {
+			passengerCount = world.passengerCount;
+			this.passengerBM = passengerBM;
+			dirty |= 1 << PASSENGERS;
+		}
+
+		if (paused != this.paused || musicOn != this.musicOn || helpMode != this.helpMode) {
+			this.paused = paused;
+			this.musicOn = musicOn;
+			this.helpMode = helpMode;
+			dirty |= 1 << BUTTONS;
+		}
+
+		if (dirty != 0) {
+			update();
+		}
+
+		renderer.drawBitmap(overlay, 0, 0, null);
+	}
+
+	/**
+	 * @return number of parts drawn into the overlay since it was laid out
+	 */
+	public int getPartsDrawn() {
+		return partsDrawn;
+	}
+
+	/**
+	 * Create the overlay for a screen size, all parts are drawn on the next update
+	 */
+	private void layout(int width, int height, Bitmap passengerBM) {
+		this.width = width;
+		this.height = height;
+
+		width_s_Margin	= (int) Math.ceil(width * 0.01);
+		height_s_Margin	= (int) Math.ceil(height * 0.01);
+		height_l_margin	= (int) Math.ceil(height * 0.1);
+
+		// high enough for the lowest part, the passenger icons below the credits
+		float bottom = Math.max(height * 0.15f, 2.5f*height_l_margin + passengerBM.getHeight()*0.75f);
+		bottom = Math.max(bottom, 2.4f*height_l_margin + textPaint.getTextSize());
+
+		if (overlay != null) {
+			overlay.recycle();
+		}
+		overlay = Bitmap.createBitmap(Math.max(1, width), Math.max(1, (int) Math.ceil(bottom) + 1), Bitmap.Config.ARGB_8888);
+		overlayCanvas = new Canvas(overlay);
+
+		for (int part = 0; part < PARTS; part++) {
+			drawnBounds[part].setEmpty();
+		}
+		dirty = (1 << PARTS) - 1;
+		partsDrawn = 0;
+	}
+
+	/**
+	 * Draw the dirty parts into the overlay, the area of a part before and after the change
+	 * is cleared and all parts overlapping it are drawn again, clipped to that area.
+	 */
+	private void update() {
+		for (int part = 0; part < PARTS; part++) {
+			setBounds(part, bounds[part]);
+		}
+
+		for (int part = 0; part < PARTS; part++) {
+			if ((dirty & (1 << part)) == 0) {
+				continue;
+			}
+
+			dirtyArea.set(bounds[part]);
+			dirtyArea.union(drawnBounds[part]);
+
+			overlayCanvas.save();
+			overlayCanvas.clipRect(dirtyArea);
+			overlayCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+			for (int other = 0; other < PARTS; other++) {
+				if (RectF.intersects(bounds[other], dirtyArea)) {
+					drawPart(other);
+				}
+			}
+			overlayCanvas.restore();
+
+			drawnBounds[part].set(bounds[part]);
+		}
+		dirty = 0;
+	}
+
+	/**
+	 * Area a part covers with the current values
+	 */
+	private void setBounds(int part, RectF out) {
+		switch (part) {
+		case BATTERY:
+			out.set(width_s_Margin, height_s_Margin, width_s_Margin + batteryBM.getWidth(), height_s_Margin + batteryBM.getHeight());
+			break;
+		case CREDITS:
+			float textWidth = Math.max(textPaint.measureText(requiredCreditsText), textPaint.measureText(creditsText));
+			out.set(width_s_Margin, 1.7f*height_l_margin - textPaint.getTextSize(),
+					width_s_Margin + textWidth + height_s_Margin, 2.4f*height_l_margin + textPaint.getTextSize()*0.3f);
+			break;
+		case SHIELDS:
+			Bitmap shieldsBM = BitmapBank.getTaxiBitmap(1100);
+			float offset = height_s_Margin + shieldsBM.getWidth()*0.5f;
+			float left = width/2 - shieldsBM.getWidth()*0.25f - shields/2 * offset;
+			out.set(left, height_s_Margin, left + shields*offset, height_s_Margin + shieldsBM.getHeight()*0.5f);
+			break;
+		case PASSENGERS:
+			float passengerOffset = (passengerBM.getWidth() + passengerBM.getWidth()/6)*0.75f;
+			out.set(width_s_Margin, 2.5f*height_l_margin,
+					width_s_Margin + passengerCount*passengerOffset, 2.5f*height_l_margin + passengerBM.getHeight()*0.75f);
+			break;
+		case BUTTONS:
+			Bitmap musicBM = BitmapBank.getMusicBtnBitmap(0);
+			out.set(width*0.85f - musicBM.getWidth()*0.63f - helpPaint.getTextSize(), 0, width,
+					Math.max(height*0.02f + musicBM.getHeight(), height*0.067f + helpPaint.getTextSize()*0.3f));
+			break;
+		}
+	}
+
+	/**
+	 * Draw a part into the overlay with the current values
+	 */
+	private void drawPart(int part) {
+		++partsDrawn;
+
+		switch (part) {
+		case BATTERY:
+			// correct Bitmap is chosen depending on charge percentage
+			overlayCanvas.drawBitmap(batteryBM, width_s_Margin, height_s_Margin, bitmapPaint);
+			break;
+
+		case CREDITS:
+			overlayCanvas.drawText(requiredCreditsText, width_s_Margin, 1.7f*height_l_margin, textPaint);
+			overlayCanvas.drawText(creditsText, width_s_Margin, 2.4f*height_l_margin, textPaint);
+			break;
+
+		case SHIELDS:
+			// small taxis with shield on
+			Bitmap shieldsBM = BitmapBank.getTaxiBitmap(1100);
+			float scaleFactor = 0.5f;
+			float startPos = width/2 - shieldsBM.getWidth()*scaleFactor/2;
+			float offset = (height_s_Margin+shieldsBM.getWidth()*scaleFactor);
+			iconMatrix.setScale(scaleFactor, scaleFactor);
+			iconMatrix.postTranslate(startPos - shields/2 * offset, height_s_Margin);
+			for (int i = 0; i < shields; ++i) {
+				overlayCanvas.drawBitmap(shieldsBM, iconMatrix, null);
+				iconMatrix.postTranslate(offset, 0);
+			}
+			break;
+
+		case PASSENGERS:
+			// passengers currently onboard
+			scaleFactor = 0.75f;
+			offset = (passengerBM.getWidth() + passengerBM.getWidth()/6)*scaleFactor;
+			iconMatrix.setScale(scaleFactor, scaleFactor);
+			iconMatrix.postTranslate(width_s_Margin, 2.5f*height_l_margin);
+			for (int i = 0; i < passengerCount; ++i) {
+				overlayCanvas.drawBitmap(passengerBM, iconMatrix, bitmapPaint);
+				iconMatrix.postTranslate(offset, 0);
+			}
+			break;
+
+		case BUTTONS:
+			drawButtons();
+			break;
+		}
+	}
+
+	/**
+	 * Draw all Buttons in correct State (pressed or not).
+	 */
+	private void drawButtons() {
+
+		// draw pause/unpause button
+		Bitmap pauseBM = BitmapBank.getPauseBtnBitmap(paused ? 1 : 0);
+		overlayCanvas.drawBitmap(pauseBM, width*0.99f - pauseBM.getWidth(), height * 0.02f, null);
+
+		// draw background music toggle button
+		Bitmap musicBM = BitmapBank.getMusicBtnBitmap(musicOn ? 0 : 1);
+		overlayCanvas.drawBitmap(musicBM, width*0.92f - musicBM.getWidth(), height * 0.02f, null);
+
+		// draw helpMode button
+		if (helpMode) {
+			helpPaint.setARGB(255, 255, 0, 0);
+		} else {
+			helpPaint.setARGB(255, 255, 255, 255);
+		}
+		overlayCanvas.drawText("?", (float) (width*0.85f - BitmapBank.getMusicBtnBitmap(0).getWidth()*0.63f), height * 0.067f, helpPaint);
+	}
+}
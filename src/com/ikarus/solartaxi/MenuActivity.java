@@ -11,7 +11,7 @@ import android.view.View;
 import com.ikarus.solartaxi.highscores.frontend.HighscoresActivity;
 
 /**
- * Activity for the Menu, holds two Buttons (starting the Game and showing the High-Score Table).
+ * Activity for the Menu, holds three Buttons (starting the Game, starting the endless Game and showing the High-Score Table).
  * OnClick for the buttons is set in the activity_menu.xml file.
  * 
  * @author Nikolaus Leopold
@@ -37,6 +37,17 @@ public class MenuActivity extends Activity {
 
 	}
 
+	/**
+	 * Starts the GameActivity in the endless galaxy.
+	 * @param view
+	 */
+	public void startEndless(View view) {
+		Intent intent = new Intent(this, GameActivity.class);
+		intent.putExtra(GameActivity.EXTRA_ENDLESS, true);
+		this.startActivity(intent);
+		this.finish();
+	}
+
 	/**
 	 * Starts HighscoresActivity
 	 * @param view
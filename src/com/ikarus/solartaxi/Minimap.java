@@ -0,0 +1,242 @@
+package com.ikarus.solartaxi;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+import com.ikarus.solartaxi.render.Renderer;
+
+/**
+ * Downscaled map of the level in the bottom right corner of the screen. The bodies, planets colored by
+ * their waiting passengers, are drawn into a cached bitmap once per {@link MinimapLayout},
+ * so per frame only the map image, the taxi marker and the target planet highlights are
+ * drawn, two bitmaps plus one per passenger on board. Orbiting bodies are not part of
+ * the map image, each gets a small sprite drawn where the body is in the snapshot, so
+ * the target highlights stay on them.
+ *
+ * @author Nikolaus Leopold
+ */
+public class Minimap {
+
+	// edge length of the map and its distance from the bottom right screen corner in screen heights
+	private final static float SIZE = 0.28f;
+	private final static float MARGIN = 0.02f;
+
+	// smallest body radius on the map in pixels, so small planets stay visible
+	private final static float MIN_BODY_RADIUS = 1.5f;
+
+	// marker sizes in pixels
+	private final static int TAXI_MARKER_SIZE = 14;
+	private final static int TARGET_MARKER_SIZE = 16;
+
+	private final int sunColor, noPassengerColor, passengerColor, manyPassengersColor, frameColor;
+
+	// cached map and the layout and size it shows
+	private Bitmap map;
+	private MinimapLayout drawnLayout;
+	private int mapSize;
+
+	// sprites of the orbiting bodies of the layout, in the order of MinimapLayout.moving
+	private Bitmap[] movingSprites = new Bitmap[0];
+
+	// markers drawn on top of the map each frame, created with the map
+	private Bitmap taxiMarker, targetMarker;
+	private final int highlightColor;
+
+	private final Paint bitmapPaint, renderPaint;
+	private final Matrix markerMatrix = new Matrix();
+
+	/**
+	 * Constructor, the map is drawn on the first frame
+	 * @param passengerColor color of planets with waiting passengers and of the taxi marker
+	 * @param highlightColor color of planets with many waiting passengers and of target highlights
+	 */
+	public Minimap(int passengerColor, int highlightColor) {
+		this.sunColor = Color.argb(255, 255, 170, 40);
+		this.noPassengerColor = Color.argb(255, 100, 100, 110);
+		this.passengerColor = passengerColor;
+		this.manyPassengersColor = highlightColor;
+		this.frameColor = Color.argb(160, Color.red(passengerColor), Color.green(passengerColor), Color.blue(passengerColor));
+		this.highlightColor = highlightColor;
+
+		bitmapPaint = new Paint();
+		bitmapPaint.setFilterBitmap(true);
+
+		renderPaint = new Paint();
+		renderPaint.setAntiAlias(true);
+	}
+
+	/**
+	 * Draw the map with the taxi and its target planets, the map image is drawn again only
+	 * if the layout or the screen size changed
+	 * @param renderer renderer to draw with, with identity matrix
+	 * @param world snapshot with the layout, the target planets and the taxi orientation
+	 * @param taxiX x-coordinate of the taxi as drawn
+	 * @param taxiY y-coordinate of the taxi as drawn
+	 * @param taxiOrientation orientation of the taxi as drawn
+	 */
+	public void draw(Renderer renderer, WorldSnapshot world, float taxiX, float taxiY, double taxiOrientation) {
+		MinimapLayout layout = world.minimap;
+		if (layout == null) {
+			return;
+		}
+
+		int size = Math.max(1, (int) (renderer.getHeight()*SIZE));
+		if (layout != drawnLayout || size != mapSize) {
+			render(layout, size);
+		}
+
+		float left = renderer.getWidth() - renderer.getHeight()*MARGIN - size;
+		float top = renderer.getHeight()*(1 - MARGIN) - size;
+		float scale = size/layout.size;
+		renderer.drawBitmap(map, left, top, bitmapPaint);
+
+		for (int j = 0; j < layout.moving.length; j++) {
+			Bitmap sprite = movingSprites[j];
+			renderer.drawBitmap(sprite, mapX(world.minimapX[j], layout, left, scale) - sprite.getWidth()/2f,
+					mapY(world.minimapY[j], layout, top, scale) - sprite.getHeight()/2f, bitmapPaint);
+		}
+
+		for (int i = 0; i < world.passengerCount; i++) {
+			renderer.drawBitmap(targetMarker, mapX(world.targetX[i], layout, left, scale) - TARGET_MARKER_SIZE/2f,
+					mapY(world.targetY[i], layout, top, scale) - TARGET_MARKER_SIZE/2f, bitmapPaint);
+		}
+
+		markerMatrix.setRotate((float) (taxiOrientation*180/Math.PI), TAXI_MARKER_SIZE/2f, TAXI_MARKER_SIZE/2f);
+		markerMatrix.postTranslate(mapX(taxiX, layout, left, scale) - TAXI_MARKER_SIZE/2f, mapY(taxiY, layout, top, scale) - TAXI_MARKER_SIZE/2f);
+		renderer.drawBitmap(taxiMarker, markerMatrix, bitmapPaint);
+	}
+
+	/**
+	 * Free all bitmaps, e.g. when a new level starts, they are created again on the next frame
+	 */
+	public void recycle() {
+		if (map != null) {
+			map.recycle();
+			map = null;
+		}
+		recycleMovingSprites();
+		if (taxiMarker != null) {
+			taxiMarker.recycle();
+			targetMarker.recycle();
+			taxiMarker = targetMarker = null;
+		}
+		drawnLayout = null;
+	}
+
+	/**
+	 * @return screen x-coordinate of a world x-coordinate, kept on the map
+	 */
+	private float mapX(float x, MinimapLayout layout, float left, float scale) {
+		return left + Math.max(0, Math.min(mapSize, (x - layout.minX)*scale));
+	}
+
+	private float mapY(float y, MinimapLayout layout, float top, float scale) {
+		return top + Math.max(0, Math.min(mapSize, (y - layout.minY)*scale));
+	}
+
+	/**
+	 * Draw the taxi and target markers
+	 */
+	private void renderMarkers() {
+		// arrow pointing along +x, rotated to the taxi orientation when drawn
+		taxiMarker = Bitmap.createBitmap(TAXI_MARKER_SIZE, TAXI_MARKER_SIZE, Bitmap.Config.ARGB_8888);
+		Path arrow = new Path();
+		arrow.moveTo(TAXI_MARKER_SIZE, TAXI_MARKER_SIZE/2f);
+		arrow.lineTo(0, 0);
+		arrow.lineTo(TAXI_MARKER_SIZE/4f, TAXI_MARKER_SIZE/2f);
+		arrow.lineTo(0, TAXI_MARKER_SIZE);
+		arrow.close();
+		renderPaint.setStyle(Paint.Style.FILL);
+		renderPaint.setColor(Color.WHITE);
+		new Canvas(taxiMarker).drawPath(arrow, renderPaint);
+
+		targetMarker = Bitmap.createBitmap(TARGET_MARKER_SIZE, TARGET_MARKER_SIZE, Bitmap.Config.ARGB_8888);
+		renderPaint.setStyle(Paint.Style.STROKE);
+		renderPaint.setStrokeWidth(2);
+		renderPaint.setColor(highlightColor);
+		new Canvas(targetMarker).drawCircle(TARGET_MARKER_SIZE/2f, TARGET_MARKER_SIZE/2f, TARGET_MARKER_SIZE/2f - 1, renderPaint);
+	}
+
+	/**
+	 * Draw the bodies of a layout that don't move into the map image, and each orbiting one into a sprite
+	 */
+	private void render(MinimapLayout layout, int size) {
+		AllocationCheck.allowAllocation();
+		if (taxiMarker == null) {
+			renderMarkers();
+		}
+		if (map == null || size != mapSize) {
+			if (map != null) {
+				map.recycle();
+			}
+			map = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+		}
+		drawnLayout = layout;
+		mapSize = size;
+
+		Canvas canvas = new Canvas(map);
+		canvas.drawColor(Color.TRANSPARENT, android.graphics.PorterDuff.Mode.CLEAR);
+
+		// translucent background with a frame
+		RectF frame = new RectF(1, 1, size - 1, size - 1);
+		renderPaint.setStyle(Paint.Style.FILL);
+		renderPaint.setColor(Color.argb(150, 0, 0, 0));
+		canvas.drawRoundRect(frame, 6, 6, renderPaint);
+		renderPaint.setStyle(Paint.Style.STROKE);
+		renderPaint.setStrokeWidth(2);
+		renderPaint.setColor(frameColor);
+		canvas.drawRoundRect(frame, 6, 6, renderPaint);
+
+		renderPaint.setStyle(Paint.Style.FILL);
+		float scale = size/layout.size;
+		int j = 0;
+		for (int i = 0; i < layout.x.length; i++) {
+			if (j < layout.moving.length && layout.moving[j] == i) {
+				++j;
+				continue;
+			}
+			renderPaint.setColor(bodyColor(layout, i));
+			canvas.drawCircle((layout.x[i] - layout.minX)*scale, (layout.y[i] - layout.minY)*scale,
+					Math.max(MIN_BODY_RADIUS, layout.radius[i]*scale), renderPaint);
+		}
+		map.prepareToDraw();
+
+		recycleMovingSprites();
+		movingSprites = new Bitmap[layout.moving.length];
+		for (j = 0; j < layout.moving.length; j++) {
+			int i = layout.moving[j];
+			float radius = Math.max(MIN_BODY_RADIUS, layout.radius[i]*scale);
+			int spriteSize = (int) Math.ceil(2*radius) + 2;
+			movingSprites[j] = Bitmap.createBitmap(spriteSize, spriteSize, Bitmap.Config.ARGB_8888);
+			renderPaint.setColor(bodyColor(layout, i));
+			new Canvas(movingSprites[j]).drawCircle(spriteSize/2f, spriteSize/2f, radius, renderPaint);
+		}
+	}
+
+	/**
+	 * @return color of body i of a layout, planets by their waiting passengers
+	 */
+	private int bodyColor(MinimapLayout layout, int i) {
+		if (layout.sun[i]) {
+			return sunColor;
+		} else if (layout.waiting[i] == 0) {
+			return noPassengerColor;
+		} else if (layout.waiting[i] < 3) {
+			return passengerColor;
+		} else {
+			return manyPassengersColor;
+		}
+	}
+
+	private void recycleMovingSprites() {
+		for (int j = 0; j < movingSprites.length; j++) {
+			movingSprites[j].recycle();
+		}
+		movingSprites = new Bitmap[0];
+	}
+}
@@ -0,0 +1,125 @@
+package com.ikarus.solartaxi;
+
+import com.ikarus.solartaxi.celestialbodies.CelestialBody;
+import com.ikarus.solartaxi.celestialbodies.Planet;
+import com.ikarus.solartaxi.level.BodyTable;
+import com.ikarus.solartaxi.level.Level;
+
+/**
+ * What the minimap shows of a level: the area it covers and every body in the body
+ * table with its size, type and number of waiting passengers. Built on the simulation
+ * thread only when the body table or the waiting passengers change, and not modified
+ * afterwards, so the render thread can keep its map image until it gets another layout.
+ * Orbiting bodies are listed separately ({@link #moving}), the map image only shows the
+ * bodies that don't move and the orbiting ones are drawn each frame where they are.<br>
+ * Plain Java without Android dependencies.
+ *
+ * @author Nikolaus Leopold
+ */
+public class MinimapLayout {
+
+	// share of the area covered left free around the bodies
+	private final static float MARGIN = 0.05f;
+
+	// body table the layout was built from
+	private final BodyTable table;
+
+	// square area covered, in world coordinates
+	public final float minX, minY, size;
+
+	// bodies by body table index
+	public final float[] x, y, radius;
+	public final boolean[] sun;
+	public final int[] waiting;
+
+	// body table indices of the orbiting bodies
+	public final int[] moving;
+
+	private MinimapLayout(Level level) {
+		table = level.getBodyTable();
+		int n = table.size();
+
+		x = new float[n];
+		y = new float[n];
+		radius = new float[n];
+		sun = new boolean[n];
+		waiting = new int[n];
+
+		int movingCount = 0;
+		for (int i = 0; i < n; i++) {
+			if (table.isMoving(i)) {
+				++movingCount;
+			}
+		}
+		moving = new int[movingCount];
+		movingCount = 0;
+
+		float x0 = Float.POSITIVE_INFINITY, y0 = Float.POSITIVE_INFINITY;
+		float x1 = Float.NEGATIVE_INFINITY, y1 = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			x[i] = table.x[i];
+			y[i] = table.y[i];
+			radius[i] = table.radius[i];
+			sun[i] = table.type[i] == BodyTable.TYPE_SUN;
+			waiting[i] = waitingCount(table.getBody(i));
+			if (table.isMoving(i)) {
+				moving[movingCount++] = i;
+			}
+
+			x0 = Math.min(x0, x[i] - radius[i]);
+			y0 = Math.min(y0, y[i] - radius[i]);
+			x1 = Math.max(x1, x[i] + radius[i]);
+			y1 = Math.max(y1, y[i] + radius[i]);
+		}
+
+		// levels with a boundary are shown as a whole, levels without one around their bodies
+		if (!Float.isInfinite(level.getMinX()) && !Float.isInfinite(level.getMaxY())) {
+			x0 = Math.min(x0, level.getMinX());
+			y0 = Math.min(y0, level.getMinY());
+			x1 = Math.max(x1, level.getMaxX());
+			y1 = Math.max(y1, level.getMaxY());
+		}
+		if (n == 0 && Float.isInfinite(x0)) {
+			x0 = y0 = -1;
+			x1 = y1 = 1;
+		}
+
+		float side = Math.max(x1 - x0, y1 - y0)*(1 + 2*MARGIN);
+		minX = (x0 + x1 - side)/2;
+		minY = (y0 + y1 - side)/2;
+		size = side;
+	}
+
+	/**
+	 * Layout of the current state of a level, does not allocate if nothing changed
+	 * @param previous layout built before, may be null
+	 * @param level level to show
+	 * @return previous if it still shows the level, a new layout otherwise
+	 */
+	public static MinimapLayout update(MinimapLayout previous, Level level) {
+		if (previous != null && previous.shows(level)) {
+			return previous;
+		}
+		AllocationCheck.allowAllocation();
+		return new MinimapLayout(level);
+	}
+
+	/**
+	 * @return whether the layout was built from the current body table and the passengers waiting are the same
+	 */
+	private boolean shows(Level level) {
+		if (level.getBodyTable() != table) {
+			return false;
+		}
+		for (int i = 0; i < waiting.length; i++) {
+			if (waiting[i] != waitingCount(table.getBody(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int waitingCount(CelestialBody body) {
+		return body instanceof Planet ? ((Planet) body).getWaitingPassengerCount() : 0;
+	}
+}
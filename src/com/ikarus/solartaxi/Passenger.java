@@ -2,8 +2,6 @@ package com.ikarus.solartaxi;
 
 import java.util.Random;
 
-import android.graphics.Matrix;
-
 import com.ikarus.solartaxi.celestialbodies.Planet;
 
 /**
@@ -22,14 +20,14 @@ public class Passenger {
 	 * Instances should be constructed by Planet objects
 	 * @param sourcePlanet planet of origin ('spawn planet')
 	 * @param targetPlanet passenger destination planet
+	 * @param random used to place the passenger on the surface
 	 */
-	public Passenger(Planet sourcePlanet, Planet targetPlanet) {
+	public Passenger(Planet sourcePlanet, Planet targetPlanet, Random random) {
 		
 		this.sourcePlanet = sourcePlanet;
 		this.targetPlanet = targetPlanet;
 		
-		Random rand = new Random();
-		rotation = rand.nextDouble() * 2*Math.PI;
+		rotation = random.nextDouble() * 2*Math.PI;
 		
 		// credits paid for trip depend on target planet distance
 		credits = (int)Math.sqrt(Math.pow(targetPlanet.getX() - sourcePlanet.getX(), 2) 
@@ -52,17 +50,23 @@ public class Passenger {
 	}
 	
 	/**
-	 * @return transformation matrix of passenger to world coordinates
+	 * @return angle of the passenger position on the source planet surface in range [0, 2pi[
 	 */
-	public Matrix getMatrix() {
-		Matrix passengerMatrix = new Matrix();
-		
-		float dx = sourcePlanet.getX() + (float)Math.cos(rotation) * sourcePlanet.getRadius();
-		float dy = sourcePlanet.getY() + (float)Math.sin(rotation) * sourcePlanet.getRadius();
-		
-		passengerMatrix.postRotate((float)(rotation*180/Math.PI + 90));
-		passengerMatrix.postTranslate(dx, dy);
-		
-		return passengerMatrix;
+	public double getRotation() {
+		return rotation;
+	}
+
+	/**
+	 * @return x-coordinate of the passenger position on the source planet surface
+	 */
+	public float getX() {
+		return sourcePlanet.getX() + (float)Math.cos(rotation) * sourcePlanet.getRadius();
+	}
+
+	/**
+	 * @return y-coordinate of the passenger position on the source planet surface
+	 */
+	public float getY() {
+		return sourcePlanet.getY() + (float)Math.sin(rotation) * sourcePlanet.getRadius();
 	}
 }
\ No newline at end of file
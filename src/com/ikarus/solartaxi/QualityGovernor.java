@@ -0,0 +1,104 @@
+package com.ikarus.solartaxi;
+
+/**
+ * Picks the drawing quality from the time frames take. If the average of the last frames
+ * runs close to the frame budget, the next expensive feature is turned off, one level at
+ * a time. If frames have had plenty of headroom for a while, the last one is turned on
+ * again. Levels that had to be left soon after stepping up to them have to wait longer
+ * before the next try, so the quality doesn't flap between two levels.<br>
+ * Plain Java without Android dependencies, used by the render thread only.
+ *
+ * @author Nikolaus Leopold
+ */
+public class QualityGovernor {
+
+	// quality levels, each one turns off one more feature than the one before
+	public final static int FULL = 0;
+	public final static int NO_PASSENGER_FILTERING = 1;
+	public final static int NO_ANTI_ALIASING = 2;
+	public final static int FEWER_STARS = 3;
+	public final static int REDUCED_RESOLUTION = 4;
+	public final static int LOW_RESOLUTION = 5;
+
+	// frames averaged
+	private final static int WINDOW = 30;
+
+	// share of the frame budget the average must exceed to step down, and stay below to step up
+	private final static float DOWN_THRESHOLD = 0.9f;
+	private final static float UP_THRESHOLD = 0.6f;
+
+	// frames in a row with headroom before stepping up, at least and at most
+	private final static int MIN_UP_DELAY = 2*WINDOW;
+	private final static int MAX_UP_DELAY = 64*WINDOW;
+
+	// frame times in nanoseconds, ring buffer
+	private final long[] frameTimes = new long[WINDOW];
+	private int next, count;
+	private long sum;
+
+	private int level = FULL;
+
+	// frames in a row with headroom, and how many are needed to step up
+	private int headroomFrames;
+	private int upDelay = MIN_UP_DELAY;
+
+	// frames drawn since the last step up, to tell if it was too early
+	private int framesSinceUp = Integer.MAX_VALUE;
+
+	/**
+	 * Add the time of a frame drawn while the game is running
+	 * @param frameTime time to draw the frame in nanoseconds, without waiting for the display (vsync)
+	 * @param budget time per frame at the target frame rate in nanoseconds
+	 * @return true if the level changed
+	 */
+	public boolean frameDrawn(long frameTime, long budget) {
+		sum += frameTime - frameTimes[next];
+		frameTimes[next] = frameTime;
+		next = (next + 1) % WINDOW;
+		if (framesSinceUp < Integer.MAX_VALUE) {
+			++framesSinceUp;
+		}
+		if (count < WINDOW) {
+			++count;
+			return false;
+		}
+
+		long average = sum / WINDOW;
+		if (average > budget*DOWN_THRESHOLD && level < LOW_RESOLUTION) {
+			// stepped up too early, wait twice as long next time
+			if (framesSinceUp <= upDelay) {
+				upDelay = Math.min(2*upDelay, MAX_UP_DELAY);
+			}
+			setLevel(level + 1);
+			return true;
+		}
+
+		headroomFrames = average < budget*UP_THRESHOLD ? headroomFrames + 1 : 0;
+		if (headroomFrames >= upDelay && level > FULL) {
+			framesSinceUp = 0;
+			setLevel(level - 1);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return current quality level, FULL to LOW_RESOLUTION
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Change the level and start measuring it from scratch
+	 */
+	private void setLevel(int level) {
+		this.level = level;
+		for (int i = 0; i < WINDOW; i++) {
+			frameTimes[i] = 0;
+		}
+		next = count = 0;
+		sum = 0;
+		headroomFrames = 0;
+	}
+}
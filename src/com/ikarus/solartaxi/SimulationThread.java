@@ -0,0 +1,122 @@
+package com.ikarus.solartaxi;
+
+/**
+ * Thread updating the game state in fixed time steps (ticks), independent of drawing.
+ * Elapsed time is accumulated and consumed tick by tick, after each batch of ticks the
+ * new state is handed to the render thread ({@link GameLoopThread}) as a snapshot,
+ * with the time already passed of the next tick to draw in between ticks.<br>
+ * While the game is paused or in help mode the thread blocks until it is woken
+ * ({@link #wake()}), instead of waking every tick to do nothing.
+ *
+ * @author Nikolaus Leopold
+ */
+public class SimulationThread extends Thread {
+
+	private final static int DEFAULT_TICK_RATE = Spaceship.REFERENCE_TICK_RATE;
+
+	// elapsed time per batch is capped, so a long stall (e.g. GC) doesn't cause a burst of updates
+	private final static long MAX_ELAPSED_TIME = 100000000L;
+
+	private GameView view;
+	private GameEngine engine;
+	private volatile boolean finished; // if this is set the loop terminates
+
+	// updates per second
+	private volatile int tickRate;
+
+	private final AllocationCheck allocationCheck = new AllocationCheck("tick batch");
+
+	// waited on while the game is not running
+	private final Object runLock = new Object();
+
+	public SimulationThread(GameView view, GameEngine engine) {
+		super("simulation");
+		this.view = view;
+		this.engine = engine;
+		this.tickRate = DEFAULT_TICK_RATE;
+	}
+
+	public void setFinished(boolean finished) {
+		this.finished = finished;
+		// wake the thread if it is blocked
+		wake();
+	}
+
+	/**
+	 * Check again whether the game is running, call after the pause or help mode changed. Thread safe.
+	 */
+	public void wake() {
+		synchronized (runLock) {
+			runLock.notifyAll();
+		}
+	}
+
+	/**
+	 * @param tickRate number of game state updates per second
+	 */
+	public void setTickRate(int tickRate) {
+		this.tickRate = tickRate;
+	}
+
+	@Override
+	public void run() {
+		long lastTime = System.nanoTime();
+		long accumulator = 0;
+
+		while (!finished) {
+
+			// nothing is updated until the game runs again, the time in between is not simulated
+			if (view.isPaused() || view.inHelpMode()) {
+				awaitRunning();
+				lastTime = System.nanoTime();
+				continue;
+			}
+
+			allocationCheck.begin();
+
+			long beginTime = System.nanoTime();
+			accumulator += Math.min(beginTime - lastTime, MAX_ELAPSED_TIME);
+			lastTime = beginTime;
+
+			// update game state in fixed steps for the time that has passed
+			long tickPeriod = 1000000000L / tickRate;
+			boolean running = !view.isPaused() && !view.inHelpMode();
+			boolean updated = false;
+			while (accumulator >= tickPeriod) {
+				if (running) {
+					engine.update(1.0f / tickRate);
+					updated = true;
+				}
+				accumulator -= tickPeriod;
+			}
+
+			if (updated) {
+				engine.publish(1.0f / tickRate, accumulator);
+				// the render thread may have gone idle if the game was paused during the batch
+				view.requestRender();
+			}
+			allocationCheck.end(running);
+
+			// sleep until the next tick is due
+			long sleepTime = (tickPeriod - accumulator) / 1000000L;
+			try {
+				Thread.sleep(Math.max(1, sleepTime));
+			}
+			catch (InterruptedException e) {}
+		}
+	}
+
+	/**
+	 * Block while the game is paused or in help mode, returns early if the thread is finished
+	 */
+	private void awaitRunning() {
+		synchronized (runLock) {
+			while ((view.isPaused() || view.inHelpMode()) && !finished) {
+				try {
+					runLock.wait();
+				}
+				catch (InterruptedException e) {}
+			}
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package com.ikarus.solartaxi;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands {@link WorldSnapshot}s from the simulation thread to the render thread without
+ * locks (triple buffering). The writer fills its back snapshot and publishes it, the
+ * reader takes the latest published one. Neither thread ever waits for the other, the
+ * reader may skip snapshots and draws the same one again if none was published.<br>
+ * Exactly one writer and one reader thread.
+ *
+ * @author Nikolaus Leopold
+ */
+public class SnapshotExchange {
+
+	// set in the shared state when the snapshot in the middle has not been taken yet
+	private final static int FRESH = 4;
+
+	private final WorldSnapshot[] snapshots = {new WorldSnapshot(), new WorldSnapshot(), new WorldSnapshot()};
+
+	// index of the snapshot in the middle, plus FRESH
+	private final AtomicInteger middle = new AtomicInteger(1);
+
+	// owned by the writer and the reader
+	private int back = 0, front = 2;
+
+	/**
+	 * @return snapshot to be filled by the writer, not seen by the reader until published
+	 */
+	public WorldSnapshot getBack() {
+		return snapshots[back];
+	}
+
+	/**
+	 * Make the back snapshot the latest one, the writer gets another one to fill
+	 */
+	public void publish() {
+		back = middle.getAndSet(back | FRESH) & 3;
+	}
+
+	/**
+	 * @return latest published snapshot, owned by the reader until the next call
+	 */
+	public WorldSnapshot getLatest() {
+		if ((middle.get() & FRESH) != 0) {
+			front = middle.getAndSet(front) & 3;
+		}
+		return snapshots[front];
+	}
+}
@@ -1,13 +1,10 @@
 package com.ikarus.solartaxi;
 
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.NoSuchElementException;
+import java.util.ArrayList;
 
-import com.ikarus.solartaxi.celestialbodies.CelestialBody;
 import com.ikarus.solartaxi.celestialbodies.Planet;
-import com.ikarus.solartaxi.celestialbodies.Sun;
+import com.ikarus.solartaxi.level.BodyTable;
+import com.ikarus.solartaxi.level.Level;
 
 /**
  * Spaceship class for player controlled Taxi. 
@@ -19,15 +16,17 @@ import com.ikarus.solartaxi.celestialbodies.Sun;
 public class Spaceship {
 
 	// VARIABLES TO CONTROL MOVEMENT BEHAVIOUR
-	private static final float  THRUST_TRANSLATION_FACTOR  	= 0.4f;
-	private static final float  THRUST_ROTATION_FACTOR     	= 0.015f;
-	private static final float  SPEED_DAMPING              	= 0.99f;
-	private static final double ANGULAR_SPEED_DAMPING      	= 0.95;
-	private static final int 	DISTANCE_COEFF_GRAVITY		= 3;
-	private static final float  MAX_LANDING_SPEED          	= 5.0f;
-	private static final double MAX_LANDING_TILT           	= Math.PI/8;
-	private static final float  SPACESHIP_COLLISION_RADIUS 	= 42; //should be determined from bitmap
-	private static float  		GRAVITY_FACTOR             	= 120.0f;
+	static final float  		THRUST_TRANSLATION_FACTOR  	= 0.4f;
+	static final float  		THRUST_ROTATION_FACTOR     	= 0.015f;
+	static final float  		SPEED_DAMPING              	= 0.99f;
+	static final double 		ANGULAR_SPEED_DAMPING      	= 0.95;
+	static final float  		MAX_LANDING_SPEED          	= 5.0f;
+	static final double 		MAX_LANDING_TILT           	= Math.PI/8;
+	static final float  		SPACESHIP_COLLISION_RADIUS 	= 42; //should be determined from bitmap
+
+	// update rate the movement variables above are tuned for, per tick values 
+	// are scaled by dt*REFERENCE_TICK_RATE so movement is independent of the tick rate
+	public static final int 	REFERENCE_TICK_RATE			= 50;
 
 	// current bitmap to draw (see updateBitmapState() for encoding)
 	private int bitmapState; 
@@ -38,13 +37,23 @@ public class Spaceship {
 	// coordinates in previous frame (used to calculate actual speed)
 	private float lastX, lastY; 
 
+	// length of the last update step in reference ticks
+	private float lastTicks;
+
+	// position and orientation before the last update, drawing blends towards the current ones
+	private float prevX, prevY;
+	private double prevOrientation;
+
 	// speed in look direction
 	private float speed; 
 
 	private double orientation, angularSpeed;
 
-	// closest Planet or Sun
-	private CelestialBody closestSurface;
+	// packed bodies of the level of the last update
+	private BodyTable bodies;
+
+	// index of closest Planet or Sun in bodies, -1 if none in range
+	private int closestSurface;
 
 	// distance to the closest Planet/Sun
 	private float distToClosestSurface;
@@ -57,8 +66,23 @@ public class Spaceship {
 
 	private int chargingSide, shields, credits, maxPassengerCount;
 
+	// movement rules, also holds the contact point and normal of the last collision
+	private final TaxiMotion motion = new TaxiMotion();
+
+	// unit vector from the current sun center to the taxi, reused to avoid allocation
+	private final float[] normal = new float[2];
+
+	// number of times thrust was applied, used to detect changes in the flight path
+	private int thrustCount;
+
+	// factor applied to the gravity of all bodies
+	private float gravityFactor;
+
+	// receives crash and credit events, may be null
+	private TaxiListener listener;
+
 	// List of Passengers currently on board
-	private LinkedList<Passenger> passengers = new LinkedList<Passenger>();
+	private ArrayList<Passenger> passengers;
 
 	/**
 	 * Constructor
@@ -71,13 +95,17 @@ public class Spaceship {
 		this.y = y;
 		this.lastX = x;
 		this.lastY = y;
+		this.lastTicks = 1;
 		this.speed = 0;
 		this.orientation = orientation;
 		this.angularSpeed = 0;
+		this.prevX = x;
+		this.prevY = y;
+		this.prevOrientation = orientation;
 
 		this.bitmapState = 00;
 
-		this.closestSurface = null;
+		this.closestSurface = -1;
 		this.distToClosestSurface = Float.POSITIVE_INFINITY;
 		this.landed = false;
 		this.crashed = false;
@@ -90,7 +118,10 @@ public class Spaceship {
 		this.battery = new TaxiBattery();
 
 		this.maxPassengerCount = 3;
+		this.passengers = new ArrayList<Passenger>(maxPassengerCount);
 		this.credits = 0;
+
+		this.gravityFactor = 120.0f;
 	}
 
 	/**
@@ -107,6 +138,27 @@ public class Spaceship {
 		return y;
 	}
 
+	/**
+	 * @return x-coordinate of spaceship center before the last update
+	 */
+	public float getPrevX() {
+		return prevX;
+	}
+
+	/**
+	 * @return y-coordinate of spaceship center before the last update
+	 */
+	public float getPrevY() {
+		return prevY;
+	}
+
+	/**
+	 * @return direction in which taxi was looking before the last update
+	 */
+	public double getPrevOrientation() {
+		return prevOrientation;
+	}
+
 	/**
 	 * @return direction in which taxi is looking, range [0,2pi[
 	 */
@@ -137,10 +189,10 @@ public class Spaceship {
 	 * this implies that the speed value is not the actual displacement rate
 	 * since it doesn't include the gravtiational effect. 
 	 * thus we calculate it from actual displacement per frame
-	 * @return the actual speed determined as displacement per frame
+	 * @return the actual speed determined as displacement per reference tick
 	 */
 	public float getSpeed() {
-		return GeometricCalc.dist(x, y, lastX, lastY);
+		return GeometricCalc.dist(x, y, lastX, lastY) / lastTicks;
 	}
 
 	/**
@@ -186,15 +238,12 @@ public class Spaceship {
 	}
 
 	/**
-	 * @return list of target planets passengers intend to travel to
+	 * Does not allocate, to be called every frame.
+	 * @param i index of a passenger in the taxi, 0 to {@link #getPassengerCount()}-1
+	 * @return target planet the passenger intends to travel to
 	 */
-	public LinkedList<Planet> getTargetPlanets() {
-		LinkedList<Planet> targetPlanets = new LinkedList<Planet>();
-		for (Passenger p : passengers) {
-			targetPlanets.add(p.getTargetPlanet());
-		}
-
-		return targetPlanets;
+	public Planet getTargetPlanet(int i) {
+		return passengers.get(i).getTargetPlanet();
 	}
 
 	/**
@@ -204,6 +253,20 @@ public class Spaceship {
 		return distToClosestSurface;
 	}
 
+	/**
+	 * @return x-coordinate of the point where the taxi last touched a surface
+	 */
+	public float getContactX() {
+		return motion.contactX;
+	}
+
+	/**
+	 * @return y-coordinate of the point where the taxi last touched a surface
+	 */
+	public float getContactY() {
+		return motion.contactY;
+	}
+
 	/**
 	 * @return whether we have landed safely
 	 */
@@ -222,9 +285,9 @@ public class Spaceship {
 	 * @return whether angle allows for safe landing
 	 */
 	public boolean isAngleOk() {
-		if (closestSurface == null)
+		if (closestSurface == -1)
 			return false;
-		return Math.abs(GeometricCalc.angle(x, y, closestSurface.getX(), closestSurface.getY()) - orientation) <= MAX_LANDING_TILT;
+		return Math.abs(GeometricCalc.angle(x, y, bodies.x[closestSurface], bodies.y[closestSurface]) - orientation) <= MAX_LANDING_TILT;
 	}
 
 	/**
@@ -268,22 +331,6 @@ public class Spaceship {
 		y += deltaY;
 	}
 
-	/**
-	 * Change orientation.<br>
-	 * Orientation automatically stays in range [0,2pi[
-	 * @param delta rotation angle in radians
-	 */
-	private void rotate(double delta) {
-		orientation += delta;
-
-		if (orientation >= 2*Math.PI) {
-			orientation %= 2*Math.PI;
-		}
-		else if (orientation < 0) {
-			orientation += 2*Math.PI;
-		}
-	}
-
 	/**
 	 * Change speed in orientation direction.
 	 * @param delta speed increment/decrement
@@ -340,13 +387,23 @@ public class Spaceship {
 
 		// drain battery when taxi uses thrusters
 		battery.drain();
+
+		thrustCount++;
 	}
 
 	/**
 	 * Update the Spaceship, handles battery recharge, crash situation etc.
-	 * @param celestialBodies collection of all {@link com.ikarus.solartaxi.celestialbodies.CelestialBody} in the level
+	 * @param level level the taxi flies in
+	 * @param dt simulated time step in seconds
 	 */
-	public void update(Collection<CelestialBody> celestialBodies) {
+	public void update(Level level, float dt) {
+
+		// movement variables are given per reference tick
+		float ticks = dt*REFERENCE_TICK_RATE;
+
+		prevX = x;
+		prevY = y;
+		prevOrientation = orientation;
 
 		if (crashed) {
 			return;
@@ -372,56 +429,47 @@ public class Spaceship {
 
 		lastX = x;
 		lastY = y;
-
-		distToClosestSurface = Float.POSITIVE_INFINITY;
+		lastTicks = ticks;
 
 		// setting this value here has the outcome, that you can always only be charged
 		// by using one sun, necessary so charging panels are shown correctly
 		charging = false;
 
-		closestSurface = null;
-		// go through all CelestialBodies, find the closest
-		for (CelestialBody c : celestialBodies) {
-			float distance = GeometricCalc.dist(c.getX(), c.getY(), x, y);
+		// look direction, needed for the charging angle
+		float lookX = (float)Math.cos(orientation), lookY = (float)Math.sin(orientation);
 
-			// ignore if out of gravity and charge range
-			if (distance > c.getRadius()*DISTANCE_COEFF_GRAVITY) {
-				continue;
+		// BATTERY CHARGING, go through all suns in range
+		bodies = level.getBodyTable();
+		for (int i : level.getSpatialIndex().query(x, y)) {
+			if (charging) {
+				break;
 			}
 
-			float distToSurface = distance - c.getRadius() - SPACESHIP_COLLISION_RADIUS;
-
-			if (distToSurface < distToClosestSurface) {
-				distToClosestSurface = distToSurface;
-				closestSurface = c;
+			if (bodies.type[i] != BodyTable.TYPE_SUN
+					|| GeometricCalc.distSq(bodies.x[i], bodies.y[i], x, y) > bodies.influenceSq[i]) {
+				continue;
 			}
 
-			// BATTERY CHARGING
-			if (c instanceof Sun && !charging) {
-				batteryCharge((Sun) c, distToSurface); 
-			}
-			applyGravity(c, distance);
+			float distance = GeometricCalc.normalize(x - bodies.x[i], y - bodies.y[i], normal);
+			batteryCharge(i, distance - bodies.radius[i] - SPACESHIP_COLLISION_RADIUS, lookX, lookY, dt); 
 		}
 
-		// only if we found a closestSurface
-		if (closestSurface != null) {
-			checkCollision(closestSurface);
-		}
+		// move according to gravity, speed and orientation, stops at the first surface hit
+		motion.set(x, y, orientation, speed, angularSpeed, landed);
+		int hit = motion.step(level, ticks, gravityFactor);
 
-		//update spaceship world coordinates
-		//design note: a change in orienation rotates the whole momentum without having to 
-		//accelerate again in the new direction. this is unrealistic for space, but more responsive
-		//and essential for playability
-		translate((float)Math.cos(orientation) * speed, (float)Math.sin(orientation) * speed);
+		x = motion.x;
+		y = motion.y;
+		orientation = motion.orientation;
+		speed = motion.speed;
+		angularSpeed = motion.angularSpeed;
+		closestSurface = motion.closestSurface;
+		distToClosestSurface = motion.distToClosestSurface;
 
-		if (distToClosestSurface > SPACESHIP_COLLISION_RADIUS/4) {
-			rotate(angularSpeed);
+		if (hit != -1) {
+			handleCollision(hit, motion.impactSpeed);
 		}
 
-		//simulate vacuum friction :)
-		speed *= SPEED_DAMPING;
-		angularSpeed *= ANGULAR_SPEED_DAMPING;
-
 		// update BitmapState to draw correct Bitmap of Taxi
 		updateBitmapState();
 	}
@@ -452,18 +500,22 @@ public class Spaceship {
 	/**
 	 * Called in update(), checks whether angle and distance are right for Taxi to be recharging
 	 * its battery. Can always only be charged from one sun.
-	 * @param s the Sun that is to be checked
+	 * @param s index of the Sun that is to be checked in bodies
 	 * @param dist distance to the Sun s
+	 * @param lookX x component of the look direction unit vector
+	 * @param lookY y component of the look direction unit vector
+	 * @param dt simulated time step in seconds
 	 */
-	private void batteryCharge(Sun s, float dist) {
+	private void batteryCharge(int s, float dist, float lookX, float lookY, float dt) {
 		// in correct distance to the sun
-		if (dist < s.getRadius()*2 && !isOutOfBattery()) {
-			// calculate angle to the sun
-			double deviationCos = Math.cos(Math.abs(GeometricCalc.angle(x, y, s.getX(), s.getY()) - (orientation-Math.PI/2)));
+		if (dist < bodies.radius[s]*2 && !isOutOfBattery()) {
+			// cosine of angle between sun normal and panel direction (orientation-pi/2), 
+			// as dot product with the unit normal in this.normal, no trigonometry needed
+			double deviationCos = normal[0]*lookY - normal[1]*lookX;
 
 			// if Taxi is in ~correct angle to sun and not crashed, landed nor shieldon, recharge
 			if (Math.abs(deviationCos) > 0.8 && !(crashed)) {
-				battery.recharge();
+				battery.charge(dt);
 				charging = true;
 
 				// set BitMap so correct ChargingPanel is drawn
@@ -479,76 +531,58 @@ public class Spaceship {
 	}
 
 	/**
-	 * Applies gravity of a @CelestialBody to Taxi if it is close enough.<br>
-	 * Design note: this uses a different acceleration model than the spaceship.
-	 * Since we want responsive controls the spaceship momentum is totally rotated
-	 * when the orientation changes, such that we dont fly in the same direction
-	 * but always in look direction, without having to accelerate after rotating.
-	 * however it should not be able to influence the momentum built by gravity by a
-	 * simple change of orientation. an approach using shared momentum for both didnt work
-	 * so now for gravitation we dont use the accelerate function but translate independently
-	 * @param c celestial body for which to apply gravity
-	 * @param distance the distance to the celestial body center
-	 */
-	private void applyGravity(CelestialBody c, float distance) {
-
-		if (!landed && distance < c.getRadius()*DISTANCE_COEFF_GRAVITY) {
-
-			double normalOrientation = GeometricCalc.angle(x, y, c.getX(), c.getY());
-			float grav = c.getGravity()*GRAVITY_FACTOR / (distance - c.getRadius());
-			translate((float)Math.cos(normalOrientation)*-grav, (float)Math.sin(normalOrientation)*-grav);
-		}
-	}
-
-	/**
-	 * Check for Collision with a CelestialBody. Depending on type (Planet or Sun),
+	 * Handle Collision with a CelestialBody. Depending on type (Planet or Sun),
 	 * speed and orientation of Taxi, this can be a landing or a crash. 
-	 * @param c CelestialBody to check, should only be checked for the closest
+	 * The taxi must be at the point of contact with motion.normal holding the contact normal.
+	 * @param c index of CelestialBody in bodies the taxi collided with
+	 * @param impactSpeed speed at the time of impact in displacement per reference tick
 	 */
-	private void checkCollision(CelestialBody c) {
-
-		float distance = GeometricCalc.dist(c.getX(), c.getY(), x, y);
-		double normalOrientation = GeometricCalc.angle(x, y, c.getX(), c.getY());
+	private void handleCollision(int c, float impactSpeed) {
 
-		if (distance < c.getRadius() + SPACESHIP_COLLISION_RADIUS) {
+		double normalOrientation = GeometricCalc.fastAngle(motion.normal[0], motion.normal[1], 0, 0);
 
-			// CelestialBody is a sun, immediate crash and GameOver
-			if (c instanceof Sun) {
-				SoundPlayer.playSound(R.raw.taxi_explosion, 0, 0.5f);
-				// set right SplashScreen
-				ikarused = true;
-				return;
+		// CelestialBody is a sun, immediate crash and GameOver
+		if (bodies.type[c] == BodyTable.TYPE_SUN) {
+			if (listener != null) {
+				listener.onExplosion();
 			}
+			// set right SplashScreen
+			ikarused = true;
+			return;
+		}
 
-			// Conditions for safe Landing are met
-			if (getSpeed() <= MAX_LANDING_SPEED && Math.abs(normalOrientation - orientation) <= MAX_LANDING_TILT) {
-				landed = true;
-				speed = 0;
-				//translate outwards a bit so taxi doesn't get stuck
-				translate((float)Math.cos(normalOrientation), (float)Math.sin(normalOrientation));
-				orientation = normalOrientation; // align to planet surface normal
+		// Conditions for safe Landing are met
+		if (impactSpeed <= MAX_LANDING_SPEED && Math.abs(normalOrientation - orientation) <= MAX_LANDING_TILT) {
+			landed = true;
+			speed = 0;
+			//translate outwards a bit so taxi doesn't get stuck
+			translate(motion.normal[0], motion.normal[1]);
+			orientation = normalOrientation; // align to planet surface normal
 
-				// Exchange Passengers if possible
-				exchangePassengers((Planet)c);
+			// Exchange Passengers if possible
+			exchangePassengers((Planet)bodies.getBody(c));
+		} 
+		// Taxi crashed
+		else {
+			// Still some Shields left
+			if (shields > 0) {
+				if (listener != null) {
+					listener.onShieldHit();
+				}
+				--shields;
+				speed = -1;
+				translate(motion.normal[0]*SPACESHIP_COLLISION_RADIUS, motion.normal[1]*SPACESHIP_COLLISION_RADIUS);
+				orientation = normalOrientation; // align to planet surface normal
+				battery.drain(0.15); // shield drains more energy
+				shieldOn = true;
 			} 
-			// Taxi crashed
+			// no more shields, GameOver 
 			else {
-				// Still some Shields left
-				if (shields > 0) {
-					SoundPlayer.playSound(R.raw.taxi_shield, 0, 1.75f);
-					--shields;
-					speed = -1;
-					translate((float)Math.cos(normalOrientation)*SPACESHIP_COLLISION_RADIUS, (float)Math.sin(normalOrientation)*SPACESHIP_COLLISION_RADIUS);
-					orientation = normalOrientation; // align to planet surface normal
-					battery.drain(0.15); // shield drains more energy
-					shieldOn = true;
-				} 
-				// no more shields, GameOver 
-				else {
-					SoundPlayer.playSound(R.raw.taxi_explosion, 0, 0.5f);
-					crashed = true;
-					return;
+				if (listener != null) {
+					listener.onExplosion();
 				}
+				crashed = true;
+				return;
 			}
 		}
 	}
@@ -563,6 +597,8 @@ public class Spaceship {
 	 */
 	public void checkWorldBoundaryCollision(float xMin, float yMin, float xMax, float yMax) {
 
+		float warpedX = x, warpedY = y;
+
 		// over the left boundary
 		if (x < xMin) {
 			x = xMax;
@@ -580,6 +616,12 @@ public class Spaceship {
 		else if (y > yMax) {
 			y = yMin;
 		}
+
+		// don't blend across the world when warping
+		if (x != warpedX || y != warpedY) {
+			prevX = x;
+			prevY = y;
+		}
 	}
 
 	/**
@@ -589,34 +631,32 @@ public class Spaceship {
 	 */
 	private void exchangePassengers(Planet planet) {
 
-		Iterator<Passenger> iter = passengers.iterator();
 		Passenger p;
-		boolean playedSoundCredits = false;
+		int earned = 0;
 		boolean playedSoundGreeting = false;
 
-		// check if planet is target planet and remove those passengers
-		while (iter.hasNext()) {
-			p = iter.next();
+		// check if planet is target planet and remove those passengers,
+		// streamed levels can generate the same planet again as a new object
+		// indexed backwards, landing does not allocate an iterator
+		for (int i = passengers.size() - 1; i >= 0; i--) {
+			p = passengers.get(i);
 
-			if (planet == p.getTargetPlanet()) {
-				iter.remove();
+			if (planet.equals(p.getTargetPlanet())) {
+				passengers.remove(i);
 				credits += p.getCredits();
-
-				if (!playedSoundCredits)
-					SoundPlayer.playSound(R.raw.credits_earned, 0, 1.75f);
-				playedSoundCredits = true;
+				earned += p.getCredits();
 			}
 		}
 
+		if (earned > 0 && listener != null) {
+			listener.onCreditsEarned(earned);
+		}
+
 		// take up as many new passengers as possible
-		while (passengers.size() < maxPassengerCount) {
-			try {
-				boolean passengerPickedUp = passengers.add(planet.pickUpPassenger());
-				if (passengerPickedUp && !playedSoundGreeting) {
-					//playedSoundGreeting = true;
-				}
-			} catch (NoSuchElementException e) {
-				break;
+		while (passengers.size() < maxPassengerCount && planet.getWaitingPassengerCount() > 0) {
+			boolean passengerPickedUp = passengers.add(planet.pickUpPassenger());
+			if (passengerPickedUp && !playedSoundGreeting) {
+				//playedSoundGreeting = true;
 			}
 		}
 	}
@@ -650,8 +690,29 @@ public class Spaceship {
 	}
 
 	
+	/**
+	 * @return number of times thrust was applied since the taxi was created
+	 */
+	public int getThrustCount() {
+		return thrustCount;
+	}
+
+	/**
+	 * @return factor applied to the gravity of all bodies
+	 */
+	public float getGravityFactor() {
+		return gravityFactor;
+	}
+
 	public void setGravityFactor(float g) {
-		GRAVITY_FACTOR = g;
+		gravityFactor = g;
+	}
+
+	/**
+	 * @param listener receives crash and credit events, null for none
+	 */
+	public void setListener(TaxiListener listener) {
+		this.listener = listener;
 	}
 
 }
\ No newline at end of file
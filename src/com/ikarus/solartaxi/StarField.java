@@ -0,0 +1,174 @@
+package com.ikarus.solartaxi;
+
+import java.util.Random;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+import com.ikarus.solartaxi.render.Renderer;
+
+/**
+ * Background stars in several layers of depth, far layers move slower than the world
+ * (parallax). Each layer is tiled with a few star tiles drawn into offscreen bitmaps
+ * once, every tile position picks one of them and one of four rotations from the seed,
+ * so the pattern doesn't visibly repeat. Per frame only the tiles under the rotated
+ * screen are drawn, no matter how large the level is.
+ *
+ * @author Nikolaus Leopold
+ */
+public class StarField {
+
+	// edge length of a tile in world units and in pixels
+	private final static int TILE_SIZE = 512;
+
+	// different tiles per layer
+	private final static int VARIANTS = 4;
+
+	// per layer from far to near: share of the world movement, stars per tile,
+	// star radius range in pixels and brightness
+	private final static float[] PARALLAX = {0.2f, 0.5f, 1f};
+	private final static int[] STARS_PER_TILE = {40, 20, 12};
+	private final static float[] MIN_RADIUS = {0.6f, 0.8f, 1f};
+	private final static float[] MAX_RADIUS = {1f, 1.6f, 2.6f};
+	private final static int[] ALPHA = {110, 170, 255};
+
+	// star tiles by layer and variant, alpha only, drawn in the paint color
+	private final Bitmap[][] tiles;
+
+	private final long seed;
+
+	// one paint per layer, the brightness must not change before a recorded frame is replayed
+	private final Paint[] tilePaints;
+
+	// first layer drawn, the far layers are left out at reduced quality
+	private int firstLayer;
+
+	private final Matrix layerMatrix = new Matrix(), tileMatrix = new Matrix();
+
+	/**
+	 * Constructor, draws all star tiles
+	 * @param seed levels with the same seed have the same stars
+	 */
+	public StarField(long seed) {
+
+		this.seed = seed;
+
+		Random random = new Random(seed);
+		Paint starPaint = new Paint();
+		starPaint.setAntiAlias(true);
+		starPaint.setARGB(255, 255, 255, 255);
+
+		tiles = new Bitmap[PARALLAX.length][VARIANTS];
+		for (int layer = 0; layer < PARALLAX.length; layer++) {
+			for (int v = 0; v < VARIANTS; v++) {
+				tiles[layer][v] = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ALPHA_8);
+				Canvas canvas = new Canvas(tiles[layer][v]);
+
+				// stars stay clear of the tile edge, so they are not cut in half
+				float margin = MAX_RADIUS[layer] + 1;
+				for (int i = 0; i < STARS_PER_TILE[layer]; i++) {
+					float r = MIN_RADIUS[layer] + random.nextFloat()*random.nextFloat()*(MAX_RADIUS[layer] - MIN_RADIUS[layer]);
+					starPaint.setAlpha(128 + random.nextInt(128));
+					canvas.drawCircle(margin + random.nextFloat()*(TILE_SIZE - 2*margin),
+							margin + random.nextFloat()*(TILE_SIZE - 2*margin), r, starPaint);
+				}
+			}
+		}
+
+		// tiles are rotated with the view
+		tilePaints = new Paint[PARALLAX.length];
+		for (int layer = 0; layer < PARALLAX.length; layer++) {
+			tilePaints[layer] = new Paint();
+			tilePaints[layer].setARGB(ALPHA[layer], 255, 255, 255);
+			tilePaints[layer].setFilterBitmap(true);
+		}
+	}
+
+	/**
+	 * Draw the tiles of all layers that overlap the visible area, does not allocate.
+	 * Tiles of a layer don't overlap, they are drawn in any order.
+	 * @param renderer renderer to draw with, its matrix is changed
+	 * @param viewMatrix the taxi view transformation matrix
+	 * @param centerX world x-coordinate the view follows, e.g. the taxi
+	 * @param centerY world y-coordinate the view follows
+	 * @param culler visible area of the frame, counts the tiles as STAR_TILES
+	 */
+	public void draw(Renderer renderer, Matrix viewMatrix, float centerX, float centerY, ViewCuller culler) {
+
+		int drawn = 0, culled = 0;
+		float halfDiagonal = TILE_SIZE*0.7072f;
+
+		for (int layer = firstLayer; layer < PARALLAX.length; layer++) {
+
+			// a layer is shifted along with the view by the part of the movement it doesn't follow
+			float shiftX = (1 - PARALLAX[layer])*centerX, shiftY = (1 - PARALLAX[layer])*centerY;
+			layerMatrix.set(viewMatrix);
+			layerMatrix.preTranslate(shiftX, shiftY);
+			renderer.setMatrix(layerMatrix);
+
+			// tiles under the bounding box of the view, in layer coordinates
+			int col0 = (int) Math.floor((culler.getMinX() - shiftX)/TILE_SIZE);
+			int col1 = (int) Math.floor((culler.getMaxX() - shiftX)/TILE_SIZE);
+			int row0 = (int) Math.floor((culler.getMinY() - shiftY)/TILE_SIZE);
+			int row1 = (int) Math.floor((culler.getMaxY() - shiftY)/TILE_SIZE);
+
+			renderer.beginUnordered();
+			for (int row = row0; row <= row1; row++) {
+				for (int col = col0; col <= col1; col++) {
+					float left = col*TILE_SIZE, top = row*TILE_SIZE;
+
+					// bounding box corners are often out of the rotated view
+					if (!culler.intersects(left + TILE_SIZE/2 + shiftX, top + TILE_SIZE/2 + shiftY, halfDiagonal)) {
+						++culled;
+						continue;
+					}
+
+					int hash = hash(layer, col, row);
+					tileMatrix.setRotate(90*(hash & 3), TILE_SIZE/2, TILE_SIZE/2);
+					tileMatrix.postTranslate(left, top);
+					renderer.drawBitmap(tiles[layer][(hash >>> 2) % VARIANTS], tileMatrix, tilePaints[layer]);
+					++drawn;
+				}
+			}
+			renderer.endUnordered();
+		}
+
+		renderer.setMatrix(viewMatrix);
+		culler.count(ViewCuller.STAR_TILES, drawn, culled);
+	}
+
+	/**
+	 * Set the drawing quality, e.g. from the {@link QualityGovernor}
+	 * @param filtering whether the rotated tiles are filtered
+	 * @param farLayer whether the far layer is drawn, it has the most stars but the faintest
+	 */
+	public void setQuality(boolean filtering, boolean farLayer) {
+		for (Paint paint : tilePaints) {
+			paint.setFilterBitmap(filtering);
+		}
+		firstLayer = farLayer ? 0 : 1;
+	}
+
+	/**
+	 * Free the tile bitmaps, the star field can't be drawn afterwards
+	 */
+	public void recycle() {
+		for (Bitmap[] layer : tiles) {
+			for (Bitmap tile : layer) {
+				tile.recycle();
+			}
+		}
+	}
+
+	/**
+	 * @return well mixed non-negative bits for a tile position
+	 */
+	private int hash(int layer, int col, int row) {
+		long h = seed + layer*0x9E3779B97F4A7C15L + col*0xC2B2AE3D27D4EB4FL + row*0x165667B19E3779F9L;
+		h = (h ^ (h >>> 33))*0xFF51AFD7ED558CCDL;
+		h = (h ^ (h >>> 33))*0xC4CEB9FE1A85EC53L;
+		return (int) ((h ^ (h >>> 33)) & 0x7FFFFFFF);
+	}
+}
@@ -13,9 +13,11 @@ public class TaxiBattery {
 	private double maxCapacity;
 	private double currCharge;
 	
-	// how fast the battery is drained/recharged
+	// how fast the battery is drained per thrust
 	private final static double DRAINSPEED = 0.998;
-	private final static double GAINSPEED = 1.001;
+	
+	// how fast the battery is recharged, fraction of capacity per second
+	private final static double CHARGE_RATE = 0.05;
 	
 	/**
 	 * Constructor setting maxCapacity and currCapacity to 100. 
@@ -53,11 +55,12 @@ public class TaxiBattery {
 	}
 	
 	/**
-	 * Recharges the battery, checks that current capacity can't go over maxCapacity
+	 * Recharges the battery at CHARGE_RATE, checks that current capacity can't go over maxCapacity
+	 * 
+	 * @param dt time in seconds the battery is charged for
 	 */
-	public void recharge() {
-		this.currCharge += (this.maxCapacity*(GAINSPEED-1));
-		this.currCharge = this.currCharge < this.maxCapacity ? this.currCharge : this.maxCapacity;
+	public void charge(double dt) {
+		recharge(CHARGE_RATE*dt);
 	}
 	
 	/**
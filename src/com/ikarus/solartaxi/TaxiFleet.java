@@ -0,0 +1,670 @@
+package com.ikarus.solartaxi;
+
+import java.util.Random;
+
+import com.ikarus.solartaxi.celestialbodies.Planet;
+import com.ikarus.solartaxi.level.BodyTable;
+import com.ikarus.solartaxi.level.Level;
+import com.ikarus.solartaxi.level.SpatialIndex;
+
+/**
+ * Computer controlled rival taxis competing with the player for passengers.<br>
+ * They move by the same thrust, gravity and landing rules as the {@link Spaceship},
+ * but the state of all rivals is stored in parallel arrays and updated in one batch
+ * through a single {@link TaxiMotion}, so hundreds of them stay cheap. Rivals carry
+ * one passenger at a time, have no battery or shields and start again on a random
+ * planet some time after a crash.<br>
+ * Rivals bump into each other and are pushed away by the player, close pairs are
+ * found with a spatial hash rebuilt every tick.
+ *
+ * @author Nikolaus Leopold
+ */
+public class TaxiFleet {
+
+	// states
+	public final static byte FLYING = 0;
+	public final static byte LANDED = 1;
+	public final static byte CRASHED = 2;
+
+	// time between two thrust inputs of a rival, like a player tapping
+	private final static float INPUT_INTERVAL = 0.1f;
+
+	// thrust inputs given at once to take off
+	private final static int TAKEOFF_INPUTS = 5;
+
+	// time a rival waits on a planet before taking off
+	private final static float LANDED_TIME = 1.0f;
+
+	// time after a crash until a rival starts again
+	private final static float RESPAWN_TIME = 3.0f;
+
+	// speed in look direction a rival travels at, per reference tick
+	private final static float CRUISE_SPEED = 6.0f;
+
+	// speed a rival sinks to the target surface with, per reference tick
+	private final static float TOUCHDOWN_SPEED = 1.0f;
+
+	// height above the target surface below which a rival stops circling
+	private final static float CIRCLE_HEIGHT = 2*Spaceship.SPACESHIP_COLLISION_RADIUS;
+
+	// speed away from a body a rival is falling onto, per reference tick
+	private final static float CLIMB_SPEED = 2.5f;
+
+	// reference ticks a rival needs to turn around, it starts braking or climbing away this far ahead of a body
+	private final static float TURN_TICKS = 50;
+
+	// distance a rival coasts without thrust until damped out, in reference ticks times speed
+	private final static float COAST_TICKS = 1/(1 - Spaceship.SPEED_DAMPING);
+
+	// angle error a rival accepts before correcting its orientation
+	private final static double ALIGN_TOLERANCE = 0.2;
+
+	// remaining rotation of the current angular speed until damped out, in reference ticks
+	private final static double ROTATION_LOOKAHEAD = 1/(1 - Spaceship.ANGULAR_SPEED_DAMPING);
+
+	private final static float COLLISION_RADIUS = Spaceship.SPACESHIP_COLLISION_RADIUS;
+
+	private final int count;
+	private final float thrust, gravityFactor;
+	private final Random random;
+
+	// state per rival, velocity is the displacement of the last step per reference tick
+	private final float[] x, y, velocityX, velocityY, speed, distToClosest, timer;
+	private final double[] orientation, angularSpeed;
+
+	// position and orientation before the last update, drawing blends towards the current ones
+	private final float[] prevX, prevY;
+	private final double[] prevOrientation;
+	private final byte[] state;
+	private final boolean[] braking;
+	private final int[] target, credits;
+	private final Passenger[] passengers;
+
+	// cursor for the movement rules
+	private final TaxiMotion motion = new TaxiMotion();
+
+	// spatial hash of rival positions: rivals sorted by bucket and the start of each bucket
+	private final int[] bucketOf, bucketStart, sorted;
+	private final int bucketMask;
+	private final int[] neighbourBuckets = new int[9];
+
+	// packed bodies of the level rivals fly in and the spatial index over them
+	private BodyTable bodies;
+	private SpatialIndex index;
+
+	/**
+	 * Constructor, rivals have to be placed in a level with {@link #spawn(Level)}.
+	 * @param count number of rivals
+	 * @param thrust thrust per thruster of a single input, as the player's
+	 * @param gravityFactor factor applied to the gravity of all bodies, as the player's
+	 * @param seed seed of start positions and decisions
+	 */
+	public TaxiFleet(int count, float thrust, float gravityFactor, long seed) {
+		this.count = count;
+		this.thrust = thrust;
+		this.gravityFactor = gravityFactor;
+		this.random = new Random(seed);
+
+		x = new float[count];
+		y = new float[count];
+		velocityX = new float[count];
+		velocityY = new float[count];
+		speed = new float[count];
+		distToClosest = new float[count];
+		timer = new float[count];
+		orientation = new double[count];
+		angularSpeed = new double[count];
+		prevX = new float[count];
+		prevY = new float[count];
+		prevOrientation = new double[count];
+		state = new byte[count];
+		braking = new boolean[count];
+		target = new int[count];
+		credits = new int[count];
+		passengers = new Passenger[count];
+
+		// power of two with about two buckets per rival
+		int buckets = Integer.highestOneBit(Math.max(1, count)*4 - 1);
+		bucketMask = buckets - 1;
+		bucketOf = new int[count];
+		bucketStart = new int[buckets + 1];
+		sorted = new int[count];
+	}
+
+	/**
+	 * Place all rivals on random planets of a level
+	 * @param level level to fly in, must contain at least one planet
+	 */
+	public void spawn(Level level) {
+		bodies = level.getBodyTable();
+		index = level.getSpatialIndex();
+		for (int i = 0; i < count; i++) {
+			respawn(i);
+			passengers[i] = null;
+			credits[i] = 0;
+		}
+	}
+
+	/**
+	 * Move all rivals by one time step
+	 * @param level level the rivals fly in
+	 * @param player the player taxi, pushes rivals away
+	 * @param dt simulated time step in seconds
+	 */
+	public void update(Level level, Spaceship player, float dt) {
+
+		// movement variables are given per reference tick
+		float ticks = dt*Spaceship.REFERENCE_TICK_RATE;
+
+		// levels streaming their content replace the body table, targets get new indices
+		if (level.getBodyTable() != bodies) {
+			BodyTable old = bodies;
+			bodies = level.getBodyTable();
+			for (int i = 0; i < count; i++) {
+				target[i] = bodies.indexOf(old.getBody(target[i]));
+				if (target[i] == -1) {
+					chooseTarget(i, -1);
+				}
+			}
+		}
+		index = level.getSpatialIndex();
+
+		for (int i = 0; i < count; i++) {
+			prevX[i] = x[i];
+			prevY[i] = y[i];
+			prevOrientation[i] = orientation[i];
+			timer[i] -= dt;
+
+			if (state[i] == CRASHED) {
+				if (timer[i] <= 0) {
+					respawn(i);
+				}
+				continue;
+			}
+
+			if (timer[i] <= 0) {
+				steer(i);
+			}
+
+			// enable to get away from planet before gravity sets back in
+			if (state[i] == LANDED && distToClosest[i] > COLLISION_RADIUS/2) {
+				state[i] = FLYING;
+			}
+
+			motion.set(x[i], y[i], orientation[i], speed[i], angularSpeed[i], state[i] == LANDED);
+			int hit = motion.step(level, ticks, gravityFactor);
+
+			velocityX[i] = (motion.x - x[i])/ticks;
+			velocityY[i] = (motion.y - y[i])/ticks;
+			x[i] = motion.x;
+			y[i] = motion.y;
+			orientation[i] = motion.orientation;
+			speed[i] = motion.speed;
+			angularSpeed[i] = motion.angularSpeed;
+			distToClosest[i] = motion.distToClosestSurface;
+
+			if (hit != -1) {
+				handleCollision(i, hit);
+			}
+
+			// warp around at the world boundary, without blending across the world
+			if (x[i] < level.getMinX()) {
+				x[i] = prevX[i] = level.getMaxX();
+			} else if (x[i] > level.getMaxX()) {
+				x[i] = prevX[i] = level.getMinX();
+			}
+			if (y[i] < level.getMinY()) {
+				y[i] = prevY[i] = level.getMaxY();
+			} else if (y[i] > level.getMaxY()) {
+				y[i] = prevY[i] = level.getMinY();
+			}
+		}
+
+		buildHash();
+		separate(player);
+	}
+
+	/**
+	 * @return number of rivals
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @return x-coordinate of rival i
+	 */
+	public float getX(int i) {
+		return x[i];
+	}
+
+	/**
+	 * @return y-coordinate of rival i
+	 */
+	public float getY(int i) {
+		return y[i];
+	}
+
+	/**
+	 * @return direction in which rival i is looking, range [0,2pi[
+	 */
+	public double getOrientation(int i) {
+		return orientation[i];
+	}
+
+	/**
+	 * @return x-coordinate of rival i before the last update
+	 */
+	public float getPrevX(int i) {
+		return prevX[i];
+	}
+
+	/**
+	 * @return y-coordinate of rival i before the last update
+	 */
+	public float getPrevY(int i) {
+		return prevY[i];
+	}
+
+	/**
+	 * @return direction in which rival i was looking before the last update
+	 */
+	public double getPrevOrientation(int i) {
+		return prevOrientation[i];
+	}
+
+	/**
+	 * @return FLYING, LANDED or CRASHED
+	 */
+	public byte getState(int i) {
+		return state[i];
+	}
+
+	/**
+	 * @return credits earned by rival i
+	 */
+	public int getCredits(int i) {
+		return credits[i];
+	}
+
+	/**
+	 * Decide on thrust input for rival i. On the way it looks in the direction that, together with
+	 * the gravity felt in the last step, moves it towards the target or away from another body it
+	 * would hit, and stops accelerating in time to coast in slowly. Speed can only be lost by damping,
+	 * so close to the target it looks partly sideways and circles down while the speed left decays,
+	 * just above the surface it looks away from it as required for landing.
+	 */
+	private void steer(int i) {
+
+		if (state[i] == LANDED) {
+			// several inputs at once to get away from the surface, gravity is strongest there
+			thrust(i, TAKEOFF_INPUTS*thrust, TAKEOFF_INPUTS*thrust);
+			return;
+		}
+
+		int b = target[i];
+		bodies.update(b);
+		float dx = bodies.x[b] - x[i], dy = bodies.y[b] - y[i];
+		float dist = (float) Math.sqrt(dx*dx + dy*dy);
+		float distToSurface = dist - bodies.radius[b] - COLLISION_RADIUS;
+		dx /= dist;
+		dy /= dist;
+
+		// displacement by gravity in the last step, the rest was speed in look direction
+		float gravityX = velocityX[i] - (float) Math.cos(orientation[i])*speed[i];
+		float gravityY = velocityY[i] - (float) Math.sin(orientation[i])*speed[i];
+
+		if (distToSurface < Math.max(bodies.radius[b], closing(i, b)*TURN_TICKS)) {
+			braking[i] = true;
+		} else if (dist > bodies.influence[b]) {
+			braking[i] = false;
+		}
+
+		double desired;
+		boolean accelerate;
+
+		if (braking[i]) {
+			// look away from the surface, turned sideways by the part of the speed that is too much,
+			// to the side the rival is already looking at
+			double outward = GeometricCalc.fastAngle(-dx, -dy, 0, 0);
+			double side = orientation[i] - outward;
+			side -= 2*Math.PI*Math.floor((side + Math.PI)/(2*Math.PI));
+
+			// speed away from the surface needed to keep the height, and to sink slowly
+			float hover = Math.max(0, speed[i]*(float) Math.cos(side) + closing(i, b));
+			float sink = hover - Math.min(TOUCHDOWN_SPEED, hover/2);
+
+			// circle down, just above the surface always look away from it, the rival then either lands or climbs
+			float needed = distToSurface < CIRCLE_HEIGHT ? Math.max(sink, speed[i]) : sink;
+			desired = outward + Math.signum(side)*Math.acos(Math.min(1, needed/Math.max(speed[i], needed)));
+			accelerate = speed[i] < needed;
+		} else {
+			// wanted velocity, slow enough to coast in to the target, or away from a body it would hit
+			float wanted = Math.max(TOUCHDOWN_SPEED, Math.min(CRUISE_SPEED, (distToSurface - bodies.radius[b])/COAST_TICKS));
+			float wantedX = dx*wanted, wantedY = dy*wanted;
+
+			int c = obstacle(i, b);
+			if (c != -1) {
+				float cx = x[i] - bodies.x[c], cy = y[i] - bodies.y[c];
+				float cdist = (float) Math.sqrt(cx*cx + cy*cy);
+				wantedX = cx/cdist*CLIMB_SPEED;
+				wantedY = cy/cdist*CLIMB_SPEED;
+			}
+
+			// own velocity has to make up the difference of gravity to the wanted velocity
+			float ownX = wantedX - gravityX, ownY = wantedY - gravityY;
+
+			desired = GeometricCalc.fastAngle(ownX, ownY, 0, 0);
+			accelerate = speed[i]*speed[i] < ownX*ownX + ownY*ownY;
+		}
+
+		// angle error, including the rotation still to come from the current angular speed
+		double error = desired - orientation[i] - angularSpeed[i]*ROTATION_LOOKAHEAD;
+		error -= 2*Math.PI*Math.floor((error + Math.PI)/(2*Math.PI));
+
+		if (error > ALIGN_TOLERANCE) {
+			thrust(i, thrust, 0);
+		}
+		else if (error < -ALIGN_TOLERANCE) {
+			thrust(i, 0, thrust);
+		}
+		else if (accelerate) {
+			thrust(i, thrust, thrust);
+		}
+	}
+
+	/**
+	 * @param b index of the target of rival i
+	 * @return index of the body rival i would hit first before it could turn away, -1 if none
+	 */
+	private int obstacle(int i, int b) {
+		int first = -1;
+		float firstTicks = TURN_TICKS;
+
+		for (int k : index.query(x[i], y[i])) {
+			float closing = closing(i, k);
+			if (k == b || closing <= 0) {
+				continue;
+			}
+
+			float distToSurface = GeometricCalc.dist(x[i], y[i], bodies.x[k], bodies.y[k]) - bodies.radius[k] - COLLISION_RADIUS;
+			if (distToSurface < closing*firstTicks) {
+				firstTicks = distToSurface/closing;
+				first = k;
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * @return speed of rival i towards the center of body b in the last step, relative to the body, per reference tick
+	 */
+	private float closing(int i, int b) {
+		float dx = bodies.x[b] - x[i], dy = bodies.y[b] - y[i];
+		float relX = velocityX[i] - bodies.velocityX[b]/Spaceship.REFERENCE_TICK_RATE;
+		float relY = velocityY[i] - bodies.velocityY[b]/Spaceship.REFERENCE_TICK_RATE;
+		return (relX*dx + relY*dy)/(float) Math.sqrt(dx*dx + dy*dy);
+	}
+
+	/**
+	 * Same as {@link Spaceship#applyThrust(float, float)}
+	 */
+	private void thrust(int i, float thrustLeft, float thrustRight) {
+
+		if (state[i] == LANDED) {
+			// extra thrust to overcome gravitation
+			thrustLeft += 0.5f;
+			thrustRight += 0.5f;
+		}
+
+		speed[i] += (thrustLeft + thrustRight)*Spaceship.THRUST_TRANSLATION_FACTOR;
+		angularSpeed[i] += (thrustLeft - thrustRight)*Spaceship.THRUST_ROTATION_FACTOR;
+		timer[i] = INPUT_INTERVAL;
+	}
+
+	/**
+	 * Landing or crash of rival i, same rules as for the {@link Spaceship}.
+	 * motion has to hold the contact normal.
+	 */
+	private void handleCollision(int i, int c) {
+
+		double normalOrientation = GeometricCalc.fastAngle(motion.normal[0], motion.normal[1], 0, 0);
+
+		if (bodies.type[c] == BodyTable.TYPE_PLANET && motion.impactSpeed <= Spaceship.MAX_LANDING_SPEED
+				&& Math.abs(normalOrientation - orientation[i]) <= Spaceship.MAX_LANDING_TILT) {
+			// still touching the surface while waiting on it, not a new landing
+			boolean touchdown = state[i] != LANDED;
+
+			state[i] = LANDED;
+			speed[i] = 0;
+			//translate outwards a bit so taxi doesn't get stuck
+			x[i] += motion.normal[0];
+			y[i] += motion.normal[1];
+			orientation[i] = normalOrientation;
+
+			if (touchdown) {
+				timer[i] = LANDED_TIME;
+				exchangePassengers(i, c);
+			}
+		} else {
+			state[i] = CRASHED;
+			timer[i] = RESPAWN_TIME;
+			passengers[i] = null;
+		}
+	}
+
+	/**
+	 * Drop off the passenger of rival i if this is its target, pick up a new one if possible
+	 * and choose where to fly next.
+	 * @param c index of the planet in bodies
+	 */
+	private void exchangePassengers(int i, int c) {
+
+		Planet planet = (Planet) bodies.getBody(c);
+
+		if (passengers[i] != null && planet.equals(passengers[i].getTargetPlanet())) {
+			credits[i] += passengers[i].getCredits();
+			passengers[i] = null;
+		}
+
+		// checked instead of catching the exception, landing does not allocate
+		if (passengers[i] == null && planet.getWaitingPassengerCount() > 0) {
+			passengers[i] = planet.pickUpPassenger();
+		}
+
+		chooseTarget(i, c);
+	}
+
+	/**
+	 * Target of rival i is the destination of its passenger, or else the closest
+	 * other planet with waiting passengers, or else a random planet.
+	 * @param current index of the planet the rival is on, -1 if none
+	 */
+	private void chooseTarget(int i, int current) {
+
+		braking[i] = false;
+
+		if (passengers[i] != null) {
+			for (int k = 0; k < bodies.size(); k++) {
+				if (bodies.getBody(k).equals(passengers[i].getTargetPlanet())) {
+					target[i] = k;
+					return;
+				}
+			}
+		}
+
+		int best = -1;
+		float bestDistSq = Float.POSITIVE_INFINITY;
+		for (int k = 0; k < bodies.size(); k++) {
+			if (k == current || bodies.type[k] != BodyTable.TYPE_PLANET
+					|| ((Planet) bodies.getBody(k)).getWaitingPassengers().isEmpty()) {
+				continue;
+			}
+			bodies.update(k);
+			float distSq = GeometricCalc.distSq(x[i], y[i], bodies.x[k], bodies.y[k]);
+			if (distSq < bestDistSq) {
+				bestDistSq = distSq;
+				best = k;
+			}
+		}
+
+		target[i] = best != -1 ? best : randomPlanet();
+	}
+
+	/**
+	 * Start rival i again, landed on a random planet
+	 */
+	private void respawn(int i) {
+		int p = randomPlanet();
+		bodies.update(p);
+		double angle = random.nextDouble()*2*Math.PI;
+		float r = bodies.radius[p] + COLLISION_RADIUS + 1;
+
+		x[i] = bodies.x[p] + (float) Math.cos(angle)*r;
+		y[i] = bodies.y[p] + (float) Math.sin(angle)*r;
+		orientation[i] = angle;
+		prevX[i] = x[i];
+		prevY[i] = y[i];
+		prevOrientation[i] = angle;
+		velocityX[i] = velocityY[i] = 0;
+		speed[i] = 0;
+		angularSpeed[i] = 0;
+		state[i] = LANDED;
+		distToClosest[i] = 1;
+		timer[i] = LANDED_TIME;
+
+		chooseTarget(i, p);
+	}
+
+	/**
+	 * @return index of a random planet in bodies
+	 */
+	private int randomPlanet() {
+		while (true) {
+			int k = random.nextInt(bodies.size());
+			if (bodies.type[k] == BodyTable.TYPE_PLANET) {
+				return k;
+			}
+		}
+	}
+
+	/**
+	 * Sort all rivals that are not crashed into hash buckets of cells with an edge
+	 * length of two collision radii, such that touching rivals are in neighbouring cells.
+	 */
+	private void buildHash() {
+
+		for (int b = 0; b <= bucketMask + 1; b++) {
+			bucketStart[b] = 0;
+		}
+
+		// count rivals per bucket
+		for (int i = 0; i < count; i++) {
+			bucketOf[i] = state[i] == CRASHED ? -1 : bucket(cell(x[i]), cell(y[i]));
+			if (bucketOf[i] != -1) {
+				++bucketStart[bucketOf[i] + 1];
+			}
+		}
+
+		// prefix sum, then bucketStart[b] is the start of bucket b
+		for (int b = 0; b <= bucketMask; b++) {
+			bucketStart[b + 1] += bucketStart[b];
+		}
+
+		// fill, bucketStart[b] temporarily moves to the end of bucket b
+		for (int i = 0; i < count; i++) {
+			if (bucketOf[i] != -1) {
+				sorted[bucketStart[bucketOf[i]]++] = i;
+			}
+		}
+
+		// move starts back
+		for (int b = bucketMask; b > 0; b--) {
+			bucketStart[b] = bucketStart[b - 1];
+		}
+		bucketStart[0] = 0;
+	}
+
+	/**
+	 * Push apart touching rivals and push rivals away from the player
+	 */
+	private void separate(Spaceship player) {
+
+		for (int i = 0; i < count; i++) {
+			if (bucketOf[i] != -1) {
+				pushNeighbours(i, x[i], y[i], false);
+			}
+		}
+
+		if (!player.isCrashed()) {
+			pushNeighbours(-1, player.getX(), player.getY(), true);
+		}
+	}
+
+	/**
+	 * Push apart rivals touching the taxi at (px, py)
+	 * @param i index of the rival at (px, py), only pairs with higher indices are handled, -1 for the player
+	 * @param pushOnlyOthers whether the taxi at (px, py) stays in place
+	 */
+	private void pushNeighbours(int i, float px, float py, boolean pushOnlyOthers) {
+
+		int col = cell(px), row = cell(py);
+		int n = 0;
+
+		for (int dr = -1; dr <= 1; dr++) {
+			for (int dc = -1; dc <= 1; dc++) {
+				int b = bucket(col + dc, row + dr);
+
+				// different cells can share a bucket, visit each bucket once
+				boolean visited = false;
+				for (int k = 0; k < n; k++) {
+					visited |= neighbourBuckets[k] == b;
+				}
+				if (visited) {
+					continue;
+				}
+				neighbourBuckets[n++] = b;
+
+				for (int k = bucketStart[b]; k < bucketStart[b + 1]; k++) {
+					int j = sorted[k];
+					if (j > i) {
+						push(i, px, py, j, pushOnlyOthers);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Separate rival j from the taxi i at (px, py) if they overlap, landed rivals stay where they are.
+	 */
+	private void push(int i, float px, float py, int j, boolean pushOnlyOthers) {
+
+		float dx = x[j] - px, dy = y[j] - py;
+		float distSq = dx*dx + dy*dy;
+		if (distSq >= 4*COLLISION_RADIUS*COLLISION_RADIUS || distSq == 0) {
+			return;
+		}
+
+		float dist = (float) Math.sqrt(distSq);
+		float overlap = 2*COLLISION_RADIUS - dist;
+		boolean moveI = !pushOnlyOthers && state[i] == FLYING, moveJ = state[j] == FLYING;
+		float shareJ = moveI && moveJ ? 0.5f : moveJ ? 1 : 0;
+		float shareI = moveI ? 1 - shareJ : 0;
+
+		x[j] += dx/dist*overlap*shareJ;
+		y[j] += dy/dist*overlap*shareJ;
+		if (shareI > 0) {
+			x[i] -= dx/dist*overlap*shareI;
+			y[i] -= dy/dist*overlap*shareI;
+		}
+	}
+
+	private int cell(float coordinate) {
+		return (int) Math.floor(coordinate/(2*COLLISION_RADIUS));
+	}
+
+	private int bucket(int col, int row) {
+		return (col*73856093 ^ row*19349663) & bucketMask;
+	}
+}
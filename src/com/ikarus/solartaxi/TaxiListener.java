@@ -0,0 +1,26 @@
+package com.ikarus.solartaxi;
+
+/**
+ * Receives events of a {@link Spaceship} that are not part of its state, e.g. to play sounds.
+ * Called from within {@link Spaceship#update(com.ikarus.solartaxi.level.Level, float)}.
+ *
+ * @author Nikolaus Leopold
+ */
+public interface TaxiListener {
+
+	/**
+	 * Taxi crashed into a planet without shields or into a sun
+	 */
+	public void onExplosion();
+
+	/**
+	 * Taxi crashed into a planet and a shield was used up
+	 */
+	public void onShieldHit();
+
+	/**
+	 * Passengers were dropped off at their target planet
+	 * @param credits credits paid by all passengers dropped off
+	 */
+	public void onCreditsEarned(int credits);
+}
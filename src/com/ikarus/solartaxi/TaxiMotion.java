@@ -0,0 +1,220 @@
+package com.ikarus.solartaxi;
+
+import com.ikarus.solartaxi.level.BodyTable;
+import com.ikarus.solartaxi.level.GravityField;
+import com.ikarus.solartaxi.level.Level;
+import com.ikarus.solartaxi.level.SpatialIndex;
+
+/**
+ * Movement rules of the taxi (gravity, momentum in look direction, damping and
+ * collision sweep) applied to a plain motion state. Bodies are where the level's
+ * body table has them at the start of a step and move on with their velocity during
+ * the step, a landed taxi moves along with the body it stands on. Used by {@link Spaceship} and
+ * by everything that has to move exactly like it without its side effects, like
+ * the trajectory prediction.<br>
+ * Holds reusable buffers, one instance per user, not thread safe.
+ *
+ * @author Nikolaus Leopold
+ */
+class TaxiMotion {
+
+	// spaceship center in world coordinates
+	float x, y;
+
+	// direction in which taxi is looking, range [0,2pi[
+	double orientation;
+
+	// speed in look direction and angular speed
+	float speed;
+	double angularSpeed;
+
+	// no gravity is applied while landed
+	boolean landed;
+
+	// results of the last step: closest body in range at the start of the step (-1 if none)
+	// and the distance of the taxi boundary to its surface
+	int closestSurface;
+	float distToClosestSurface;
+
+	// results of the last step if a surface was hit: contact point, contact normal
+	// and the speed relative to the surface at the time of impact (displacement per reference tick)
+	float contactX, contactY, impactSpeed;
+	final float[] normal = new float[2];
+
+	// gravity vector looked up from the level's gravity field
+	private final float[] fieldGravity = new float[2];
+
+	// bodies along the displacement of the current step, indices into the body table
+	private int[] sweepCandidates = new int[0];
+
+	/**
+	 * Set the motion state
+	 */
+	void set(float x, float y, double orientation, float speed, double angularSpeed, boolean landed) {
+		this.x = x;
+		this.y = y;
+		this.orientation = orientation;
+		this.speed = speed;
+		this.angularSpeed = angularSpeed;
+		this.landed = landed;
+	}
+
+	/**
+	 * Advance the motion state by one time step without thrust input. Gravity and speed
+	 * add up to one displacement, the taxi collision circle is swept along it and stops
+	 * at the first surface it touches.
+	 * @param level level the taxi flies in
+	 * @param ticks length of the time step in reference ticks
+	 * @param gravityFactor taxi gravity factor
+	 * @return index of the body hit in the level's body table, -1 if the way was free
+	 */
+	int step(Level level, float ticks, float gravityFactor) {
+		return step(level.getBodyTable(), level.getSpatialIndex(), level.getGravityField(), ticks, gravityFactor);
+	}
+
+	/**
+	 * Same as {@link #step(Level, float, float)} with bodies that need not be the level's,
+	 * e.g. a copy at a later time
+	 * @param bodies body table, moved to the time of the step by the lookups
+	 * @param index spatial index of the body table
+	 * @param gravityField precomputed gravity of the level, may be null
+	 */
+	int step(BodyTable bodies, SpatialIndex index, GravityField gravityField, float ticks, float gravityFactor) {
+
+		float moveX = 0, moveY = 0;
+
+		// use precomputed gravity if available, near surfaces it has to be calculated exactly
+		boolean useFieldGravity = !landed && gravityField != null && gravityField.sample(x, y, fieldGravity);
+
+		closestSurface = -1;
+		distToClosestSurface = Float.POSITIVE_INFINITY;
+
+		// go through all CelestialBodies whose area of influence overlaps our grid cell, find the closest
+		for (int i : index.query(x, y)) {
+
+			// ignore if out of gravity range
+			if (GeometricCalc.distSq(bodies.x[i], bodies.y[i], x, y) > bodies.influenceSq[i]) {
+				continue;
+			}
+
+			float distance = GeometricCalc.normalize(x - bodies.x[i], y - bodies.y[i], normal);
+			float distToSurface = distance - bodies.radius[i] - Spaceship.SPACESHIP_COLLISION_RADIUS;
+
+			if (distToSurface < distToClosestSurface) {
+				distToClosestSurface = distToSurface;
+				closestSurface = i;
+			}
+
+			// design note: gravity uses a different acceleration model than the spaceship.
+			// since we want responsive controls the spaceship momentum is totally rotated
+			// when the orientation changes. however it should not be able to influence the
+			// momentum built by gravity by a simple change of orientation, an approach using
+			// shared momentum for both didnt work, so gravity translates independently
+			if (!landed && !useFieldGravity) {
+				float grav = bodies.gravity[i]*gravityFactor / (distance - bodies.radius[i]) * ticks;
+				moveX -= normal[0]*grav;
+				moveY -= normal[1]*grav;
+			}
+		}
+
+		if (useFieldGravity) {
+			moveX += fieldGravity[0]*gravityFactor*ticks;
+			moveY += fieldGravity[1]*gravityFactor*ticks;
+		}
+
+		// ride along with the body landed on
+		if (landed && closestSurface != -1) {
+			moveX += bodies.velocityX[closestSurface]*ticks/Spaceship.REFERENCE_TICK_RATE;
+			moveY += bodies.velocityY[closestSurface]*ticks/Spaceship.REFERENCE_TICK_RATE;
+		}
+
+		//design note: a change in orienation rotates the whole momentum without having to
+		//accelerate again in the new direction. this is unrealistic for space, but more responsive
+		//and essential for playability
+		moveX += (float)Math.cos(orientation) * speed*ticks;
+		moveY += (float)Math.sin(orientation) * speed*ticks;
+
+		//update world coordinates, stop at the first surface along the way
+		//so the taxi can't tunnel through small planets at high speed
+		int hit = sweepCollision(bodies, index, moveX, moveY, ticks);
+		if (hit == -1) {
+			x += moveX;
+			y += moveY;
+		}
+
+		if (distToClosestSurface > Spaceship.SPACESHIP_COLLISION_RADIUS/4) {
+			rotate(angularSpeed*ticks);
+		}
+
+		//simulate vacuum friction :)
+		speed *= (float)Math.pow(Spaceship.SPEED_DAMPING, ticks);
+		angularSpeed *= Math.pow(Spaceship.ANGULAR_SPEED_DAMPING, ticks);
+
+		return hit;
+	}
+
+	/**
+	 * Change orientation.<br>
+	 * Orientation automatically stays in range [0,2pi[
+	 * @param delta rotation angle in radians
+	 */
+	void rotate(double delta) {
+		orientation += delta;
+
+		if (orientation >= 2*Math.PI) {
+			orientation %= 2*Math.PI;
+		}
+		else if (orientation < 0) {
+			orientation += 2*Math.PI;
+		}
+	}
+
+	/**
+	 * Sweeps the taxi collision circle along a displacement and finds the first surface
+	 * it touches, each body is swept against in its own frame of reference. If there is
+	 * one, the taxi is moved to the point of contact and moves along with the body for the
+	 * rest of the step, contactX/Y, normal and impactSpeed are set.
+	 * @param bodies body table
+	 * @param index spatial index of the body table
+	 * @param moveX displacement in x
+	 * @param moveY displacement in y
+	 * @param ticks length of the step in reference ticks
+	 * @return index of the body hit first in the body table, -1 if the way is free
+	 */
+	private int sweepCollision(BodyTable bodies, SpatialIndex index, float moveX, float moveY, float ticks) {
+
+		float dt = ticks/Spaceship.REFERENCE_TICK_RATE;
+
+		if (sweepCandidates.length < bodies.size()) {
+			sweepCandidates = new int[bodies.size()];
+		}
+		int count = index.query(x, y, x + moveX, y + moveY, sweepCandidates);
+
+		int hit = -1;
+		float hitTime = Float.POSITIVE_INFINITY;
+		for (int k = 0; k < count; k++) {
+			int i = sweepCandidates[k];
+			float t = GeometricCalc.sweptCircleTime(x, y, moveX - bodies.velocityX[i]*dt, moveY - bodies.velocityY[i]*dt,
+					bodies.x[i], bodies.y[i], bodies.radius[i] + Spaceship.SPACESHIP_COLLISION_RADIUS);
+
+			if (t >= 0 && t < hitTime) {
+				hitTime = t;
+				hit = i;
+			}
+		}
+
+		if (hit != -1) {
+			// body displacement during the step and taxi displacement relative to the body
+			float bodyX = bodies.velocityX[hit]*dt, bodyY = bodies.velocityY[hit]*dt;
+			float relX = moveX - bodyX, relY = moveY - bodyY;
+
+			GeometricCalc.normalize(x + relX*hitTime - bodies.x[hit], y + relY*hitTime - bodies.y[hit], normal);
+			x += relX*hitTime + bodyX;
+			y += relY*hitTime + bodyY;
+			contactX = bodies.x[hit] + bodyX + normal[0]*bodies.radius[hit];
+			contactY = bodies.y[hit] + bodyY + normal[1]*bodies.radius[hit];
+			impactSpeed = GeometricCalc.dist(0, 0, relX, relY) / ticks;
+		}
+		return hit;
+	}
+}
@@ -0,0 +1,150 @@
+package com.ikarus.solartaxi;
+
+import com.ikarus.solartaxi.level.BodyTable;
+import com.ikarus.solartaxi.level.Level;
+import com.ikarus.solartaxi.level.SpatialIndex;
+
+/**
+ * Predicted flight path of the taxi for the next seconds, assuming no more thrust is applied.<br>
+ * The path is kept as line segments in one preallocated array which can be drawn with a
+ * single Canvas.drawLines call. Each tick the segment the taxi just flew is dropped and
+ * one new segment is simulated at the end, the whole path is only simulated again if
+ * the taxi left it (thrust, shield bounce, takeoff). Orbiting bodies are on rails, so
+ * each segment is simulated with the bodies where they will be at that time, looked up
+ * in a copy of the body table, the bodies of the level stay at the simulation time.
+ *
+ * @author Nikolaus Leopold
+ */
+public class TrajectoryPredictor {
+
+	// how far ahead the path is predicted in seconds
+	public final static float PREDICTION_TIME = 3.0f;
+
+	// max distance between taxi and predicted position before the path is simulated again
+	private final static float MAX_DEVIATION = 0.01f;
+
+	// segments as x0, y0, x1, y1 in world coordinates, point 0 is the taxi position
+	private float[] lines = new float[0];
+	private int segmentCount, maxSegments;
+
+	// whether the path stops at a surface
+	private boolean ended;
+
+	// time step and taxi values the path was simulated with
+	private float dt, gravityFactor;
+	private int thrustCount = -1;
+
+	// motion state at the end of the path
+	private final TaxiMotion tail = new TaxiMotion();
+
+	// copy of the level's body table and index set to the times ahead, and the table it copies
+	private BodyTable bodies;
+	private SpatialIndex index;
+	private BodyTable copied;
+
+	/**
+	 * Update the predicted path, call after each taxi update.
+	 * Does not allocate unless the time step grows or the level has a new body table.
+	 * @param taxi the taxi
+	 * @param level level the taxi flies in
+	 * @param dt simulated time step in seconds
+	 */
+	public void update(Spaceship taxi, Level level, float dt) {
+
+		// nothing to predict
+		if (taxi.isLanded() || taxi.isCrashed() || taxi.isIkarused()) {
+			segmentCount = 0;
+			thrustCount = -1; // simulate again after takeoff
+			return;
+		}
+
+		// time of the next taxi step, the path ahead is simulated at later times
+		double time = level.getTime();
+
+		// new level or endless level chunk
+		if (level.getBodyTable() != copied) {
+			AllocationCheck.allowAllocation();
+			copied = level.getBodyTable();
+			bodies = new BodyTable(copied);
+			index = new SpatialIndex(level.getSpatialIndex(), bodies);
+			thrustCount = -1;
+		}
+
+		if (dt != this.dt || taxi.getThrustCount() != thrustCount
+				|| taxi.getGravityFactor() != gravityFactor || !isOnPath(taxi)) {
+			simulate(taxi, level, dt, time);
+		} else {
+			// drop the segment the taxi just flew and add one at the end
+			--segmentCount;
+			System.arraycopy(lines, 4, lines, 0, segmentCount*4);
+			if (!ended) {
+				extend(level, time);
+			}
+		}
+	}
+
+	/**
+	 * @return segments as x0, y0, x1, y1 in world coordinates, only the first {@link #getLineCount()} values are valid
+	 */
+	public float[] getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return number of valid values in {@link #getLines()}, as expected by Canvas.drawLines
+	 */
+	public int getLineCount() {
+		return segmentCount*4;
+	}
+
+	/**
+	 * @return whether the taxi is where the path predicted it after the last tick
+	 */
+	private boolean isOnPath(Spaceship taxi) {
+		return segmentCount > 0
+				&& Math.abs(lines[2] - taxi.getX()) <= MAX_DEVIATION
+				&& Math.abs(lines[3] - taxi.getY()) <= MAX_DEVIATION;
+	}
+
+	/**
+	 * Simulate the whole path from the current taxi state
+	 */
+	private void simulate(Spaceship taxi, Level level, float dt, double time) {
+
+		this.dt = dt;
+		thrustCount = taxi.getThrustCount();
+		gravityFactor = taxi.getGravityFactor();
+
+		maxSegments = (int) Math.ceil(PREDICTION_TIME/dt);
+		if (lines.length < maxSegments*4) {
+			AllocationCheck.allowAllocation();
+			lines = new float[maxSegments*4];
+		}
+
+		tail.set(taxi.getX(), taxi.getY(), taxi.getOrientation(), taxi.getLookSpeed(), taxi.getAngularSpeed(), false);
+		segmentCount = 0;
+		ended = false;
+
+		while (segmentCount < maxSegments && !ended) {
+			extend(level, time);
+		}
+	}
+
+	/**
+	 * Simulate one more tick from the end of the path and append its segment
+	 * @param time time of the first segment
+	 */
+	private void extend(Level level, double time) {
+
+		int i = segmentCount*4;
+		lines[i] = tail.x;
+		lines[i+1] = tail.y;
+
+		bodies.setTime(time + segmentCount*dt);
+		ended = tail.step(bodies, index, level.getGravityField(), dt*Spaceship.REFERENCE_TICK_RATE, gravityFactor) != -1;
+
+		lines[i+2] = tail.x;
+		lines[i+3] = tail.y;
+		++segmentCount;
+	}
+}
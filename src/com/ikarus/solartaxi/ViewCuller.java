@@ -0,0 +1,145 @@
+package com.ikarus.solartaxi;
+
+/**
+ * Visible area of the world, the screen rectangle rotated and moved by the taxi view,
+ * to leave out drawing objects that are off screen. Also counts drawn and culled
+ * objects per frame.<br>
+ * Plain math without Android dependencies.
+ *
+ * @author Nikolaus Leopold
+ */
+public class ViewCuller {
+
+	// kinds of objects counted
+	public final static int BODIES = 0;
+	public final static int PASSENGERS = 1;
+	public final static int STAR_TILES = 2;
+	public final static int RIVALS = 3;
+	public final static int KINDS = 4;
+
+	// center of the visible area and unit vectors along the screen x and y axes, in world coordinates
+	private float centerX, centerY;
+	private float axisXx, axisXy, axisYx, axisYy;
+	private float halfWidth, halfHeight;
+
+	// axis aligned bounding box of the visible area
+	private float minX, minY, maxX, maxY;
+
+	// objects drawn and left out in the current frame, by kind
+	private final int[] drawn = new int[KINDS], culled = new int[KINDS];
+
+	/**
+	 * Set the visible area for a new frame and reset the counts
+	 * @param corners world x, y of the top left, top right, bottom right and bottom left
+	 * screen corner, as mapped by the inverse view matrix
+	 */
+	public void setView(float[] corners) {
+
+		centerX = (corners[0] + corners[4])/2;
+		centerY = (corners[1] + corners[5])/2;
+
+		// top and left screen edge
+		float wx = corners[2] - corners[0], wy = corners[3] - corners[1];
+		float hx = corners[6] - corners[0], hy = corners[7] - corners[1];
+		float width = (float) Math.sqrt(wx*wx + wy*wy), height = (float) Math.sqrt(hx*hx + hy*hy);
+
+		halfWidth = width/2;
+		halfHeight = height/2;
+		axisXx = width > 0 ? wx/width : 1;
+		axisXy = width > 0 ? wy/width : 0;
+		axisYx = height > 0 ? hx/height : 0;
+		axisYy = height > 0 ? hy/height : 1;
+
+		minX = minY = Float.POSITIVE_INFINITY;
+		maxX = maxY = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < 8; i += 2) {
+			minX = Math.min(minX, corners[i]);
+			minY = Math.min(minY, corners[i+1]);
+			maxX = Math.max(maxX, corners[i]);
+			maxY = Math.max(maxY, corners[i+1]);
+		}
+
+		for (int kind = 0; kind < drawn.length; kind++) {
+			drawn[kind] = culled[kind] = 0;
+		}
+	}
+
+	/**
+	 * Rotated rectangle vs. circle test
+	 * @param x circle center x in world coordinates
+	 * @param y circle center y in world coordinates
+	 * @param radius circle radius
+	 * @return whether the circle overlaps the visible area
+	 */
+	public boolean intersects(float x, float y, float radius) {
+		float dx = x - centerX, dy = y - centerY;
+
+		// distance outside of the rectangle along each screen axis, negative if inside
+		float u = Math.abs(dx*axisXx + dy*axisXy) - halfWidth;
+		float v = Math.abs(dx*axisYx + dy*axisYy) - halfHeight;
+
+		if (u > radius || v > radius) {
+			return false;
+		}
+		if (u <= 0 || v <= 0) {
+			return true;
+		}
+		// near a corner
+		return u*u + v*v <= radius*radius;
+	}
+
+	/**
+	 * Add to the counts of the current frame
+	 * @param kind BODIES, PASSENGERS, STAR_TILES or RIVALS
+	 * @param drawnCount number of objects drawn
+	 * @param culledCount number of objects left out
+	 */
+	public void count(int kind, int drawnCount, int culledCount) {
+		drawn[kind] += drawnCount;
+		culled[kind] += culledCount;
+	}
+
+	/**
+	 * @param kind BODIES, PASSENGERS, STAR_TILES or RIVALS
+	 * @return number of objects drawn in the current frame
+	 */
+	public int getDrawnCount(int kind) {
+		return drawn[kind];
+	}
+
+	/**
+	 * @param kind BODIES, PASSENGERS, STAR_TILES or RIVALS
+	 * @return number of objects left out in the current frame
+	 */
+	public int getCulledCount(int kind) {
+		return culled[kind];
+	}
+
+	/**
+	 * @return min x of the bounding box of the visible area
+	 */
+	public float getMinX() {
+		return minX;
+	}
+
+	/**
+	 * @return min y of the bounding box of the visible area
+	 */
+	public float getMinY() {
+		return minY;
+	}
+
+	/**
+	 * @return max x of the bounding box of the visible area
+	 */
+	public float getMaxX() {
+		return maxX;
+	}
+
+	/**
+	 * @return max y of the bounding box of the visible area
+	 */
+	public float getMaxY() {
+		return maxY;
+	}
+}
@@ -0,0 +1,331 @@
+package com.ikarus.solartaxi;
+
+import com.ikarus.solartaxi.celestialbodies.CelestialBody;
+import com.ikarus.solartaxi.celestialbodies.Planet;
+import com.ikarus.solartaxi.level.BodyTable;
+import com.ikarus.solartaxi.level.Level;
+import com.ikarus.solartaxi.simulation.GameSimulation;
+
+/**
+ * Copy of everything a frame shows of the game at one point in time: the player taxi,
+ * bodies and waiting passengers in range of the screen, rival taxis and the predicted
+ * flight path. Written by the simulation thread and read by the render thread, handed
+ * over by a {@link SnapshotExchange}, so drawing never reads objects the simulation is
+ * changing.<br>
+ * Moving objects also keep their state before the last tick, frames are drawn between
+ * the two by the share of the next tick that has passed ({@link #getAlpha(long)}), so
+ * motion is smooth at any frame rate.<br>
+ * Arrays grow when more objects are in range and are reused by later captures, so
+ * capturing does not allocate once they are large enough. Only the body objects are
+ * referenced, for their size, color and type, which don't change.
+ *
+ * @author Nikolaus Leopold
+ */
+public class WorldSnapshot {
+
+	// level, its time in seconds and the credits required to clear it
+	public Level level;
+	public double time;
+	public int requiredCredits;
+
+	// length of the last tick in seconds, when the snapshot was published and how much
+	// of the next tick had already passed then, both in nanoseconds
+	public float tickLength;
+	public long publishTime, pendingTime;
+
+	// player taxi, position and orientation before the last tick and now
+	public float prevTaxiX, prevTaxiY, taxiX, taxiY;
+	public double prevTaxiOrientation, taxiOrientation;
+	public int taxiBitmapState, chargingSide;
+	public boolean charging;
+	public double batteryState;
+	public int credits, shields, passengerCount;
+
+	// target planet positions of the passengers on board
+	public float[] targetX = new float[0], targetY = new float[0];
+
+	// bodies in range, their positions and velocities in world units per second at the time of the snapshot
+	public int bodyCount;
+	public CelestialBody[] bodies = new CelestialBody[0];
+	public float[] bodyX = new float[0], bodyY = new float[0];
+	public float[] bodyVelocityX = new float[0], bodyVelocityY = new float[0];
+
+	// passengers waiting on the planets in range, and the index of their planet in the bodies
+	public int waitingCount;
+	public float[] waitingX = new float[0], waitingY = new float[0];
+	public double[] waitingRotation = new double[0];
+	public int[] waitingBody = new int[0];
+
+	// rival taxis that have not crashed, position and orientation before the last tick and now
+	public int rivalCount;
+	public float[] prevRivalX = new float[0], prevRivalY = new float[0], rivalX = new float[0], rivalY = new float[0];
+	public double[] prevRivalOrientation = new double[0], rivalOrientation = new double[0];
+	public boolean[] rivalLanded = new boolean[0];
+
+	// bodies of the whole level for the minimap, shared by snapshots until it changes,
+	// and the positions of its orbiting bodies in the order of MinimapLayout.moving
+	public MinimapLayout minimap;
+	public float[] minimapX = new float[0], minimapY = new float[0];
+
+	// predicted flight path, line end points
+	public float[] trajectory = new float[0];
+	public int trajectoryCount;
+
+	// result of the spatial lookup, grown when a level has more bodies
+	private int[] found = new int[0];
+
+	/**
+	 * Copy the state of the simulation, bodies and passengers are taken from the square
+	 * around the taxi. Not thread safe, called from the simulation thread.
+	 * @param simulation simulation to copy
+	 * @param trajectory predicted flight path of the taxi
+	 * @param range half edge length of the square around the taxi in world units
+	 * @param tickLength length of the last tick in seconds
+	 * @param pendingTime time already passed of the next tick in nanoseconds
+	 */
+	public void capture(GameSimulation simulation, TrajectoryPredictor trajectory, float range, float tickLength, long pendingTime) {
+		level = simulation.getLevel();
+		time = simulation.getTime();
+		requiredCredits = level.getRequiredCredits();
+
+		this.tickLength = tickLength;
+		this.pendingTime = pendingTime;
+		publishTime = System.nanoTime();
+
+		Spaceship taxi = simulation.getTaxi();
+		prevTaxiX = taxi.getPrevX();
+		prevTaxiY = taxi.getPrevY();
+		prevTaxiOrientation = taxi.getPrevOrientation();
+		taxiX = taxi.getX();
+		taxiY = taxi.getY();
+		taxiOrientation = taxi.getOrientation();
+		taxiBitmapState = taxi.getBitmapState();
+		charging = taxi.isCharging();
+		chargingSide = taxi.getChargingSide();
+		batteryState = taxi.getBatteryState();
+		credits = taxi.getCredits();
+		shields = taxi.getShields();
+		passengerCount = taxi.getPassengerCount();
+
+		if (targetX.length < passengerCount) {
+			AllocationCheck.allowAllocation();
+			targetX = new float[passengerCount];
+			targetY = new float[passengerCount];
+		}
+		// target planets are mostly out of range, orbiting ones are moved to the time of the snapshot first
+		BodyTable table = level.getBodyTable();
+		for (int i = 0; i < passengerCount; i++) {
+			CelestialBody target = taxi.getTargetPlanet(i);
+			int k = table.indexOf(target);
+			if (k != -1) {
+				table.update(k);
+				targetX[i] = table.x[k];
+				targetY[i] = table.y[k];
+			} else {
+				targetX[i] = target.getX();
+				targetY[i] = target.getY();
+			}
+		}
+
+		captureBodies(range);
+		captureRivals(simulation.getRivals());
+
+		if (this.trajectory.length < trajectory.getLineCount()) {
+			AllocationCheck.allowAllocation();
+			this.trajectory = new float[trajectory.getLines().length];
+		}
+		trajectoryCount = trajectory.getLineCount();
+		System.arraycopy(trajectory.getLines(), 0, this.trajectory, 0, trajectoryCount);
+	}
+
+	/**
+	 * @param now current time as by System.nanoTime()
+	 * @return share of the tick after the snapshot that has passed, 0 is the state before the
+	 * last tick and 1 the state of the snapshot, which is held once a tick is overdue (e.g. paused)
+	 */
+	public float getAlpha(long now) {
+		float alpha = (pendingTime + now - publishTime)/(tickLength*1e9f);
+		return Math.max(0, Math.min(1, alpha));
+	}
+
+	/**
+	 * @return taxi x-coordinate at alpha, see {@link #getAlpha(long)}
+	 */
+	public float getTaxiX(float alpha) {
+		return prevTaxiX + (taxiX - prevTaxiX)*alpha;
+	}
+
+	public float getTaxiY(float alpha) {
+		return prevTaxiY + (taxiY - prevTaxiY)*alpha;
+	}
+
+	public double getTaxiOrientation(float alpha) {
+		return blendAngle(prevTaxiOrientation, taxiOrientation, alpha);
+	}
+
+	/**
+	 * @return x-coordinate of body k at alpha, moved back along its velocity
+	 */
+	public float getBodyX(int k, float alpha) {
+		return bodyX[k] - bodyVelocityX[k]*tickLength*(1 - alpha);
+	}
+
+	public float getBodyY(int k, float alpha) {
+		return bodyY[k] - bodyVelocityY[k]*tickLength*(1 - alpha);
+	}
+
+	/**
+	 * @return x-coordinate of waiting passenger i at alpha, moved with its planet
+	 */
+	public float getWaitingX(int i, float alpha) {
+		return waitingX[i] - bodyVelocityX[waitingBody[i]]*tickLength*(1 - alpha);
+	}
+
+	public float getWaitingY(int i, float alpha) {
+		return waitingY[i] - bodyVelocityY[waitingBody[i]]*tickLength*(1 - alpha);
+	}
+
+	public float getRivalX(int i, float alpha) {
+		return prevRivalX[i] + (rivalX[i] - prevRivalX[i])*alpha;
+	}
+
+	public float getRivalY(int i, float alpha) {
+		return prevRivalY[i] + (rivalY[i] - prevRivalY[i])*alpha;
+	}
+
+	public double getRivalOrientation(int i, float alpha) {
+		return blendAngle(prevRivalOrientation[i], rivalOrientation[i], alpha);
+	}
+
+	/**
+	 * @return angle between a and b the short way round, 0 is a and 1 is b
+	 */
+	private static double blendAngle(double a, double b, float t) {
+		double d = b - a;
+		d -= 2*Math.PI*Math.floor((d + Math.PI)/(2*Math.PI));
+		return a + d*t;
+	}
+
+	/**
+	 * Set the minimap layout and capture where its orbiting bodies are, call after {@link #capture}
+	 * with a layout of the same level. Orbiting bodies are moved by the lookup.
+	 * @param layout current layout of the level
+	 */
+	public void captureMinimap(MinimapLayout layout) {
+		minimap = layout;
+		if (minimapX.length < layout.moving.length) {
+			AllocationCheck.allowAllocation();
+			minimapX = new float[layout.moving.length];
+			minimapY = new float[layout.moving.length];
+		}
+		BodyTable table = level.getBodyTable();
+		for (int j = 0; j < layout.moving.length; j++) {
+			int k = layout.moving[j];
+			table.update(k);
+			minimapX[j] = table.x[k];
+			minimapY[j] = table.y[k];
+		}
+	}
+
+	/**
+	 * Bodies and their waiting passengers near the taxi, orbiting bodies are moved by the lookup
+	 */
+	private void captureBodies(float range) {
+		BodyTable table = level.getBodyTable();
+		if (found.length < table.size()) {
+			AllocationCheck.allowAllocation();
+			found = new int[table.size()];
+		}
+		int n = level.getSpatialIndex().query(taxiX - range, taxiY - range, taxiX + range, taxiY + range, found);
+
+		if (bodies.length < n) {
+			AllocationCheck.allowAllocation();
+			bodies = new CelestialBody[n];
+			bodyX = new float[n];
+			bodyY = new float[n];
+			bodyVelocityX = new float[n];
+			bodyVelocityY = new float[n];
+		}
+		bodyCount = n;
+		waitingCount = 0;
+
+		for (int k = 0; k < n; k++) {
+			CelestialBody cb = table.getBody(found[k]);
+			bodies[k] = cb;
+			bodyX[k] = cb.getX();
+			bodyY[k] = cb.getY();
+			bodyVelocityX[k] = table.isMoving(found[k]) ? cb.getVelocityX() : 0;
+			bodyVelocityY[k] = table.isMoving(found[k]) ? cb.getVelocityY() : 0;
+
+			if (cb instanceof Planet) {
+				Planet planet = (Planet) cb;
+				growWaiting(waitingCount + planet.getWaitingPassengerCount());
+				for (int i = 0; i < planet.getWaitingPassengerCount(); i++) {
+					Passenger p = planet.getWaitingPassenger(i);
+					waitingX[waitingCount] = p.getX();
+					waitingY[waitingCount] = p.getY();
+					waitingRotation[waitingCount] = p.getRotation();
+					waitingBody[waitingCount] = k;
+					++waitingCount;
+				}
+			}
+		}
+
+		// let go of bodies of an earlier level or chunk
+		for (int k = n; k < bodies.length && bodies[k] != null; k++) {
+			bodies[k] = null;
+		}
+	}
+
+	private void captureRivals(TaxiFleet rivals) {
+		rivalCount = 0;
+		if (rivals == null) {
+			return;
+		}
+		if (rivalX.length < rivals.size()) {
+			AllocationCheck.allowAllocation();
+			prevRivalX = new float[rivals.size()];
+			prevRivalY = new float[rivals.size()];
+			prevRivalOrientation = new double[rivals.size()];
+			rivalX = new float[rivals.size()];
+			rivalY = new float[rivals.size()];
+			rivalOrientation = new double[rivals.size()];
+			rivalLanded = new boolean[rivals.size()];
+		}
+		for (int i = 0; i < rivals.size(); i++) {
+			if (rivals.getState(i) == TaxiFleet.CRASHED) {
+				continue;
+			}
+			prevRivalX[rivalCount] = rivals.getPrevX(i);
+			prevRivalY[rivalCount] = rivals.getPrevY(i);
+			prevRivalOrientation[rivalCount] = rivals.getPrevOrientation(i);
+			rivalX[rivalCount] = rivals.getX(i);
+			rivalY[rivalCount] = rivals.getY(i);
+			rivalOrientation[rivalCount] = rivals.getOrientation(i);
+			rivalLanded[rivalCount] = rivals.getState(i) == TaxiFleet.LANDED;
+			++rivalCount;
+		}
+	}
+
+	/**
+	 * Make room for at least n waiting passengers, keeping the ones captured so far
+	 */
+	private void growWaiting(int n) {
+		if (waitingX.length >= n) {
+			return;
+		}
+		AllocationCheck.allowAllocation();
+		int size = Math.max(n, 2*waitingX.length);
+		float[] x = new float[size], y = new float[size];
+		double[] rotation = new double[size];
+		int[] body = new int[size];
+		System.arraycopy(waitingX, 0, x, 0, waitingCount);
+		System.arraycopy(waitingY, 0, y, 0, waitingCount);
+		System.arraycopy(waitingRotation, 0, rotation, 0, waitingCount);
+		System.arraycopy(waitingBody, 0, body, 0, waitingCount);
+		waitingX = x;
+		waitingY = y;
+		waitingRotation = rotation;
+		waitingBody = body;
+	}
+}
@@ -1,11 +1,10 @@
 package com.ikarus.solartaxi.celestialbodies;
 
-import android.graphics.Paint;
-
 /**
  * This class represents a CelestialBody, either a 'Sun' or a 'Planet' object. Each 
- * object has a center point represented by x and y and a radius, as well as a Paint
- * Object for the surface color and a value for the gravitational pull of the object.
+ * object has a center point represented by x and y and a radius, as well as an ARGB
+ * color value for the surface and a value for the gravitational pull of the object.
+ * Bodies can be put on an {@link Orbit} around another body.
  * 
  * @author Sebastian Kirchner
  */
@@ -13,11 +12,24 @@ public abstract class CelestialBody {
 	private final static float MIN_RADIUS = 80; // minimum Radius for objects
 	private final static float MAX_RADIUS = 800;  // maximum Radius for objects
 	
+	// gravity and charging range as multiple of the radius
+	public final static int INFLUENCE_COEFF = 3;
+	
 	private float x, y; // center coordinates
 	private float radius;	
 	
+	// path around another body, null if this body does not move
+	private Orbit orbit;
+	
+	// time x, y and velocity belong to, and velocity in world units per second
+	private double time = Double.NaN;
+	private float velocityX, velocityY;
+	
+	// offset and velocity looked up from the orbit, reused to avoid allocation
+	private float[] orbitSample;
+	
 	protected float gravity; 
-	protected Paint surfaceColor;
+	protected int surfaceColor; // ARGB, as used by android.graphics.Color
 	
 	/**
 	 * Constructor 
@@ -33,25 +45,107 @@ public abstract class CelestialBody {
 		// is set to minRadi
 		this.radius = radius > MAX_RADIUS ? MAX_RADIUS : radius < MIN_RADIUS ? MIN_RADIUS : radius;
 		this.gravity = interpolate(1.0f, 0.5f);
-		this.surfaceColor = new Paint();
-		surfaceColor.setStrokeWidth(10);
-		surfaceColor.setAntiAlias(true);
 	}
 	
 	/**
-	 * @return x-coordinate of the center of this CelestialBody
+	 * @return x-coordinate of the center of this CelestialBody at the time of the last {@link #moveTo(double)}
 	 */
 	public float getX() {
 		return x;
 	}
 	
 	/**
-	 * @return y-coordinate of the center of this CelestialBody
+	 * @return y-coordinate of the center of this CelestialBody at the time of the last {@link #moveTo(double)}
 	 */
 	public float getY() {
 		return y;
 	}
 	
+	/**
+	 * @return velocity in x at the time of the last {@link #moveTo(double)}, in world units per second
+	 */
+	public float getVelocityX() {
+		return velocityX;
+	}
+	
+	/**
+	 * @return velocity in y at the time of the last {@link #moveTo(double)}, in world units per second
+	 */
+	public float getVelocityY() {
+		return velocityY;
+	}
+	
+	/**
+	 * Put this body on an orbit around another body, starting at its current position
+	 * which is the closest point to the center. The positions of one period are
+	 * precomputed here, so this should be done when the level is defined.
+	 * @param center body to orbit, may itself be orbiting
+	 * @param period time of one revolution in seconds
+	 * @param eccentricity 0 for a circle, up to 0.9 for a long ellipse
+	 */
+	public void setOrbit(CelestialBody center, float period, float eccentricity) {
+		for (CelestialBody c = center; c != null; c = c.orbit != null ? c.orbit.getCenter() : null) {
+			if (c == this) {
+				throw new IllegalArgumentException("a body can't orbit itself");
+			}
+		}
+		
+		orbit = new Orbit(center, x - center.getX(), y - center.getY(), period, eccentricity);
+		orbitSample = new float[4];
+	}
+	
+	/**
+	 * @return path around another body, null if this body does not move
+	 */
+	public Orbit getOrbit() {
+		return orbit;
+	}
+	
+	/**
+	 * Move this body, and the bodies it orbits, to where they are at the given time.
+	 * Does nothing for bodies without orbit or if already there. 
+	 * @param time time since the start of the level in seconds
+	 */
+	public void moveTo(double time) {
+		if (orbit == null || time == this.time) {
+			return;
+		}
+		
+		CelestialBody center = orbit.getCenter();
+		center.moveTo(time);
+		orbit.sample(time, orbitSample);
+		
+		this.time = time;
+		x = center.x + orbitSample[0];
+		y = center.y + orbitSample[1];
+		velocityX = center.velocityX + orbitSample[2];
+		velocityY = center.velocityY + orbitSample[3];
+	}
+	
+	/**
+	 * Look up where this body is at a given time without moving it, e.g. to look ahead.
+	 * Does not allocate and does not change any body.
+	 * @param time time since the start of the level in seconds
+	 * @param out array of at least 8 floats, receives x, y, velocity x and velocity y,
+	 * the other 4 are used in between
+	 */
+	public void sampleAt(double time, float[] out) {
+		if (orbit == null) {
+			out[0] = x;
+			out[1] = y;
+			out[2] = velocityX;
+			out[3] = velocityY;
+			return;
+		}
+
+		orbit.getCenter().sampleAt(time, out);
+		orbit.sample(time, out, 4);
+		out[0] += out[4];
+		out[1] += out[5];
+		out[2] += out[6];
+		out[3] += out[7];
+	}
+
 	/**
 	 * @return radius of this CelestialBody
 	 */
@@ -59,6 +153,13 @@ public abstract class CelestialBody {
 		return radius;
 	}
 	
+	/**
+	 * @return radius of the area in which this CelestialBody applies gravity or charges the taxi
+	 */
+	public float getInfluenceRadius() {
+		return radius*INFLUENCE_COEFF;
+	}
+	
 	/**
 	 * @return the gravity pull value for this Object
 	 */
@@ -66,9 +167,20 @@ public abstract class CelestialBody {
 		return this.gravity;
 	}
 	
-	public Paint getSurfaceColor() {
+	/**
+	 * @return surface color as ARGB value
+	 */
+	public int getSurfaceColor() {
 		return this.surfaceColor;
 	}
+
+	/**
+	 * Same packing as android.graphics.Color.argb, without depending on Android.
+	 * @return ARGB color value of the given components in range [0, 255]
+	 */
+	protected static int argb(int alpha, int red, int green, int blue) {
+		return (alpha << 24) | (red << 16) | (green << 8) | blue;
+	}
 	/**
 	 * Get interpolated value in given range according to the size of the radius.
 	 * 
@@ -0,0 +1,134 @@
+package com.ikarus.solartaxi.celestialbodies;
+
+/**
+ * Fixed path of a CelestialBody around a center body (Kepler ellipse with the center
+ * in one focus). The position relative to the center is sampled over one period when
+ * the orbit is created and linearly interpolated by time, so looking up a position
+ * costs the same as for a circle, no matter how eccentric the orbit is.<br>
+ * Orbits are on rails, bodies do not attract each other.
+ *
+ * @author Nikolaus Leopold
+ */
+public class Orbit {
+
+	// samples per period, chord error is about 4e-5 times the orbit size
+	private final static int SAMPLES = 360;
+
+	// iterations to solve Kepler's equation, converges for eccentricity < 0.9
+	private final static int KEPLER_ITERATIONS = 10;
+
+	private final CelestialBody center;
+
+	// time of one revolution in seconds
+	private final float period;
+
+	// position relative to the center per sample, SAMPLES+1 entries, the last equals the first
+	private final float[] offsetX, offsetY;
+
+	// closest and farthest distance to the center
+	private final float minDistance, maxDistance;
+
+	/**
+	 * Constructor, precomputes the ephemeris table. The body starts at the point
+	 * closest to the center and moves counterclockwise in world coordinates.
+	 * @param center body orbited
+	 * @param startX x-coordinate of the body relative to the center at time 0
+	 * @param startY y-coordinate of the body relative to the center at time 0
+	 * @param period time of one revolution in seconds
+	 * @param eccentricity 0 for a circle, up to 0.9 for a long ellipse
+	 */
+	Orbit(CelestialBody center, float startX, float startY, float period, float eccentricity) {
+
+		if (period <= 0 || eccentricity < 0 || eccentricity > 0.9f) {
+			throw new IllegalArgumentException("invalid orbit, period " + period + ", eccentricity " + eccentricity);
+		}
+
+		this.center = center;
+		this.period = period;
+
+		float start = (float) Math.sqrt(startX*startX + startY*startY);
+		float dirX = startX/start, dirY = startY/start;
+
+		// semi-major and semi-minor axis
+		double a = start/(1 - eccentricity);
+		double b = a*Math.sqrt(1 - eccentricity*eccentricity);
+
+		minDistance = start;
+		maxDistance = (float) (a*(1 + eccentricity));
+
+		offsetX = new float[SAMPLES + 1];
+		offsetY = new float[SAMPLES + 1];
+		for (int k = 0; k < SAMPLES; k++) {
+
+			// mean anomaly grows uniformly with time, solve M = E - e*sin(E) for the eccentric anomaly
+			double meanAnomaly = 2*Math.PI*k/SAMPLES;
+			double e = meanAnomaly;
+			for (int it = 0; it < KEPLER_ITERATIONS; it++) {
+				e -= (e - eccentricity*Math.sin(e) - meanAnomaly)/(1 - eccentricity*Math.cos(e));
+			}
+
+			// position with the closest point on the x axis, rotated to the start direction
+			float px = (float) (a*(Math.cos(e) - eccentricity)), py = (float) (b*Math.sin(e));
+			offsetX[k] = px*dirX - py*dirY;
+			offsetY[k] = px*dirY + py*dirX;
+		}
+		offsetX[SAMPLES] = offsetX[0];
+		offsetY[SAMPLES] = offsetY[0];
+	}
+
+	/**
+	 * Look up position and velocity relative to the center. Does not allocate.
+	 * @param time time since the start of the orbit in seconds
+	 * @param out array of at least 4 floats, receives offset x, offset y
+	 * and velocity x, velocity y in world units per second
+	 */
+	void sample(double time, float[] out) {
+		sample(time, out, 0);
+	}
+
+	/**
+	 * Same as {@link #sample(double, float[])}, writes the 4 values to out from offset on
+	 */
+	void sample(double time, float[] out, int offset) {
+		double phase = time/period;
+		float pos = (float) (phase - Math.floor(phase))*SAMPLES;
+		int k = Math.min((int) pos, SAMPLES - 1);
+		float t = pos - k;
+
+		float dx = offsetX[k + 1] - offsetX[k], dy = offsetY[k + 1] - offsetY[k];
+		out[offset] = offsetX[k] + dx*t;
+		out[offset + 1] = offsetY[k] + dy*t;
+
+		// derivative of the interpolation, a sample lasts period/SAMPLES seconds
+		out[offset + 2] = dx*SAMPLES/period;
+		out[offset + 3] = dy*SAMPLES/period;
+	}
+
+	/**
+	 * @return body orbited
+	 */
+	public CelestialBody getCenter() {
+		return center;
+	}
+
+	/**
+	 * @return time of one revolution in seconds
+	 */
+	public float getPeriod() {
+		return period;
+	}
+
+	/**
+	 * @return closest distance to the center
+	 */
+	public float getMinDistance() {
+		return minDistance;
+	}
+
+	/**
+	 * @return farthest distance to the center
+	 */
+	public float getMaxDistance() {
+		return maxDistance;
+	}
+}
@@ -1,12 +1,11 @@
 package com.ikarus.solartaxi.celestialbodies;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.NoSuchElementException;
 import java.util.Random;
 
-import android.graphics.Matrix;
-
+import com.ikarus.solartaxi.AllocationCheck;
 import com.ikarus.solartaxi.Passenger;
 
 /**
@@ -17,7 +16,8 @@ import com.ikarus.solartaxi.Passenger;
  */
 public class Planet extends CelestialBody {
 	
-	private LinkedList<Passenger> waitingPassengers = new LinkedList<Passenger>();
+	// in order of arrival, an array list so indexed access is constant time, lists are short
+	private ArrayList<Passenger> waitingPassengers = new ArrayList<Passenger>();
 
 	/**
 	 * Constructor of Planet object, the surfaceColor is interpolated using the radius, for 
@@ -31,35 +31,52 @@ public class Planet extends CelestialBody {
 		super(x, y, radius);
 		
 		Random rand = new Random();
-		this.surfaceColor.setARGB(255, rand.nextInt(100)+100, rand.nextInt(100)+100, rand.nextInt(100)+100);
+		this.surfaceColor = argb(255, rand.nextInt(100)+100, rand.nextInt(100)+100, rand.nextInt(100)+100);
 	}
 	
 	/**
-	 * @return list of waiting passenger transformation matrices
+	 * @return passengers waiting on this planet, must not be modified
 	 */
-	public Collection<Matrix> getPassengerMatrices() {
-		LinkedList<Matrix> matrices = new LinkedList<Matrix>();
-		for (Passenger p : waitingPassengers) {
-			matrices.add(p.getMatrix());
-		}
-		return matrices;
+	public Collection<Passenger> getWaitingPassengers() {
+		return waitingPassengers;
+	}
+
+	/**
+	 * @return number of passengers waiting on this planet
+	 */
+	public int getWaitingPassengerCount() {
+		return waitingPassengers.size();
+	}
+
+	/**
+	 * Does not allocate, unlike iterating over {@link #getWaitingPassengers()}, constant time.
+	 * @param i index of the passenger, 0 to {@link #getWaitingPassengerCount()}-1
+	 * @return passenger waiting on this planet
+	 */
+	public Passenger getWaitingPassenger(int i) {
+		return waitingPassengers.get(i);
 	}
 	
 	/**
-	 * remove a passenger from planet to be picked up by taxi
+	 * remove a passenger from planet to be picked up by taxi, the one waiting longest
 	 * @return passenger to be picked up by taxi
 	 */
 	public Passenger pickUpPassenger() throws NoSuchElementException {
-		return waitingPassengers.pop();
+		if (waitingPassengers.isEmpty()) {
+			throw new NoSuchElementException();
+		}
+		return waitingPassengers.remove(0);
 	}
 	
 	/**
 	 * add a passenger on this planet waiting for taxi to target planet
 	 * @param targetPlanet passenger intends to travel to (mustnt be this)
+	 * @param random used to place the passenger on the surface
 	 */
-	public void addWaitingPassenger(Planet targetPlanet) {
+	public void addWaitingPassenger(Planet targetPlanet, Random random) {
 		if (targetPlanet != null && targetPlanet != this) {
-			waitingPassengers.add(new Passenger(this, targetPlanet));
+			AllocationCheck.allowAllocation();
+			waitingPassengers.add(new Passenger(this, targetPlanet, random));
 		}
 	}
 	
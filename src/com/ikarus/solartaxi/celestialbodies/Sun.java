@@ -17,7 +17,7 @@ public class Sun extends CelestialBody {
 	 */
 	public Sun(float x, float y, float radius) {
 		super(x, y, radius);
-		this.surfaceColor.setARGB(255, 255, interpolateRGB(200, 255), 0);
+		this.surfaceColor = argb(255, 255, interpolateRGB(200, 255), 0);
 	}
 	
 	public boolean equals(Object o) {
@@ -0,0 +1,236 @@
+package com.ikarus.solartaxi.level;
+
+import java.util.Collection;
+
+import com.ikarus.solartaxi.celestialbodies.CelestialBody;
+import com.ikarus.solartaxi.celestialbodies.Orbit;
+import com.ikarus.solartaxi.celestialbodies.Sun;
+
+/**
+ * Packed copy of the physics relevant data of all celestial bodies in a level,
+ * stored as parallel arrays indexed by body. Iterating over these is sequential
+ * in memory and needs no instanceof checks or virtual calls, which is what the
+ * taxi update loop does for every body in range each tick.<br>
+ * Bodies on an orbit are only moved to the current time of the table when
+ * {@link #update(int)} is called for them, which the {@link SpatialIndex} does for
+ * the bodies it returns, so the cost per tick depends on the bodies near the taxi
+ * and not on all bodies in the level.<br>
+ * Built once when the level is defined, arrays must not be modified.<br>
+ * A copy ({@link #BodyTable(BodyTable)}) has positions of its own and can be set to
+ * another time, e.g. to look ahead, without moving the bodies of the level.
+ *
+ * @author Nikolaus Leopold
+ */
+public class BodyTable {
+
+	// type tags
+	public final static byte TYPE_SUN = 0;
+	public final static byte TYPE_PLANET = 1;
+
+	// center coordinates, of orbiting bodies as of their last update
+	public final float[] x, y;
+
+	// velocity in world units per second, of orbiting bodies as of their last update
+	public final float[] velocityX, velocityY;
+
+	public final float[] radius, radiusSq;
+
+	public final float[] gravity;
+
+	// radius of the area of gravity and charging range
+	public final float[] influence, influenceSq;
+
+	// area the area of influence can ever cover, a ring with inner and outer radius around
+	// a fixed center. for bodies that don't move this is just the area of influence
+	public final float[] sweepX, sweepY, sweepInner, sweepOuter;
+
+	// TYPE_SUN or TYPE_PLANET
+	public final byte[] type;
+
+	// whether the body is on an orbit
+	private final boolean[] moving;
+
+	// time of the table, update stamp per body and of the current time
+	private double time;
+	private final int[] updated;
+	private int stamp;
+
+	// the body objects, only needed for passengers and drawing
+	private final CelestialBody[] bodies;
+
+	// copies look up orbit positions instead of moving the bodies, null for the level's table
+	private final float[] sample;
+
+	/**
+	 * Constructor, copies the data of all bodies
+	 * @param celestialBodies all bodies in the level
+	 */
+	public BodyTable(Collection<CelestialBody> celestialBodies) {
+		int n = celestialBodies.size();
+
+		x = new float[n];
+		y = new float[n];
+		velocityX = new float[n];
+		velocityY = new float[n];
+		radius = new float[n];
+		radiusSq = new float[n];
+		gravity = new float[n];
+		influence = new float[n];
+		influenceSq = new float[n];
+		sweepX = new float[n];
+		sweepY = new float[n];
+		sweepInner = new float[n];
+		sweepOuter = new float[n];
+		type = new byte[n];
+		moving = new boolean[n];
+		updated = new int[n];
+		bodies = celestialBodies.toArray(new CelestialBody[n]);
+		sample = null;
+
+		for (int i = 0; i < n; i++) {
+			CelestialBody c = bodies[i];
+			x[i] = c.getX();
+			y[i] = c.getY();
+			radius[i] = c.getRadius();
+			radiusSq[i] = c.getRadius()*c.getRadius();
+			gravity[i] = c.getGravity();
+			influence[i] = c.getInfluenceRadius();
+			influenceSq[i] = c.getInfluenceRadius()*c.getInfluenceRadius();
+			type[i] = c instanceof Sun ? TYPE_SUN : TYPE_PLANET;
+			moving[i] = c.getOrbit() != null;
+			updated[i] = stamp - 1;
+
+			// ring the center can be in, widened by the area of influence
+			sweep(c, i);
+			sweepInner[i] = Math.max(0, sweepInner[i] - influence[i]);
+			sweepOuter[i] += influence[i];
+		}
+	}
+
+	/**
+	 * Copy with positions of its own, updating it never moves the body objects, so it can be
+	 * set to another time than the level. Data that doesn't change is shared.
+	 * @param table table of the level
+	 */
+	public BodyTable(BodyTable table) {
+		x = table.x.clone();
+		y = table.y.clone();
+		velocityX = table.velocityX.clone();
+		velocityY = table.velocityY.clone();
+		radius = table.radius;
+		radiusSq = table.radiusSq;
+		gravity = table.gravity;
+		influence = table.influence;
+		influenceSq = table.influenceSq;
+		sweepX = table.sweepX;
+		sweepY = table.sweepY;
+		sweepInner = table.sweepInner;
+		sweepOuter = table.sweepOuter;
+		type = table.type;
+		moving = table.moving;
+		bodies = table.bodies;
+		time = table.time;
+		updated = new int[bodies.length];
+		for (int i = 0; i < updated.length; i++) {
+			updated[i] = stamp - 1;
+		}
+		sample = new float[8];
+	}
+
+	/**
+	 * Set the time all bodies are moved to when updated, bodies are not moved yet.
+	 * @param time time since the start of the level in seconds
+	 */
+	public void setTime(double time) {
+		this.time = time;
+		++stamp;
+	}
+
+	/**
+	 * @return time since the start of the level in seconds
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * Move body i to the current time of the table, only moves each body once per time.
+	 * @param i index of a body in this table
+	 */
+	public void update(int i) {
+		if (!moving[i] || updated[i] == stamp) {
+			return;
+		}
+		CelestialBody c = bodies[i];
+		if (sample != null) {
+			c.sampleAt(time, sample);
+			x[i] = sample[0];
+			y[i] = sample[1];
+			velocityX[i] = sample[2];
+			velocityY[i] = sample[3];
+		} else {
+			c.moveTo(time);
+			x[i] = c.getX();
+			y[i] = c.getY();
+			velocityX[i] = c.getVelocityX();
+			velocityY[i] = c.getVelocityY();
+		}
+		updated[i] = stamp;
+	}
+
+	/**
+	 * @param body a body object
+	 * @return index of the body in this table, -1 if it is not in here
+	 */
+	public int indexOf(CelestialBody body) {
+		for (int i = 0; i < bodies.length; i++) {
+			if (bodies[i] == body) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param i index of a body in this table
+	 * @return whether the body is on an orbit
+	 */
+	public boolean isMoving(int i) {
+		return moving[i];
+	}
+
+	/**
+	 * @return number of bodies
+	 */
+	public int size() {
+		return bodies.length;
+	}
+
+	/**
+	 * @param i index of a body in this table
+	 * @return the body object stored at index i
+	 */
+	public CelestialBody getBody(int i) {
+		return bodies[i];
+	}
+
+	/**
+	 * Ring the center of c can ever be in, written to index i of the sweep arrays.
+	 * Around the center of the first body that does not move, and as wide as the
+	 * orbits of all bodies in between.
+	 */
+	private void sweep(CelestialBody c, int i) {
+		Orbit orbit = c.getOrbit();
+		if (orbit == null) {
+			sweepX[i] = c.getX();
+			sweepY[i] = c.getY();
+			sweepInner[i] = 0;
+			sweepOuter[i] = 0;
+			return;
+		}
+
+		sweep(orbit.getCenter(), i);
+		sweepInner[i] = Math.max(0, Math.max(orbit.getMinDistance() - sweepOuter[i], sweepInner[i] - orbit.getMaxDistance()));
+		sweepOuter[i] += orbit.getMaxDistance();
+	}
+}
@@ -0,0 +1,339 @@
+package com.ikarus.solartaxi.level;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.ikarus.solartaxi.AllocationCheck;
+import com.ikarus.solartaxi.celestialbodies.CelestialBody;
+import com.ikarus.solartaxi.celestialbodies.Planet;
+import com.ikarus.solartaxi.celestialbodies.Sun;
+
+/**
+ * Level without boundary. Space is divided into square chunks, each chunk is generated
+ * from the level seed and its position only, so it always looks the same when the taxi
+ * comes back. Only the chunks around the taxi are in the body table and spatial index,
+ * so the cost per tick does not depend on how far the taxi has flown.<br>
+ * Chunks are generated on a background thread when the taxi approaches and kept in a
+ * cache of limited size, least recently used chunks are dropped first. Passengers picked
+ * up on a dropped chunk are waiting again when it is generated the next time.<br>
+ * NOTE: positions are floats, precision drops far away from the start (around 10^6 units)
+ *
+ * @author Nikolaus Leopold
+ */
+public final class EndlessLevel extends Level {
+
+	// chunks around the chunk of the taxi that are in the body table, and that are generated in advance
+	private final static int ACTIVE_RADIUS = 1;
+	private final static int PREFETCH_RADIUS = 2;
+
+	// chunks kept in the cache, more than the prefetched ones
+	private final static int CACHE_SIZE = 64;
+
+	// attempts to find a free spot for a body before it is left out
+	private final static int PLACEMENT_ATTEMPTS = 20;
+
+	/**
+	 * Content of one chunk, must not be modified after generation
+	 */
+	private static class Chunk {
+		final ArrayList<CelestialBody> bodies = new ArrayList<CelestialBody>();
+	}
+
+	/**
+	 * Bodies of the chunks around one chunk
+	 */
+	private static class Snapshot {
+		final int col, row;
+		final ArrayList<CelestialBody> bodies = new ArrayList<CelestialBody>();
+		BodyTable bodyTable;
+		SpatialIndex spatialIndex;
+
+		Snapshot(int col, int row) {
+			this.col = col;
+			this.row = row;
+		}
+	}
+
+	// edge length of a chunk, chunk (0, 0) is centered on the taxi start
+	private final float chunkSize;
+
+	private final long seed;
+
+	// generated chunks by key, in access order. only used by the chunk builder thread
+	// (and the constructor, before it starts), tasks run one after another
+	private final LinkedHashMap<Long, Chunk> cache = new LinkedHashMap<Long, Chunk>(CACHE_SIZE, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Chunk> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	private final ThreadPoolExecutor chunkBuilder;
+
+	// chunk the current body table is centered on
+	private int activeCol, activeRow;
+
+	// snapshot being built in the background and the chunk it is centered on, null if none
+	private Future<Snapshot> pending;
+	private int pendingCol, pendingRow;
+
+	/**
+	 * CONSTRUCTOR, generates the chunks around the start
+	 * @param metrics sizes the level is defined in
+	 * @param seed seed of all chunks, passengers and stars
+	 */
+	public EndlessLevel(LevelMetrics metrics, long seed) {
+
+		super(metrics, seed);
+		this.seed = seed;
+
+		// name of this level, displayed at the beginning
+		levelName = "ENDLESS GALAXY";
+
+		// no boundary, no warping
+		worldMinX = Float.NEGATIVE_INFINITY;
+		worldMinY = Float.NEGATIVE_INFINITY;
+		worldMaxX = Float.POSITIVE_INFINITY;
+		worldMaxY = Float.POSITIVE_INFINITY;
+
+		// taxi orientation must be in range [0,2pi[
+		taxiStartOrientation = 3*(float)Math.PI/2;
+
+		// never cleared, there is no level after this one
+		creditsRequired = Integer.MAX_VALUE;
+		nextLevel = null;
+
+		chunkSize = 4*metrics.uniformDist;
+
+		swap(build(0, 0));
+
+		chunkBuilder = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "Chunks");
+						thread.setPriority(Thread.MIN_PRIORITY);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		// no idle thread is kept for levels that are not played anymore
+		chunkBuilder.allowCoreThreadTimeOut(true);
+
+		prefetch(0, 0);
+	}
+
+	/**
+	 * Requests the chunks around the taxi when it enters a new chunk and
+	 * switches to them once they are built.
+	 */
+	@Override
+	public void track(float x, float y, boolean wait) {
+
+		int col = (int) Math.floor(x/chunkSize + 0.5f);
+		int row = (int) Math.floor(y/chunkSize + 0.5f);
+
+		if ((col != activeCol || row != activeRow) && (pending == null || col != pendingCol || row != pendingRow)) {
+			// an older request is not needed anymore, it still fills the cache
+			AllocationCheck.allowAllocation();
+			final int c = col, r = row;
+			pending = chunkBuilder.submit(new Callable<Snapshot>() {
+				@Override
+				public Snapshot call() {
+					return build(c, r);
+				}
+			});
+			pendingCol = col;
+			pendingRow = row;
+			prefetch(col, row);
+		}
+
+		if (pending != null && (wait || pending.isDone())) {
+			AllocationCheck.allowAllocation();
+			swap(await(pending));
+			pending = null;
+		}
+	}
+
+	/**
+	 * Switch body table and spatial index to a snapshot
+	 */
+	private void swap(Snapshot snapshot) {
+		double time = bodyTable != null ? bodyTable.getTime() : 0;
+
+		celestialBodies = snapshot.bodies;
+		bodyTable = snapshot.bodyTable;
+		spatialIndex = snapshot.spatialIndex;
+		bodyTable.setTime(time);
+
+		activeCol = snapshot.col;
+		activeRow = snapshot.row;
+	}
+
+	/**
+	 * Collect the chunks around a chunk and build the body table and spatial index
+	 * over them. Runs on the chunk builder thread.
+	 */
+	private Snapshot build(int col, int row) {
+
+		Snapshot snapshot = new Snapshot(col, row);
+
+		for (int r = row - ACTIVE_RADIUS; r <= row + ACTIVE_RADIUS; r++) {
+			for (int c = col - ACTIVE_RADIUS; c <= col + ACTIVE_RADIUS; c++) {
+				Chunk chunk = chunk(c, r);
+				snapshot.bodies.addAll(chunk.bodies);
+			}
+		}
+
+		snapshot.bodyTable = new BodyTable(snapshot.bodies);
+		snapshot.spatialIndex = new SpatialIndex(snapshot.bodyTable);
+		return snapshot;
+	}
+
+	/**
+	 * Generate the chunks around a chunk in advance, in whatever direction the taxi goes next
+	 */
+	private void prefetch(final int col, final int row) {
+		chunkBuilder.execute(new Runnable() {
+			@Override
+			public void run() {
+				for (int r = row - PREFETCH_RADIUS; r <= row + PREFETCH_RADIUS; r++) {
+					for (int c = col - PREFETCH_RADIUS; c <= col + PREFETCH_RADIUS; c++) {
+						chunk(c, r);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return chunk (col, row) from the cache, generated if not in there
+	 */
+	private Chunk chunk(int col, int row) {
+		Long key = ((long) col << 32) | (row & 0xFFFFFFFFL);
+		Chunk chunk = cache.get(key);
+		if (chunk == null) {
+			chunk = generate(col, row);
+			cache.put(key, chunk);
+		}
+		return chunk;
+	}
+
+	/**
+	 * Generate chunk (col, row), depends only on the level seed and the chunk position.
+	 * Bodies keep a gap of a small planet radius to each other and to the chunk border,
+	 * so bodies of neighbouring chunks never overlap.
+	 */
+	private Chunk generate(int col, int row) {
+
+		Random rand = new Random(chunkSeed(col, row));
+		Chunk chunk = new Chunk();
+
+		float gap = metrics.smallPlanet;
+		float minX = (col - 0.5f)*chunkSize, minY = (row - 0.5f)*chunkSize;
+
+		ArrayList<Planet> planets = new ArrayList<Planet>();
+
+		// start planet below the taxi, like in galaxy I
+		if (col == 0 && row == 0) {
+			Planet start = new Planet(0, metrics.largePlanet*0.75f, metrics.largePlanet*0.5f);
+			chunk.bodies.add(start);
+			planets.add(start);
+		}
+
+		// up to one sun and a few planets, sizes as in galaxy I
+		int sunCount = rand.nextFloat() < 0.6f ? 1 : 0;
+		int planetCount = 2 + rand.nextInt(3);
+		for (int i = 0; i < sunCount + planetCount; i++) {
+			boolean isSun = i < sunCount;
+			float radius = isSun
+					? metrics.mediumPlanet*0.9f + rand.nextFloat()*(metrics.largePlanet*0.75f - metrics.mediumPlanet*0.9f)
+					: metrics.smallPlanet*1.1f + rand.nextFloat()*(metrics.largePlanet*0.9f - metrics.smallPlanet*1.1f);
+
+			for (int attempt = 0; attempt < PLACEMENT_ATTEMPTS; attempt++) {
+				float margin = radius + gap;
+				float x = minX + margin + rand.nextFloat()*(chunkSize - 2*margin);
+				float y = minY + margin + rand.nextFloat()*(chunkSize - 2*margin);
+
+				if (isFree(chunk, x, y, radius, gap)) {
+					CelestialBody body = isSun ? new Sun(x, y, radius) : new Planet(x, y, radius);
+					chunk.bodies.add(body);
+					if (!isSun) {
+						planets.add((Planet) body);
+					}
+					break;
+				}
+			}
+		}
+
+		// passengers travel within the chunk, more of them wait on larger planets
+		for (Planet p : planets) {
+			int passengers = 1 + (p.getRadius() >= metrics.largePlanet*0.5f ? rand.nextInt(3) : rand.nextInt(2));
+			for (int i = 0; i < passengers && planets.size() > 1; i++) {
+				p.addWaitingPassenger(planets.get(rand.nextInt(planets.size())), rand);
+			}
+		}
+
+		return chunk;
+	}
+
+	/**
+	 * @return whether a body at (x, y) with the given radius keeps the gap to all bodies
+	 * in the chunk and is clear of the taxi start
+	 */
+	private boolean isFree(Chunk chunk, float x, float y, float radius, float gap) {
+		if (x*x + y*y < (radius + metrics.uniformDist)*(radius + metrics.uniformDist)) {
+			return false;
+		}
+		for (CelestialBody c : chunk.bodies) {
+			float dx = x - c.getX(), dy = y - c.getY(), min = radius + c.getRadius() + gap;
+			if (dx*dx + dy*dy < min*min) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Spread level seed and chunk position over all bits, such that neighbouring chunks get unrelated seeds
+	 */
+	private long chunkSeed(int col, int row) {
+		long z = seed + (((long) col << 32) ^ (row & 0xFFFFFFFFL))*0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30))*0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27))*0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Wait for a snapshot, chunk generation does not throw
+	 */
+	private static Snapshot await(Future<Snapshot> future) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.ikarus.solartaxi.level;
+
+/**
+ * Precomputed gravity vectors of all celestial bodies in a level, sampled on a
+ * regular grid and bilinearly interpolated between grid nodes. Only bodies that don't
+ * move are sampled, so gravity only depends on position and a lookup costs the same
+ * no matter how many bodies overlap. Cells that a body on an orbit can reach have to
+ * be calculated exactly.<br>
+ * Vectors are stored without the taxi gravity factor, see
+ * {@link com.ikarus.solartaxi.Spaceship#setGravityFactor(float)}.<br>
+ * Close to a surface the 1/(distance - radius) falloff is too steep to interpolate
+ * and at the edge of an area of influence gravity jumps to zero, cells containing
+ * either are flagged and have to be calculated exactly.
+ *
+ * @author Nikolaus Leopold
+ */
+public class GravityField {
+
+	// cells closer than this many cell sizes to a surface are calculated exactly
+	private final static float NEAR_SURFACE_CELLS = 4;
+
+	// grid origin and size
+	private float minX, minY, cellSize;
+	private int cols, rows;
+
+	// gravity vector per grid node, (cols+1)*(rows+1) nodes, row major
+	private float[] gravityX, gravityY;
+
+	// cells that can't be interpolated, cols*rows cells, row major
+	private boolean[] exact;
+
+	/**
+	 * Constructor, samples the field. This is expensive and should not be done on the game thread.
+	 * @param bodies packed table of all bodies in the level
+	 * @param spatialIndex index over the same bodies, used to find the bodies affecting a node
+	 * @param cellSize distance between grid nodes in world units
+	 */
+	public GravityField(BodyTable bodies, SpatialIndex spatialIndex, float cellSize) {
+
+		this.cellSize = cellSize;
+
+		// bounding box of all areas the influence circles can reach, there is no gravity outside
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+		minX = minY = Float.POSITIVE_INFINITY;
+		for (int i = 0; i < bodies.size(); i++) {
+			float r = bodies.sweepOuter[i];
+			minX = Math.min(minX, bodies.sweepX[i] - r);
+			minY = Math.min(minY, bodies.sweepY[i] - r);
+			maxX = Math.max(maxX, bodies.sweepX[i] + r);
+			maxY = Math.max(maxY, bodies.sweepY[i] + r);
+		}
+
+		if (bodies.size() == 0) {
+			minX = minY = maxX = maxY = 0;
+		}
+
+		cols = (int) Math.ceil((maxX - minX)/cellSize);
+		rows = (int) Math.ceil((maxY - minY)/cellSize);
+
+		// sample gravity at every grid node
+		gravityX = new float[(cols + 1)*(rows + 1)];
+		gravityY = new float[(cols + 1)*(rows + 1)];
+		for (int row = 0; row <= rows; row++) {
+			for (int col = 0; col <= cols; col++) {
+				float x = minX + col*cellSize, y = minY + row*cellSize;
+				int ind = row*(cols + 1) + col;
+
+				// runs in the background, positions of moving bodies must not be touched
+				for (int i : spatialIndex.cell(x, y)) {
+					if (bodies.isMoving(i)) {
+						continue;
+					}
+
+					float dx = x - bodies.x[i], dy = y - bodies.y[i];
+					float distance = (float) Math.sqrt(dx*dx + dy*dy);
+
+					if (distance >= bodies.influence[i] || distance <= bodies.radius[i]) {
+						continue;
+					}
+
+					// pull towards body center, same falloff as the taxi uses
+					float grav = bodies.gravity[i] / (distance - bodies.radius[i]);
+					gravityX[ind] -= dx/distance * grav;
+					gravityY[ind] -= dy/distance * grav;
+				}
+			}
+		}
+
+		// flag cells near a surface or on the edge of an area of influence, and all cells
+		// a moving body can reach. only the cells within reach of each body are visited
+		float halfDiagonal = cellSize * (float) Math.sqrt(2) / 2;
+		exact = new boolean[cols*rows];
+		for (int i = 0; i < bodies.size(); i++) {
+			float reach = bodies.sweepOuter[i] + halfDiagonal;
+			int col0 = Math.max(0, (int) Math.floor((bodies.sweepX[i] - reach - minX)/cellSize));
+			int col1 = Math.min(cols - 1, (int) Math.floor((bodies.sweepX[i] + reach - minX)/cellSize));
+			int row0 = Math.max(0, (int) Math.floor((bodies.sweepY[i] - reach - minY)/cellSize));
+			int row1 = Math.min(rows - 1, (int) Math.floor((bodies.sweepY[i] + reach - minY)/cellSize));
+
+			for (int row = row0; row <= row1; row++) {
+				for (int col = col0; col <= col1; col++) {
+					float x = minX + (col + 0.5f)*cellSize, y = minY + (row + 0.5f)*cellSize;
+					float dx = x - bodies.sweepX[i], dy = y - bodies.sweepY[i];
+					float distance = (float) Math.sqrt(dx*dx + dy*dy);
+
+					if (bodies.isMoving(i)) {
+						if (distance + halfDiagonal > bodies.sweepInner[i] && distance - halfDiagonal < bodies.sweepOuter[i]) {
+							exact[row*cols + col] = true;
+						}
+					}
+					else if (distance - bodies.radius[i] - halfDiagonal < NEAR_SURFACE_CELLS*cellSize
+							|| Math.abs(distance - bodies.influence[i]) < halfDiagonal) {
+						exact[row*cols + col] = true;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Look up the interpolated gravity vector at a position. Does not allocate.
+	 * @param x world x-coordinate
+	 * @param y world y-coordinate
+	 * @param out array of at least 2 floats the gravity vector (x, y) is written to
+	 * @return false if the position lies in a cell that has to be calculated exactly,
+	 * out is not written in this case
+	 */
+	public boolean sample(float x, float y, float[] out) {
+
+		float fx = (x - minX)/cellSize, fy = (y - minY)/cellSize;
+		int col = (int) Math.floor(fx), row = (int) Math.floor(fy);
+
+		// outside of all areas of influence
+		if (col < 0 || row < 0 || col >= cols || row >= rows) {
+			out[0] = 0;
+			out[1] = 0;
+			return true;
+		}
+
+		if (exact[row*cols + col]) {
+			return false;
+		}
+
+		// bilinear interpolation between the 4 surrounding nodes
+		float tx = fx - col, ty = fy - row;
+		int n00 = row*(cols + 1) + col, n10 = n00 + 1, n01 = n00 + cols + 1, n11 = n01 + 1;
+
+		out[0] = (gravityX[n00]*(1 - tx) + gravityX[n10]*tx)*(1 - ty) + (gravityX[n01]*(1 - tx) + gravityX[n11]*tx)*ty;
+		out[1] = (gravityY[n00]*(1 - tx) + gravityY[n10]*tx)*(1 - ty) + (gravityY[n01]*(1 - tx) + gravityY[n11]*tx)*ty;
+		return true;
+	}
+
+	/**
+	 * @return distance between grid nodes in world units
+	 */
+	public float getCellSize() {
+		return cellSize;
+	}
+}
@@ -2,7 +2,9 @@ package com.ikarus.solartaxi.level;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Random;
 
+import com.ikarus.solartaxi.AllocationCheck;
 import com.ikarus.solartaxi.celestialbodies.CelestialBody;
 import com.ikarus.solartaxi.celestialbodies.Planet;
 
@@ -19,7 +21,24 @@ import com.ikarus.solartaxi.celestialbodies.Planet;
 public abstract class Level {
 
 	protected ArrayList<CelestialBody> celestialBodies = new ArrayList<CelestialBody>();
-	protected float[] stars;
+
+	// seed of the background star field, which is drawn and not part of the level
+	protected final long starSeed;
+
+	// sizes the level is defined in
+	protected final LevelMetrics metrics;
+
+	// source of all randomness in the level definition, levels with the same seed are equal
+	protected final Random random;
+
+	// packed body data and grid of bodies by area of influence, used in the taxi update
+	protected BodyTable bodyTable;
+	protected SpatialIndex spatialIndex;
+
+	// optional precomputed gravity, null until built, and the distance between its samples, 0 for none
+	protected volatile GravityField gravityField;
+	private float gravityFieldResolution;
+	private Thread gravityFieldBuilder;
 
 	// adjust the world boundary such that no planets or suns are visible 
 	// when spaceship reaches the edge, in order to have less noticable warping
@@ -45,8 +64,14 @@ public abstract class Level {
 	 * CONSTRUCTOR
 	 * NOTE: levels should be defined in subclass constructors (hardcoded)
 	 * by modifying the protected class fields
+	 * @param metrics sizes the level is defined in
+	 * @param seed seed for passenger distribution and stars
 	 */
-	public Level() {
+	public Level(LevelMetrics metrics, long seed) {
+		
+		this.metrics = metrics;
+		this.random = new Random(seed);
+		this.starSeed = seed;
 		
 		// taxi start position must be within world boundary
 		taxiStartPosX = 0;
@@ -54,44 +79,100 @@ public abstract class Level {
 
 	}
 	
-	protected void setStars() {
-		// stars creation
-		ArrayList<Float> tempList = new ArrayList<Float>();  
-
-		float x = worldMinX-200, y;
-
-		while (x < worldMaxX + 200) {
-			y = worldMinY-200;
-			while (y < worldMaxY + 200) {
-				tempList.add(x);
-				tempList.add(y);
-
-				// use these to make bigger stars, uses more computational power 				
-//				tempList.add(x+1);
-//				tempList.add(y);
-//				
-//				tempList.add(x-1);
-//				tempList.add(y);
-//				
-//				tempList.add(x);
-//				tempList.add(y-1);
-//				
-//				tempList.add(x);
-//				tempList.add(y+1);
-
-				y += Math.random()*210 + 40;
-			}
-			x += Math.random()*170 + 20;
+	/**
+	 * Builds the packed body table and the spatial index over all celestial bodies.
+	 * NOTE: has to be called after all celestial bodies are added and their orbits are set
+	 */
+	protected void setSpatialIndex() {
+		bodyTable = new BodyTable(celestialBodies);
+		spatialIndex = new SpatialIndex(bodyTable);
+	}
+
+	/**
+	 * Gives the level a precomputed gravity field, it is built once the level is played
+	 * ({@link #startGravityField()} or {@link #awaitGravityField()}), until then gravity is calculated exactly.
+	 * NOTE: has to be called after setSpatialIndex()
+	 * @param resolution distance between gravity samples in world units
+	 */
+	protected void setGravityField(float resolution) {
+		gravityFieldResolution = resolution;
+	}
+
+	/**
+	 * Starts building the gravity field in the background, does nothing if it is built or
+	 * being built already, or the level has none. Until it is done gravity is calculated exactly.
+	 */
+	public void startGravityField() {
+		if (gravityFieldResolution == 0 || gravityFieldBuilder != null || gravityField != null) {
+			return;
 		}
+		AllocationCheck.allowAllocation();
+		final BodyTable bodies = bodyTable;
+		final SpatialIndex index = spatialIndex;
+		final float resolution = gravityFieldResolution;
 
-		Object[] tempArr = tempList.toArray();
-		stars = new float[tempArr.length];
+		gravityFieldBuilder = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				gravityField = new GravityField(bodies, index, resolution);
+			}
+		}, "GravityField");
+		gravityFieldBuilder.setPriority(Thread.MIN_PRIORITY);
+		gravityFieldBuilder.setDaemon(true);
+		gravityFieldBuilder.start();
+	}
 
-		for (int i=0;i<stars.length;i++) {
-			stars[i] = (Float) tempArr[i];
+	/**
+	 * Blocks until the gravity field is built, returns immediately if the level has none.
+	 * If it is not being built in the background yet it is built on the calling thread,
+	 * so headless runs don't start a thread per level.
+	 * Needed for reproducible runs, since taxi movement differs slightly with the field.
+	 */
+	public void awaitGravityField() {
+		if (gravityFieldResolution != 0 && gravityFieldBuilder == null && gravityField == null) {
+			gravityField = new GravityField(bodyTable, spatialIndex, gravityFieldResolution);
+			return;
+		}
+
+		boolean interrupted = false;
+		while (gravityFieldBuilder != null && gravityFieldBuilder.isAlive()) {
+			try {
+				gravityFieldBuilder.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
+	/**
+	 * Called every step with the taxi position, levels that load their content while
+	 * the taxi moves do it here. Fixed levels have nothing to do.
+	 * @param x taxi x-coordinate
+	 * @param y taxi y-coordinate
+	 * @param wait whether to block until everything near the taxi is loaded, for reproducible runs
+	 */
+	public void track(float x, float y, boolean wait) {
+	}
+
+	/**
+	 * Set the time bodies on an orbit are moved to when they are looked up
+	 * in the spatial index, see {@link BodyTable#setTime(double)}
+	 * @param time time since the start of the level in seconds
+	 */
+	public void setTime(double time) {
+		bodyTable.setTime(time);
+	}
+
+	/**
+	 * @return time since the start of the level in seconds
+	 */
+	public double getTime() {
+		return bodyTable.getTime();
+	}
+
 	/**
 	 * @return shallow copy of list of all celestial bodies (planets & suns)
 	 * this is ok since we only load once at level start
@@ -100,6 +181,34 @@ public abstract class Level {
 		return celestialBodies;
 	}
 
+	/**
+	 * @return packed data of all celestial bodies, indexed like the spatial index
+	 */
+	public BodyTable getBodyTable() {
+		return bodyTable;
+	}
+
+	/**
+	 * @return grid of celestial bodies by their area of influence
+	 */
+	public SpatialIndex getSpatialIndex() {
+		return spatialIndex;
+	}
+
+	/**
+	 * @return precomputed gravity field, null if not (yet) available
+	 */
+	public GravityField getGravityField() {
+		return gravityField;
+	}
+
+	/**
+	 * @return sizes the level is defined in
+	 */
+	public LevelMetrics getMetrics() {
+		return metrics;
+	}
+
 	/**
 	 * @return world boundary min x
 	 */
@@ -165,14 +274,14 @@ public abstract class Level {
 	}
 
 	/**
-	 * @return a float array listing x,y coordinates used for drawing stars
+	 * @return seed of the background star field, levels with the same seed have the same stars
 	 */
-	public float[] getStars() {
-		return stars;
+	public long getStarSeed() {
+		return starSeed;
 	}
 	
 	protected Planet getRandomPlanet(Planet[] planets) {
-		int ind = (int) (Math.random()*(planets.length-1));
+		int ind = (int) (random.nextFloat()*(planets.length-1));
 		return planets[ind];
 	}
 	
@@ -1,8 +1,5 @@
 package com.ikarus.solartaxi.level;
 
-import android.view.View;
-
-import com.ikarus.solartaxi.R;
 import com.ikarus.solartaxi.celestialbodies.Planet;
 import com.ikarus.solartaxi.celestialbodies.Sun;
 
@@ -14,38 +11,42 @@ import com.ikarus.solartaxi.celestialbodies.Sun;
  */
 public final class Level1 extends Level {
 
+	// seed of the level after this one, which is only built when it is played
+	private final long nextLevelSeed;
+
 	/**
 	 * CONSTRUCTOR
 	 * this is just a storage class
 	 * for now, the whole level is defined here, hardcoded!
 	 * storage variables have protected access in superclass
+	 * @param metrics sizes the level is defined in
+	 * @param seed seed for passenger distribution and stars
 	 */
-	public Level1(View view) {
+	public Level1(LevelMetrics metrics, long seed) {
+
+		super(metrics, seed);
 
 		// name of this level, displayed at the beginning
 		levelName = "GALAXY I";
 
 		// adjust these such that no planets or suns are visible 
 		// as spaceship reaches the edge to have nicer warping
-		worldMinX = -view.getResources().getDimension(R.dimen.level_1_boundary);
-		worldMinY = -view.getResources().getDimension(R.dimen.level_1_boundary);
-		worldMaxX = view.getResources().getDimension(R.dimen.level_1_boundary);
-		worldMaxY = view.getResources().getDimension(R.dimen.level_1_boundary);
-
-		// setStars => has to be set after world boundaries are set
-		setStars();
+		worldMinX = -metrics.level1Boundary;
+		worldMinY = -metrics.level1Boundary;
+		worldMaxX = metrics.level1Boundary;
+		worldMaxY = metrics.level1Boundary;
 
 		// could be used for goal based on max credit in level
 		int creditSum = 0;
 	
 		// planet radi and distance in dp, uniform dist equals ~1000p on Samsung Galaxy S3 mini
-		float s_radi = view.getResources().getDimension(R.dimen.s_Planet),
-				m_radi = view.getResources().getDimension(R.dimen.m_Planet),
-				l_radi = view.getResources().getDimension(R.dimen.l_Planet),
-				s_dist = view.getResources().getDimension(R.dimen.uniform_dist);
+		float s_radi = metrics.smallPlanet,
+				m_radi = metrics.mediumPlanet,
+				l_radi = metrics.largePlanet,
+				s_dist = metrics.uniformDist;
 
-		// the level to be played after this one, if null, the game will end (victory)
-		nextLevel = new Level2(view);
+		// the level to be played after this one, drawn first so the rest of the level stays the same
+		nextLevelSeed = random.nextLong();
 
 		// taxi orientation must be in range [0,2pi[
 		taxiStartOrientation = 3*(float)Math.PI/2;
@@ -80,9 +81,9 @@ public final class Level1 extends Level {
 
 		// randomize passengers on planets 
 		for (Planet p : planets) {
-			int passengers = p.getRadius() >= l_radi ? (int) (Math.random()*4 + 2) : 
-				(p.getRadius() >= m_radi ? (int) (Math.random()*3+1) :
-					(p.getRadius() >= s_radi ? (int) (Math.random()*2+1) :(int) (Math.random()*2)));
+			int passengers = p.getRadius() >= l_radi ? (int) (random.nextFloat()*4 + 2) : 
+				(p.getRadius() >= m_radi ? (int) (random.nextFloat()*3+1) :
+					(p.getRadius() >= s_radi ? (int) (random.nextFloat()*2+1) :(int) (random.nextFloat()*2)));
 
 			// first planet set manually
 			if (p.equals((Object) planet0)) {
@@ -91,15 +92,15 @@ public final class Level1 extends Level {
 			
 			// randomize target planets of passengers
 			for (int i=0; i<passengers; i++) {
-				p.addWaitingPassenger(getRandomPlanet(planets));
+				p.addWaitingPassenger(getRandomPlanet(planets), random);
 			}
 			creditSum += p.getPassengerCredits();
 			celestialBodies.add(p);
 		}
 
-		planet0.addWaitingPassenger(planet2);
-		planet0.addWaitingPassenger(planet14);
-		planet0.addWaitingPassenger(planet1);
+		planet0.addWaitingPassenger(planet2, random);
+		planet0.addWaitingPassenger(planet14, random);
+		planet0.addWaitingPassenger(planet1, random);
 
 		celestialBodies.add(planet0);
 		creditSum += planet0.getPassengerCredits();
@@ -107,6 +108,21 @@ public final class Level1 extends Level {
 		// the amount of credits required to finish this level
 		creditsRequired =  50000; //(int) (creditSum/100*50/1000) * 1000;
 
+		// setSpatialIndex => has to be set after all celestial bodies are added
+		setSpatialIndex();
+		setGravityField(s_radi*0.5f);
+
+	}
+
+	/**
+	 * Builds level 2 on the first call, so games that don't get there don't build it
+	 */
+	@Override
+	public Level getNextLevel() {
+		if (nextLevel == null) {
+			nextLevel = new Level2(metrics, nextLevelSeed);
+		}
+		return nextLevel;
 	}
 
 }
\ No newline at end of file
@@ -1,8 +1,5 @@
 package com.ikarus.solartaxi.level;
 
-import android.view.View;
-
-import com.ikarus.solartaxi.R;
 import com.ikarus.solartaxi.celestialbodies.Planet;
 import com.ikarus.solartaxi.celestialbodies.Sun;
 
@@ -19,8 +16,12 @@ public final class Level2 extends Level {
 	 * this is just a storage class
 	 * for now, the whole level is defined here, hardcoded!
 	 * storage variables have protected access in superclass
+	 * @param metrics sizes the level is defined in
+	 * @param seed seed for passenger distribution and stars
 	 */
-	public Level2(View view) {
+	public Level2(LevelMetrics metrics, long seed) {
+
+		super(metrics, seed);
 
 		// name of this level, displayed at the beginning
 		levelName = "GALAXY II";
@@ -32,9 +33,6 @@ public final class Level2 extends Level {
 		worldMaxX = 8000.0f;
 		worldMaxY = 8000.0f;		
 		
-		// setStars => has to be set after world boundaries are set
-		setStars();
-		
 		// the amount of credits required to finish this level
 		creditsRequired = 20000;
 
@@ -44,44 +42,55 @@ public final class Level2 extends Level {
 		// taxi orientation must be in range [0,2pi[
 		taxiStartOrientation = (float) (Math.PI / 3.0f);
 		
-		celestialBodies.add(new Planet(500, -200, view.getResources().getDimension(R.dimen.m_Planet)));
-		celestialBodies.add(new Planet(0, -700, view.getResources().getDimension(R.dimen.s_Planet)));
-		celestialBodies.add(new Planet(-1000, 300, view.getResources().getDimension(R.dimen.l_Planet)));
-		celestialBodies.add(new Sun(0, -1900, view.getResources().getDimension(R.dimen.l_Planet)));
-		celestialBodies.add(new Sun(-300, 800, view.getResources().getDimension(R.dimen.m_Planet)));
-		celestialBodies.add(new Sun(-500, -300, view.getResources().getDimension(R.dimen.s_Planet)));
-		celestialBodies.add(new Sun(-500, -300, view.getResources().getDimension(R.dimen.s_Planet)));
-		celestialBodies.add(new Sun(6000, 4800, view.getResources().getDimension(R.dimen.l_Planet)));
-		celestialBodies.add(new Sun(3000, -4000, view.getResources().getDimension(R.dimen.s_Planet)));
+		celestialBodies.add(new Planet(500, -200, metrics.mediumPlanet));
+		celestialBodies.add(new Planet(0, -700, metrics.smallPlanet));
+		celestialBodies.add(new Planet(-1000, 300, metrics.largePlanet));
+		celestialBodies.add(new Sun(0, -1900, metrics.largePlanet));
+		celestialBodies.add(new Sun(-300, 800, metrics.mediumPlanet));
+		celestialBodies.add(new Sun(-500, -300, metrics.smallPlanet));
+		celestialBodies.add(new Sun(-500, -300, metrics.smallPlanet));
+		Sun sun0 = new Sun(6000, 4800, metrics.largePlanet);
+		Sun sun1 = new Sun(3000, -4000, metrics.smallPlanet);
+		celestialBodies.add(sun0);
+		celestialBodies.add(sun1);
 
-		Planet planet0 = new Planet(0, 400, view.getResources().getDimension(R.dimen.m_Planet));
-		Planet planet1 = new Planet(1000, -400, view.getResources().getDimension(R.dimen.s_Planet));
-		Planet planet2 = new Planet(2200, -800, view.getResources().getDimension(R.dimen.s_Planet));
-		Planet planet3 = new Planet(-3000, -4000, view.getResources().getDimension(R.dimen.l_Planet));
-		Planet planet4 = new Planet(7000, 5000, view.getResources().getDimension(R.dimen.m_Planet));
-		Planet planet5 = new Planet(5000, -6000, view.getResources().getDimension(R.dimen.l_Planet));
-		planet0.addWaitingPassenger(planet1);
-		planet0.addWaitingPassenger(planet2);
-		planet0.addWaitingPassenger(planet1);
-		planet1.addWaitingPassenger(planet1);
-		planet1.addWaitingPassenger(planet2);
-		planet1.addWaitingPassenger(planet4);
-		planet2.addWaitingPassenger(planet3);
-		planet2.addWaitingPassenger(planet0);
-		planet3.addWaitingPassenger(planet4);
-		planet3.addWaitingPassenger(planet5);
-		planet3.addWaitingPassenger(planet0);
-		planet4.addWaitingPassenger(planet3);
-		planet4.addWaitingPassenger(planet2);
-		planet4.addWaitingPassenger(planet1);
-		planet5.addWaitingPassenger(planet3);
-		planet5.addWaitingPassenger(planet1);
+		Planet planet0 = new Planet(0, 400, metrics.mediumPlanet);
+		Planet planet1 = new Planet(1000, -400, metrics.smallPlanet);
+		Planet planet2 = new Planet(2200, -800, metrics.smallPlanet);
+		Planet planet3 = new Planet(-3000, -4000, metrics.largePlanet);
+		Planet planet4 = new Planet(7000, 5000, metrics.mediumPlanet);
+		Planet planet5 = new Planet(5000, -6000, metrics.largePlanet);
+
+		// orbits, period in seconds
+		planet4.setOrbit(sun0, 90, 0.3f);
+		planet5.setOrbit(sun1, 240, 0);
+
+		planet0.addWaitingPassenger(planet1, random);
+		planet0.addWaitingPassenger(planet2, random);
+		planet0.addWaitingPassenger(planet1, random);
+		planet1.addWaitingPassenger(planet1, random);
+		planet1.addWaitingPassenger(planet2, random);
+		planet1.addWaitingPassenger(planet4, random);
+		planet2.addWaitingPassenger(planet3, random);
+		planet2.addWaitingPassenger(planet0, random);
+		planet3.addWaitingPassenger(planet4, random);
+		planet3.addWaitingPassenger(planet5, random);
+		planet3.addWaitingPassenger(planet0, random);
+		planet4.addWaitingPassenger(planet3, random);
+		planet4.addWaitingPassenger(planet2, random);
+		planet4.addWaitingPassenger(planet1, random);
+		planet5.addWaitingPassenger(planet3, random);
+		planet5.addWaitingPassenger(planet1, random);
 		celestialBodies.add(planet0);
 		celestialBodies.add(planet1);
 		celestialBodies.add(planet2);
 		celestialBodies.add(planet3);
 		celestialBodies.add(planet4);
 		celestialBodies.add(planet5);
+
+		// setSpatialIndex => has to be set after all celestial bodies are added and orbits are set
+		setSpatialIndex();
+		setGravityField(metrics.smallPlanet*0.5f);
 	}
 
 }
\ No newline at end of file
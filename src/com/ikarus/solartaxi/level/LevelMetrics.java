@@ -0,0 +1,57 @@
+package com.ikarus.solartaxi.level;
+
+/**
+ * Screen density dependent sizes levels and the taxi are defined in, in pixels.<br>
+ * On the device these are read from res/values/dimen.xml, levels only get them through
+ * this class so they can also be built without Android resources.
+ *
+ * @author Nikolaus Leopold
+ */
+public class LevelMetrics {
+
+	// planet radii
+	public final float smallPlanet, mediumPlanet, largePlanet;
+
+	// distance unit between bodies in level 1
+	public final float uniformDist;
+
+	// level 1 world boundary
+	public final float level1Boundary;
+
+	// taxi gravity factor
+	public final float gravityFactor;
+
+	// thrust per thruster of a single input
+	public final float taxiThrust;
+
+	/**
+	 * Constructor
+	 * @param smallPlanet R.dimen.s_Planet
+	 * @param mediumPlanet R.dimen.m_Planet
+	 * @param largePlanet R.dimen.l_Planet
+	 * @param uniformDist R.dimen.uniform_dist
+	 * @param level1Boundary R.dimen.level_1_boundary
+	 * @param gravityFactor R.dimen.gravity_factor
+	 * @param taxiThrust R.dimen.taxi_speed
+	 */
+	public LevelMetrics(float smallPlanet, float mediumPlanet, float largePlanet,
+			float uniformDist, float level1Boundary, float gravityFactor, float taxiThrust) {
+		this.smallPlanet = smallPlanet;
+		this.mediumPlanet = mediumPlanet;
+		this.largePlanet = largePlanet;
+		this.uniformDist = uniformDist;
+		this.level1Boundary = level1Boundary;
+		this.gravityFactor = gravityFactor;
+		this.taxiThrust = taxiThrust;
+	}
+
+	/**
+	 * Metrics without Android resources, e.g. for running the simulation on a desktop JVM.
+	 * NOTE: dp values have to be kept in sync with res/values/dimen.xml
+	 * @param density pixels per dp
+	 * @return metrics as on a device with the given density
+	 */
+	public static LevelMetrics forDensity(float density) {
+		return new LevelMetrics(80*density, 100*density, 300*density, 670*density, 4100*density, 87*density, 0.65f*density);
+	}
+}
@@ -0,0 +1,248 @@
+package com.ikarus.solartaxi.level;
+
+import java.util.ArrayList;
+
+/**
+ * Uniform grid over the areas of influence (gravity and charging range) of the
+ * celestial bodies in a level. Each cell lists the {@link BodyTable} index of every
+ * body whose influence circle overlaps the cell, so a lookup for a point only
+ * returns the bodies that can possibly affect it.<br>
+ * Bodies on an orbit are listed in every cell their area of influence can reach
+ * on the whole orbit, lookups move the returned bodies to the current time of the
+ * {@link BodyTable}. The grid is built once when the level is defined.
+ *
+ * @author Nikolaus Leopold
+ */
+public class SpatialIndex {
+
+	// upper limit for the number of cells, cell size is increased if exceeded
+	private final static int MAX_CELLS = 64*64;
+
+	private final static int[] EMPTY_CELL = new int[0];
+
+	// grid origin and size
+	private float minX, minY, cellSize;
+	private int cols, rows;
+
+	// indices of bodies overlapping each cell, row major
+	private int[][] cells;
+
+	// whether a cell lists a body on an orbit, only those have to be updated on lookup
+	private boolean[] moving;
+
+	private final BodyTable bodies;
+
+	// query stamp per body, used to report each body only once in area queries
+	private int[] visited;
+	private int queryStamp;
+
+	/**
+	 * Constructor, builds the grid. Cell size is chosen as the average influence radius
+	 * of all bodies, such that a body overlaps only a few cells.
+	 * @param bodies packed table of all bodies in the level
+	 */
+	public SpatialIndex(BodyTable bodies) {
+
+		this.bodies = bodies;
+		visited = new int[bodies.size()];
+
+		if (bodies.size() == 0) {
+			cols = rows = 0;
+			cells = new int[0][];
+			moving = new boolean[0];
+			cellSize = 1;
+			return;
+		}
+
+		// bounding box of all areas the influence circles can reach
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, sumInfluence = 0;
+		minX = minY = Float.POSITIVE_INFINITY;
+		for (int i = 0; i < bodies.size(); i++) {
+			float r = bodies.sweepOuter[i];
+			minX = Math.min(minX, bodies.sweepX[i] - r);
+			minY = Math.min(minY, bodies.sweepY[i] - r);
+			maxX = Math.max(maxX, bodies.sweepX[i] + r);
+			maxY = Math.max(maxY, bodies.sweepY[i] + r);
+			sumInfluence += bodies.influence[i];
+		}
+
+		cellSize = sumInfluence / bodies.size();
+		while (Math.ceil((maxX - minX)/cellSize) * Math.ceil((maxY - minY)/cellSize) > MAX_CELLS) {
+			cellSize *= 2;
+		}
+		cols = (int) Math.ceil((maxX - minX)/cellSize);
+		rows = (int) Math.ceil((maxY - minY)/cellSize);
+
+		// collect overlapping bodies per cell
+		ArrayList<ArrayList<Integer>> tempCells = new ArrayList<ArrayList<Integer>>(cols*rows);
+		for (int i = 0; i < cols*rows; i++) {
+			tempCells.add(null);
+		}
+
+		for (int i = 0; i < bodies.size(); i++) {
+			float cx = bodies.sweepX[i], cy = bodies.sweepY[i], r = bodies.sweepOuter[i];
+			int col0 = clampCol(cx - r), col1 = clampCol(cx + r);
+			int row0 = clampRow(cy - r), row1 = clampRow(cy + r);
+
+			for (int row = row0; row <= row1; row++) {
+				for (int col = col0; col <= col1; col++) {
+					if (!ringOverlapsCell(cx, cy, bodies.sweepInner[i], r, col, row)) {
+						continue;
+					}
+					int ind = row*cols + col;
+					if (tempCells.get(ind) == null) {
+						tempCells.set(ind, new ArrayList<Integer>(4));
+					}
+					tempCells.get(ind).add(i);
+				}
+			}
+		}
+
+		// pack into arrays, iterating arrays is cheaper than lists in the update loop
+		cells = new int[cols*rows][];
+		moving = new boolean[cols*rows];
+		for (int i = 0; i < cells.length; i++) {
+			ArrayList<Integer> cell = tempCells.get(i);
+			if (cell == null) {
+				cells[i] = EMPTY_CELL;
+				continue;
+			}
+			cells[i] = new int[cell.size()];
+			for (int j = 0; j < cells[i].length; j++) {
+				cells[i][j] = cell.get(j);
+				moving[i] |= bodies.isMoving(cells[i][j]);
+			}
+		}
+	}
+
+	/**
+	 * Same grid for a copy of the body table, lookups move the bodies of the copy.
+	 * The cells are shared, nothing is built again.
+	 * @param index index of the level
+	 * @param bodies copy of the body table of the index, see {@link BodyTable#BodyTable(BodyTable)}
+	 */
+	public SpatialIndex(SpatialIndex index, BodyTable bodies) {
+		this.bodies = bodies;
+		visited = new int[bodies.size()];
+		minX = index.minX;
+		minY = index.minY;
+		cellSize = index.cellSize;
+		cols = index.cols;
+		rows = index.rows;
+		cells = index.cells;
+		moving = index.moving;
+	}
+
+	/**
+	 * Does not allocate, the returned array must not be modified. Moves the returned bodies
+	 * to the current time of the body table, not thread safe.
+	 * @param x world x-coordinate
+	 * @param y world y-coordinate
+	 * @return {@link BodyTable} indices of all bodies whose area of influence can overlap the cell containing (x, y)
+	 */
+	public int[] query(float x, float y) {
+		int ind = cellIndex(x, y);
+		if (ind == -1) {
+			return EMPTY_CELL;
+		}
+
+		if (moving[ind]) {
+			for (int i : cells[ind]) {
+				bodies.update(i);
+			}
+		}
+		return cells[ind];
+	}
+
+	/**
+	 * Same as {@link #query(float, float)} without moving bodies, can be used from other threads
+	 * if only bodies that don't move are read.
+	 */
+	int[] cell(float x, float y) {
+		int ind = cellIndex(x, y);
+		return ind == -1 ? EMPTY_CELL : cells[ind];
+	}
+
+	/**
+	 * Looks up all bodies whose area of influence overlaps a cell touched by the bounding box
+	 * of a segment, e.g. the displacement of a tick. Each body is reported once and moved
+	 * to the current time of the body table.<br>
+	 * Does not allocate, not thread safe.
+	 * @param x0 segment start x
+	 * @param y0 segment start y
+	 * @param x1 segment end x
+	 * @param y1 segment end y
+	 * @param out receives the {@link BodyTable} indices, must hold at least as many entries as there are bodies
+	 * @return number of indices written to out
+	 */
+	public int query(float x0, float y0, float x1, float y1, int[] out) {
+		if (cols == 0) {
+			return 0;
+		}
+
+		int col0 = clampCol(Math.min(x0, x1)), col1 = clampCol(Math.max(x0, x1));
+		int row0 = clampRow(Math.min(y0, y1)), row1 = clampRow(Math.max(y0, y1));
+		int count = 0;
+		queryStamp++;
+
+		for (int row = row0; row <= row1; row++) {
+			for (int col = col0; col <= col1; col++) {
+				for (int i : cells[row*cols + col]) {
+					if (visited[i] != queryStamp) {
+						visited[i] = queryStamp;
+						bodies.update(i);
+						out[count++] = i;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return edge length of a grid cell in world units
+	 */
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * @return row major index of the cell containing (x, y), -1 if outside of the grid
+	 */
+	private int cellIndex(float x, float y) {
+		int col = (int) Math.floor((x - minX)/cellSize);
+		int row = (int) Math.floor((y - minY)/cellSize);
+
+		if (col < 0 || row < 0 || col >= cols || row >= rows) {
+			return -1;
+		}
+		return row*cols + col;
+	}
+
+	private int clampCol(float x) {
+		return Math.max(0, Math.min(cols - 1, (int) Math.floor((x - minX)/cellSize)));
+	}
+
+	private int clampRow(float y) {
+		return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY)/cellSize)));
+	}
+
+	/**
+	 * @return whether ring with center (cx, cy), inner radius r0 and outer radius r1 overlaps grid cell (col, row),
+	 * a circle if r0 is 0
+	 */
+	private boolean ringOverlapsCell(float cx, float cy, float r0, float r1, int col, int row) {
+		float left = minX + col*cellSize, top = minY + row*cellSize;
+
+		// closest point of the cell to the ring center
+		float nearestX = Math.max(left, Math.min(cx, left + cellSize));
+		float nearestY = Math.max(top, Math.min(cy, top + cellSize));
+
+		// farthest point is the farthest corner
+		float farX = Math.max(Math.abs(cx - left), Math.abs(cx - left - cellSize));
+		float farY = Math.max(Math.abs(cy - top), Math.abs(cy - top - cellSize));
+
+		float dx = cx - nearestX, dy = cy - nearestY;
+		return dx*dx + dy*dy <= r1*r1 && farX*farX + farY*farY >= r0*r0;
+	}
+}
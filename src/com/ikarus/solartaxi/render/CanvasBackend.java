@@ -0,0 +1,108 @@
+package com.ikarus.solartaxi.render;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+/**
+ * Replays a {@link CommandBuffer} on a Canvas, does not allocate.
+ *
+ * @author Nikolaus Leopold
+ */
+public class CanvasBackend implements RenderBackend {
+
+	private Canvas canvas;
+
+	// canvas pixels per recorded unit, below 1 if the surface is smaller than the recorded frame
+	private float scale = 1;
+
+	// reused for the recorded matrices and rectangles
+	private final Matrix matrix = new Matrix();
+	private final float[] values = new float[9];
+	private final RectF rect = new RectF();
+
+	public CanvasBackend() {
+		values[Matrix.MPERSP_2] = 1;
+	}
+
+	/**
+	 * @param canvas canvas the commands are drawn on, null to let go of it
+	 */
+	public void setCanvas(Canvas canvas) {
+		this.canvas = canvas;
+		if (canvas != null && scale != 1) {
+			setMatrix(null, 0);
+		}
+	}
+
+	/**
+	 * @param scale canvas pixels per recorded unit, applied to all recorded matrices
+	 * of the next canvas, e.g. when drawing at reduced resolution
+	 */
+	public void setScale(float scale) {
+		this.scale = scale;
+	}
+
+	@Override
+	public void setMatrix(float[] affine, int offset) {
+		if (scale == 1) {
+			canvas.setMatrix(affine == null ? null : load(affine, offset));
+			return;
+		}
+		if (affine == null) {
+			matrix.reset();
+		} else {
+			load(affine, offset);
+		}
+		matrix.postScale(scale, scale);
+		canvas.setMatrix(matrix);
+	}
+
+	@Override
+	public void drawPaint(Object paint) {
+		canvas.drawPaint((Paint) paint);
+	}
+
+	@Override
+	public void drawBitmap(Object bitmap, float[] affine, int offset, Object paint) {
+		canvas.drawBitmap((Bitmap) bitmap, load(affine, offset), (Paint) paint);
+	}
+
+	@Override
+	public void drawBitmap(Object bitmap, float left, float top, Object paint) {
+		canvas.drawBitmap((Bitmap) bitmap, left, top, (Paint) paint);
+	}
+
+	@Override
+	public void drawBitmap(Object bitmap, float left, float top, float right, float bottom, Object paint) {
+		rect.set(left, top, right, bottom);
+		canvas.drawBitmap((Bitmap) bitmap, null, rect, (Paint) paint);
+	}
+
+	@Override
+	public void drawLines(float[] points, int offset, int count, Object paint) {
+		canvas.drawLines(points, offset, count, (Paint) paint);
+	}
+
+	@Override
+	public void drawText(String text, float x, float y, Object paint) {
+		canvas.drawText(text, x, y, (Paint) paint);
+	}
+
+	@Override
+	public void drawRoundRect(float left, float top, float right, float bottom, float rx, float ry, Object paint) {
+		rect.set(left, top, right, bottom);
+		canvas.drawRoundRect(rect, rx, ry, (Paint) paint);
+	}
+
+	/**
+	 * @return the reused matrix set to six recorded values
+	 */
+	private Matrix load(float[] affine, int offset) {
+		System.arraycopy(affine, offset, values, 0, 6);
+		matrix.setValues(values);
+		return matrix;
+	}
+}
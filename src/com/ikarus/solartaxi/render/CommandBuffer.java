@@ -0,0 +1,264 @@
+package com.ikarus.solartaxi.render;
+
+import java.util.Arrays;
+
+import com.ikarus.solartaxi.AllocationCheck;
+
+/**
+ * Draw commands of one frame in flat arrays, to be replayed on a {@link RenderBackend}.
+ * Each command is a row of ints (opcode, bitmap or other reference, paint reference,
+ * offset of its float arguments and two int arguments), floats and references are
+ * kept in their own arrays. The arrays grow when a frame needs more room and are
+ * reused by the following frames, so recording does not allocate once they are large
+ * enough.<br>
+ * Bitmap draws between {@link #beginUnordered()} and {@link #endUnordered()} may be
+ * reordered, they are grouped by bitmap so the backend switches bitmaps less often.<br>
+ * References are kept, not copied: bitmaps, paints and arrays must not change until
+ * the buffer is replayed. Plain Java without Android dependencies.
+ *
+ * @author Nikolaus Leopold
+ */
+public class CommandBuffer {
+
+	// opcodes
+	private final static int SET_MATRIX = 0;
+	private final static int DRAW_PAINT = 1;
+	private final static int BITMAP_MATRIX = 2;
+	private final static int BITMAP_AT = 3;
+	private final static int BITMAP_RECT = 4;
+	private final static int LINES = 5;
+	private final static int TEXT = 6;
+	private final static int ROUND_RECT = 7;
+
+	// ints per command: opcode, reference, paint reference, float offset, two int arguments
+	private final static int STRIDE = 6;
+
+	private int[] ops = new int[64*STRIDE];
+	private float[] args = new float[256];
+	private Object[] refs = new Object[128];
+	private int commandCount, argCount, refCount;
+
+	// first command of the open unordered section, -1 if none is open
+	private int unorderedStart = -1;
+
+	// reordering scratch, sort keys of the commands in a section and their rows
+	private long[] keys = new long[0];
+	private int[] rows = new int[0];
+
+	/**
+	 * Drop all commands, e.g. at the start of a frame. References are released.
+	 */
+	public void reset() {
+		for (int i = 0; i < refCount; i++) {
+			refs[i] = null;
+		}
+		commandCount = argCount = refCount = 0;
+		unorderedStart = -1;
+	}
+
+	/**
+	 * @return number of commands recorded since the last reset
+	 */
+	public int size() {
+		return commandCount;
+	}
+
+	/**
+	 * Matrix applied to all following commands
+	 * @param values 3x3 matrix in row major order (as by android.graphics.Matrix.getValues()),
+	 * perspective is ignored, null for the identity matrix
+	 */
+	public void setMatrix(float[] values) {
+		int row = add(SET_MATRIX, null, null);
+		if (values == null) {
+			ops[row + 3] = -1;
+		} else {
+			addAffine(values);
+		}
+	}
+
+	public void drawPaint(Object paint) {
+		add(DRAW_PAINT, null, paint);
+	}
+
+	/**
+	 * @param values 3x3 matrix of the bitmap as in {@link #setMatrix(float[])}
+	 */
+	public void drawBitmap(Object bitmap, float[] values, Object paint) {
+		add(BITMAP_MATRIX, bitmap, paint);
+		addAffine(values);
+	}
+
+	public void drawBitmap(Object bitmap, float left, float top, Object paint) {
+		add(BITMAP_AT, bitmap, paint);
+		addArg(left);
+		addArg(top);
+	}
+
+	/**
+	 * Draw the whole bitmap scaled into a rectangle
+	 */
+	public void drawBitmap(Object bitmap, float left, float top, float right, float bottom, Object paint) {
+		add(BITMAP_RECT, bitmap, paint);
+		addArg(left);
+		addArg(top);
+		addArg(right);
+		addArg(bottom);
+	}
+
+	/**
+	 * @param points line end points, kept as reference
+	 */
+	public void drawLines(float[] points, int offset, int count, Object paint) {
+		int row = add(LINES, points, paint);
+		ops[row + 4] = offset;
+		ops[row + 5] = count;
+	}
+
+	public void drawText(String text, float x, float y, Object paint) {
+		add(TEXT, text, paint);
+		addArg(x);
+		addArg(y);
+	}
+
+	public void drawRoundRect(float left, float top, float right, float bottom, float rx, float ry, Object paint) {
+		add(ROUND_RECT, null, paint);
+		addArg(left);
+		addArg(top);
+		addArg(right);
+		addArg(bottom);
+		addArg(rx);
+		addArg(ry);
+	}
+
+	/**
+	 * Following bitmap draws don't overlap or their order doesn't matter, only bitmap
+	 * draws may be recorded until {@link #endUnordered()}
+	 */
+	public void beginUnordered() {
+		if (unorderedStart != -1) {
+			throw new IllegalStateException("unordered section already open");
+		}
+		unorderedStart = commandCount;
+	}
+
+	/**
+	 * Close the unordered section, its draws are grouped by bitmap, draws of the same
+	 * bitmap keep their order. Sorts the section once, O(n log n) in its length.
+	 */
+	public void endUnordered() {
+		if (unorderedStart == -1) {
+			throw new IllegalStateException("no unordered section open");
+		}
+		int start = unorderedStart, n = commandCount - start;
+		unorderedStart = -1;
+
+		if (keys.length < n) {
+			AllocationCheck.allowAllocation();
+			keys = new long[n];
+			rows = new int[n*STRIDE];
+		}
+
+		// identity hash of the bitmap in the high bits and position in the low bits, bitmaps
+		// with the same hash would only be interleaved, which the section allows anyway
+		for (int i = 0; i < n; i++) {
+			keys[i] = (long) System.identityHashCode(refs[ops[(start + i)*STRIDE + 1]]) << 32 | i;
+		}
+		Arrays.sort(keys, 0, n);
+
+		System.arraycopy(ops, start*STRIDE, rows, 0, n*STRIDE);
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(rows, (int) keys[i]*STRIDE, ops, (start + i)*STRIDE, STRIDE);
+		}
+	}
+
+	/**
+	 * Issue all commands in order
+	 * @param backend target of the commands
+	 */
+	public void replay(RenderBackend backend) {
+		for (int c = 0; c < commandCount*STRIDE; c += STRIDE) {
+			Object ref = refs[ops[c + 1]], paint = refs[ops[c + 2]];
+			int a = ops[c + 3];
+
+			switch (ops[c]) {
+			case SET_MATRIX:
+				backend.setMatrix(a == -1 ? null : args, a);
+				break;
+			case DRAW_PAINT:
+				backend.drawPaint(paint);
+				break;
+			case BITMAP_MATRIX:
+				backend.drawBitmap(ref, args, a, paint);
+				break;
+			case BITMAP_AT:
+				backend.drawBitmap(ref, args[a], args[a+1], paint);
+				break;
+			case BITMAP_RECT:
+				backend.drawBitmap(ref, args[a], args[a+1], args[a+2], args[a+3], paint);
+				break;
+			case LINES:
+				backend.drawLines((float[]) ref, ops[c + 4], ops[c + 5], paint);
+				break;
+			case TEXT:
+				backend.drawText((String) ref, args[a], args[a+1], paint);
+				break;
+			case ROUND_RECT:
+				backend.drawRoundRect(args[a], args[a+1], args[a+2], args[a+3], args[a+4], args[a+5], paint);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Append a command row
+	 * @return index of the row in ops
+	 */
+	private int add(int opcode, Object ref, Object paint) {
+		if (unorderedStart != -1 && opcode != BITMAP_MATRIX && opcode != BITMAP_AT && opcode != BITMAP_RECT) {
+			throw new IllegalStateException("only bitmaps may be drawn in an unordered section");
+		}
+		if ((commandCount + 1)*STRIDE > ops.length) {
+			AllocationCheck.allowAllocation();
+			int[] grown = new int[ops.length*2];
+			System.arraycopy(ops, 0, grown, 0, ops.length);
+			ops = grown;
+		}
+		if (refCount + 2 > refs.length) {
+			AllocationCheck.allowAllocation();
+			Object[] grown = new Object[refs.length*2];
+			System.arraycopy(refs, 0, grown, 0, refs.length);
+			refs = grown;
+		}
+
+		int row = commandCount*STRIDE;
+		ops[row] = opcode;
+		ops[row + 1] = refCount;
+		refs[refCount++] = ref;
+		ops[row + 2] = refCount;
+		refs[refCount++] = paint;
+		ops[row + 3] = argCount;
+		ops[row + 4] = ops[row + 5] = 0;
+		++commandCount;
+		return row;
+	}
+
+	private void addArg(float value) {
+		if (argCount == args.length) {
+			AllocationCheck.allowAllocation();
+			float[] grown = new float[args.length*2];
+			System.arraycopy(args, 0, grown, 0, args.length);
+			args = grown;
+		}
+		args[argCount++] = value;
+	}
+
+	/**
+	 * Append the affine part of a 3x3 matrix
+	 */
+	private void addAffine(float[] values) {
+		for (int i = 0; i < 6; i++) {
+			addArg(values[i]);
+		}
+	}
+}
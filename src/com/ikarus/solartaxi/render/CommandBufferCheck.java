@@ -0,0 +1,107 @@
+package com.ikarus.solartaxi.render;
+
+import java.util.Random;
+
+/**
+ * Checks the bitmap grouping of {@link CommandBuffer} on a desktop JVM: unordered sections of
+ * random bitmap draws are recorded and replayed on a {@link DrawCallCounter}, every draw must
+ * still be there, each bitmap must be switched to only once and draws of the same bitmap must
+ * keep their order. Also prints the time to record and group a section by its length.
+ *
+ * @author Nikolaus Leopold
+ */
+public class CommandBufferCheck {
+
+	private final static int WARMUP_ROUNDS = 200;
+
+	/**
+	 * Arguments: [bitmaps] [rounds] [seed]
+	 */
+	public static void main(String[] args) {
+		int bitmapCount = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+		Object[] bitmaps = new Object[bitmapCount];
+		for (int i = 0; i < bitmapCount; i++) {
+			bitmaps[i] = new Object();
+		}
+
+		CommandBuffer commands = new CommandBuffer();
+		DrawCallCounter counter = new DrawCallCounter();
+		OrderCheck order = new OrderCheck(bitmaps);
+		Random random = new Random(seed);
+
+		for (int n = 64; n <= 4096; n *= 4) {
+			for (int r = 0; r < WARMUP_ROUNDS; r++) {
+				record(commands, bitmaps, n, random);
+			}
+
+			long time = 0;
+			for (int r = 0; r < rounds; r++) {
+				long start = System.nanoTime();
+				record(commands, bitmaps, n, random);
+				time += System.nanoTime() - start;
+			}
+
+			counter.reset();
+			commands.replay(counter);
+			if (counter.getBitmapDraws() != n || counter.getBitmapSwitches() != counter.getDistinctBitmaps()) {
+				throw new IllegalStateException(n + " draws: " + counter.getBitmapDraws() + " replayed, "
+						+ counter.getBitmapSwitches() + " switches for " + counter.getDistinctBitmaps() + " bitmaps");
+			}
+			order.reset();
+			commands.replay(order);
+
+			System.out.printf("%5d draws, %2d bitmaps: %3d switches, %8.1f us per section%n",
+					n, counter.getDistinctBitmaps(), counter.getBitmapSwitches(), time/1000.0/rounds);
+		}
+	}
+
+	/**
+	 * Record one unordered section of n draws with random bitmaps, the x-coordinate is the draw's position
+	 */
+	private static void record(CommandBuffer commands, Object[] bitmaps, int n, Random random) {
+		commands.reset();
+		commands.beginUnordered();
+		for (int i = 0; i < n; i++) {
+			commands.drawBitmap(bitmaps[random.nextInt(bitmaps.length)], i, 0, null);
+		}
+		commands.endUnordered();
+	}
+
+	/**
+	 * Fails if a bitmap is drawn at a lower position than its draw before
+	 */
+	private static class OrderCheck extends DrawCallCounter {
+
+		private final Object[] bitmaps;
+		private final float[] last;
+
+		OrderCheck(Object[] bitmaps) {
+			this.bitmaps = bitmaps;
+			this.last = new float[bitmaps.length];
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			for (int i = 0; i < last.length; i++) {
+				last[i] = -1;
+			}
+		}
+
+		@Override
+		public void drawBitmap(Object bitmap, float left, float top, Object paint) {
+			super.drawBitmap(bitmap, left, top, paint);
+			for (int i = 0; i < bitmaps.length; i++) {
+				if (bitmaps[i] == bitmap) {
+					if (left < last[i]) {
+						throw new IllegalStateException("draws of bitmap " + i + " reordered: " + left + " after " + last[i]);
+					}
+					last[i] = left;
+				}
+			}
+		}
+	}
+}
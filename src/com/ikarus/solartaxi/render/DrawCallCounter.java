@@ -0,0 +1,122 @@
+package com.ikarus.solartaxi.render;
+
+/**
+ * Headless {@link RenderBackend} that only counts what a replayed frame would cost:
+ * draw calls, matrix changes, switches to another bitmap and distinct bitmaps.
+ * Runs on a plain JVM, for tests and benchmarks of the recorded frames.
+ *
+ * @author Nikolaus Leopold
+ */
+public class DrawCallCounter implements RenderBackend {
+
+	// distinct bitmaps tracked per frame, more are counted as distinct without comparing
+	private final static int MAX_TRACKED_BITMAPS = 256;
+
+	private int drawCalls, bitmapDraws, textDraws, matrixChanges, bitmapSwitches, distinctBitmaps;
+	private Object lastBitmap;
+	private final Object[] bitmaps = new Object[MAX_TRACKED_BITMAPS];
+
+	/**
+	 * Reset all counts, e.g. before replaying the next frame
+	 */
+	public void reset() {
+		drawCalls = bitmapDraws = textDraws = matrixChanges = bitmapSwitches = 0;
+		for (int i = 0; i < Math.min(distinctBitmaps, MAX_TRACKED_BITMAPS); i++) {
+			bitmaps[i] = null;
+		}
+		distinctBitmaps = 0;
+		lastBitmap = null;
+	}
+
+	@Override
+	public void setMatrix(float[] affine, int offset) {
+		++matrixChanges;
+	}
+
+	@Override
+	public void drawPaint(Object paint) {
+		++drawCalls;
+	}
+
+	@Override
+	public void drawBitmap(Object bitmap, float[] affine, int offset, Object paint) {
+		countBitmap(bitmap);
+	}
+
+	@Override
+	public void drawBitmap(Object bitmap, float left, float top, Object paint) {
+		countBitmap(bitmap);
+	}
+
+	@Override
+	public void drawBitmap(Object bitmap, float left, float top, float right, float bottom, Object paint) {
+		countBitmap(bitmap);
+	}
+
+	@Override
+	public void drawLines(float[] points, int offset, int count, Object paint) {
+		++drawCalls;
+	}
+
+	@Override
+	public void drawText(String text, float x, float y, Object paint) {
+		++drawCalls;
+		++textDraws;
+	}
+
+	@Override
+	public void drawRoundRect(float left, float top, float right, float bottom, float rx, float ry, Object paint) {
+		++drawCalls;
+	}
+
+	/**
+	 * @return all draw calls, including bitmaps and text
+	 */
+	public int getDrawCalls() {
+		return drawCalls;
+	}
+
+	public int getBitmapDraws() {
+		return bitmapDraws;
+	}
+
+	public int getTextDraws() {
+		return textDraws;
+	}
+
+	public int getMatrixChanges() {
+		return matrixChanges;
+	}
+
+	/**
+	 * @return bitmap draws with another bitmap than the bitmap draw before
+	 */
+	public int getBitmapSwitches() {
+		return bitmapSwitches;
+	}
+
+	public int getDistinctBitmaps() {
+		return distinctBitmaps;
+	}
+
+	private void countBitmap(Object bitmap) {
+		++drawCalls;
+		++bitmapDraws;
+		if (bitmap == lastBitmap) {
+			return;
+		}
+		++bitmapSwitches;
+		lastBitmap = bitmap;
+
+		int tracked = Math.min(distinctBitmaps, MAX_TRACKED_BITMAPS);
+		for (int i = 0; i < tracked; i++) {
+			if (bitmaps[i] == bitmap) {
+				return;
+			}
+		}
+		if (tracked < MAX_TRACKED_BITMAPS) {
+			bitmaps[tracked] = bitmap;
+		}
+		++distinctBitmaps;
+	}
+}
@@ -0,0 +1,109 @@
+package com.ikarus.solartaxi.render;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+/**
+ * {@link Renderer} that records the draws of a frame into a {@link CommandBuffer},
+ * matrices and rectangles are copied into the buffer. Does not allocate once the
+ * buffer is large enough.
+ *
+ * @author Nikolaus Leopold
+ */
+public class RecordingRenderer implements Renderer {
+
+	private final CommandBuffer buffer;
+	private final float[] values = new float[9];
+	private int width, height;
+
+	/**
+	 * @param buffer buffer the draws are recorded into
+	 */
+	public RecordingRenderer(CommandBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Start recording a new frame, the buffer is reset
+	 * @param width width of the screen in pixels
+	 * @param height height of the screen in pixels
+	 */
+	public void begin(int width, int height) {
+		this.width = width;
+		this.height = height;
+		buffer.reset();
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public void setMatrix(Matrix matrix) {
+		if (matrix == null) {
+			buffer.setMatrix(null);
+		} else {
+			matrix.getValues(values);
+			buffer.setMatrix(values);
+		}
+	}
+
+	@Override
+	public void drawPaint(Paint paint) {
+		buffer.drawPaint(paint);
+	}
+
+	@Override
+	public void drawBitmap(Bitmap bitmap, Matrix matrix, Paint paint) {
+		matrix.getValues(values);
+		buffer.drawBitmap(bitmap, values, paint);
+	}
+
+	@Override
+	public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+		buffer.drawBitmap(bitmap, left, top, paint);
+	}
+
+	@Override
+	public void drawBitmap(Bitmap bitmap, RectF dst, Paint paint) {
+		buffer.drawBitmap(bitmap, dst.left, dst.top, dst.right, dst.bottom, paint);
+	}
+
+	@Override
+	public void drawLines(float[] points, Paint paint) {
+		buffer.drawLines(points, 0, points.length, paint);
+	}
+
+	@Override
+	public void drawLines(float[] points, int offset, int count, Paint paint) {
+		buffer.drawLines(points, offset, count, paint);
+	}
+
+	@Override
+	public void drawText(String text, float x, float y, Paint paint) {
+		buffer.drawText(text, x, y, paint);
+	}
+
+	@Override
+	public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {
+		buffer.drawRoundRect(rect.left, rect.top, rect.right, rect.bottom, rx, ry, paint);
+	}
+
+	@Override
+	public void beginUnordered() {
+		buffer.beginUnordered();
+	}
+
+	@Override
+	public void endUnordered() {
+		buffer.endUnordered();
+	}
+}
@@ -0,0 +1,36 @@
+package com.ikarus.solartaxi.render;
+
+/**
+ * Target a {@link CommandBuffer} is replayed on, one call per recorded command.
+ * Bitmaps and paints are passed as recorded, a backend on Android casts them to
+ * its own types, a headless one only compares them.<br>
+ * Matrices are affine, six floats in the order scale x, skew x, translate x,
+ * skew y, scale y, translate y.
+ *
+ * @author Nikolaus Leopold
+ */
+public interface RenderBackend {
+
+	/**
+	 * @param affine array holding the matrix, null for the identity matrix
+	 * @param offset index of the first of the six matrix values
+	 */
+	void setMatrix(float[] affine, int offset);
+
+	void drawPaint(Object paint);
+
+	void drawBitmap(Object bitmap, float[] affine, int offset, Object paint);
+
+	void drawBitmap(Object bitmap, float left, float top, Object paint);
+
+	/**
+	 * Draw the whole bitmap scaled into a rectangle
+	 */
+	void drawBitmap(Object bitmap, float left, float top, float right, float bottom, Object paint);
+
+	void drawLines(float[] points, int offset, int count, Object paint);
+
+	void drawText(String text, float x, float y, Object paint);
+
+	void drawRoundRect(float left, float top, float right, float bottom, float rx, float ry, Object paint);
+}
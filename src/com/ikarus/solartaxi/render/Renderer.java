@@ -0,0 +1,58 @@
+package com.ikarus.solartaxi.render;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+/**
+ * Drawing calls of the game screen, the part of the Canvas interface the game uses.
+ * Matrices and rectangles passed in may be changed right after the call, bitmaps,
+ * paints and arrays have to stay as they are until the frame is shown.
+ *
+ * @author Nikolaus Leopold
+ */
+public interface Renderer {
+
+	/**
+	 * @return width of the screen in pixels
+	 */
+	int getWidth();
+
+	/**
+	 * @return height of the screen in pixels
+	 */
+	int getHeight();
+
+	/**
+	 * @param matrix applied to all following draws, null for the identity matrix
+	 */
+	void setMatrix(Matrix matrix);
+
+	void drawPaint(Paint paint);
+
+	void drawBitmap(Bitmap bitmap, Matrix matrix, Paint paint);
+
+	void drawBitmap(Bitmap bitmap, float left, float top, Paint paint);
+
+	/**
+	 * Draw the whole bitmap scaled into a rectangle
+	 */
+	void drawBitmap(Bitmap bitmap, RectF dst, Paint paint);
+
+	void drawLines(float[] points, Paint paint);
+
+	void drawLines(float[] points, int offset, int count, Paint paint);
+
+	void drawText(String text, float x, float y, Paint paint);
+
+	void drawRoundRect(RectF rect, float rx, float ry, Paint paint);
+
+	/**
+	 * Following bitmap draws may be drawn in any order, only bitmaps may be drawn
+	 * until {@link #endUnordered()}
+	 */
+	void beginUnordered();
+
+	void endUnordered();
+}
@@ -0,0 +1,260 @@
+package com.ikarus.solartaxi.simulation;
+
+import com.ikarus.solartaxi.AllocationCheck;
+import com.ikarus.solartaxi.Spaceship;
+import com.ikarus.solartaxi.TaxiFleet;
+import com.ikarus.solartaxi.TaxiListener;
+import com.ikarus.solartaxi.level.Level;
+
+/**
+ * The game rules without any Android dependencies: taxi movement, levels, credits
+ * and the end of the game. Steps the world by a given time step with input taken
+ * from an {@link InputSource}, so the same level seed, input and time steps always
+ * give the same game. Used by the GameEngine on the device and can run on a plain
+ * JVM for batch analysis.<br>
+ * Not thread safe, input has to be handed in through the InputSource.
+ *
+ * @author Nikolaus Leopold
+ */
+public class GameSimulation {
+
+	// end states, as passed on to the EndOfGameActivity
+	public final static int RUNNING = -1;
+	public final static int CRASHED_PLANET = 0;
+	public final static int CRASHED_SUN = 1;
+	public final static int OUT_OF_BATTERY = 2;
+	public final static int CLEARED = 3;
+
+	private Level level;
+	private Spaceship taxi;
+
+	// computer controlled rivals, null if none
+	private TaxiFleet rivals;
+	private int rivalCount;
+	private long rivalSeed;
+
+	private InputSource input;
+	private TaxiListener listener;
+
+	// number of steps simulated, simulated time and time the current level started in seconds
+	private long tick;
+	private double time, levelStartTime;
+
+	// credits of all finished levels
+	private int lastLevelsScore;
+
+	private int endState;
+
+	// wait for precomputed gravity and streamed level content before simulating, for reproducible runs
+	private boolean waitForGravityField;
+
+	/**
+	 * Constructor
+	 * @param firstLevel level to start in
+	 * @param input player input, may be null for no input
+	 */
+	public GameSimulation(Level firstLevel, InputSource input) {
+		this.input = input;
+		this.endState = RUNNING;
+		startLevel(firstLevel);
+	}
+
+	/**
+	 * Simulate one time step, does nothing once the game has ended.
+	 * @param dt simulated time step in seconds
+	 */
+	public void step(float dt) {
+
+		if (endState != RUNNING) {
+			return;
+		}
+
+		// the gravity field of a new level is built, on this thread if it has to be waited for anyway
+		if (waitForGravityField) {
+			if (level.getGravityField() == null) {
+				level.awaitGravityField();
+			}
+		} else {
+			level.startGravityField();
+		}
+
+		if (input != null) {
+			input.poll(this, tick);
+		}
+
+		// levels streaming their content load what is near the taxi
+		level.track(taxi.getX(), taxi.getY(), waitForGravityField);
+
+		taxi.update(level, dt);
+		taxi.checkWorldBoundaryCollision(level.getMinX(), level.getMinY(), level.getMaxX(), level.getMaxY());
+
+		if (rivals != null) {
+			rivals.update(level, taxi, dt);
+		}
+
+		++tick;
+		time += dt;
+
+		// orbiting bodies are moved to the new time when looked up
+		level.setTime(time - levelStartTime);
+
+		// Crash with Planets
+		if (taxi.isCrashed()) {
+			endState = CRASHED_PLANET;
+		}
+		// Crash with Sun
+		else if (taxi.isIkarused()) {
+			endState = CRASHED_SUN;
+		}
+		// Battery Dead
+		else if (taxi.isOutOfBattery()) {
+			endState = OUT_OF_BATTERY;
+		}
+		// level cleared
+		else if (taxi.getCredits() > level.getRequiredCredits()) {
+			nextLevel();
+		}
+	}
+
+	/**
+	 * Apply thrust to taxi, each thruster can be set independently to
+	 * control translation/rotation. Call from {@link InputSource#poll(GameSimulation, long)}.
+	 * @param thrustLeft thrust of left thruster
+	 * @param thrustRight thrust of right thruster
+	 */
+	public void applyThrust(float thrustLeft, float thrustRight) {
+		if (!taxi.isOutOfBattery()) {
+			taxi.applyThrust(thrustLeft, thrustRight);
+		}
+	}
+
+	/**
+	 * @return level currently played
+	 */
+	public Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return taxi of the current level
+	 */
+	public Spaceship getTaxi() {
+		return taxi;
+	}
+
+	/**
+	 * @return computer controlled rival taxis, null if there are none
+	 */
+	public TaxiFleet getRivals() {
+		return rivals;
+	}
+
+	/**
+	 * Let computer controlled taxis compete with the player, they start on random planets
+	 * of the current level and again at the start of every following level.
+	 * @param count number of rivals, 0 for none
+	 * @param seed seed of start positions and decisions of the rivals
+	 */
+	public void setRivals(int count, long seed) {
+		rivalCount = count;
+		rivalSeed = seed;
+		spawnRivals();
+	}
+
+	/**
+	 * @return number of steps simulated
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * @return simulated time in seconds
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * @return credits of all levels played so far
+	 */
+	public int getScore() {
+		return lastLevelsScore + taxi.getCredits();
+	}
+
+	/**
+	 * @return RUNNING, or how the game ended: CRASHED_PLANET, CRASHED_SUN, OUT_OF_BATTERY or CLEARED
+	 */
+	public int getEndState() {
+		return endState;
+	}
+
+	/**
+	 * @return whether the game has ended
+	 */
+	public boolean isFinished() {
+		return endState != RUNNING;
+	}
+
+	/**
+	 * @param listener receives taxi events, e.g. to play sounds, null for none
+	 */
+	public void setListener(TaxiListener listener) {
+		this.listener = listener;
+		taxi.setListener(listener);
+	}
+
+	/**
+	 * @param wait whether to wait for the precomputed gravity of each level and for level content
+	 * streamed in the background, otherwise the taxi moves slightly different until it is ready
+	 */
+	public void setWaitForGravityField(boolean wait) {
+		this.waitForGravityField = wait;
+	}
+
+	/**
+	 * If the current level points to a next level, continue with that one,
+	 * if there is no more level, the game ends victoriously.
+	 */
+	private void nextLevel() {
+
+		AllocationCheck.allowAllocation();
+		Level nextLevel = level.getNextLevel();
+
+		if (nextLevel != null) {
+			lastLevelsScore += taxi.getCredits();
+			startLevel(nextLevel);
+		} else {
+			// Game Cleared
+			endState = CLEARED;
+		}
+	}
+
+	/**
+	 * Place a new taxi at the level start
+	 */
+	private void startLevel(Level level) {
+		AllocationCheck.allowAllocation();
+		this.level = level;
+		levelStartTime = time;
+
+		taxi = new Spaceship(level.getTaxiStartPosX(), level.getTaxiStartPosY(), level.getTaxiStartOrientation());
+		taxi.setGravityFactor(level.getMetrics().gravityFactor);
+		taxi.setListener(listener);
+
+		spawnRivals();
+	}
+
+	/**
+	 * Place the rivals in the current level
+	 */
+	private void spawnRivals() {
+		if (rivalCount == 0) {
+			rivals = null;
+			return;
+		}
+
+		rivals = new TaxiFleet(rivalCount, level.getMetrics().taxiThrust, level.getMetrics().gravityFactor, rivalSeed);
+		rivals.spawn(level);
+	}
+}
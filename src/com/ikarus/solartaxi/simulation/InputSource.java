@@ -0,0 +1,18 @@
+package com.ikarus.solartaxi.simulation;
+
+/**
+ * Provides the player input of a {@link GameSimulation}, e.g. touch events queued by the
+ * game view, a recorded input stream or a scripted policy.
+ *
+ * @author Nikolaus Leopold
+ */
+public interface InputSource {
+
+	/**
+	 * Called at the beginning of every simulation step, apply input for this step
+	 * with {@link GameSimulation#applyThrust(float, float)}.
+	 * @param simulation simulation to apply input to
+	 * @param tick number of the step about to be simulated, starting at 0
+	 */
+	public void poll(GameSimulation simulation, long tick);
+}
@@ -0,0 +1,141 @@
+package com.ikarus.solartaxi.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Outcome distributions of a batch of simulated games, see {@link MonteCarloRunner}.
+ *
+ * @author Nikolaus Leopold
+ */
+public class MonteCarloReport {
+
+	private final int games;
+
+	// number of games per end state (GameSimulation.CRASHED_PLANET to CLEARED),
+	// games still running at the time limit are counted separately
+	private final int[] endStateCounts = new int[4];
+	private int timedOutCount;
+
+	// sorted, only of games that cleared the level
+	private final double[] clearTimes;
+
+	// sorted, of all games
+	private final double[] creditsPerMinute;
+
+	/**
+	 * Constructor, evaluates the results of all games
+	 * @param endStates end state per game, GameSimulation.RUNNING if timed out
+	 * @param times simulated time per game in seconds
+	 * @param credits credits earned per game
+	 */
+	MonteCarloReport(int[] endStates, double[] times, int[] credits) {
+		games = endStates.length;
+
+		int cleared = 0;
+		for (int i = 0; i < games; i++) {
+			if (endStates[i] == GameSimulation.RUNNING) {
+				++timedOutCount;
+			} else {
+				++endStateCounts[endStates[i]];
+			}
+			if (endStates[i] == GameSimulation.CLEARED) {
+				++cleared;
+			}
+		}
+
+		clearTimes = new double[cleared];
+		creditsPerMinute = new double[games];
+		for (int i = 0, j = 0; i < games; i++) {
+			if (endStates[i] == GameSimulation.CLEARED) {
+				clearTimes[j++] = times[i];
+			}
+			creditsPerMinute[i] = times[i] > 0 ? credits[i] / (times[i]/60) : 0;
+		}
+		Arrays.sort(clearTimes);
+		Arrays.sort(creditsPerMinute);
+	}
+
+	/**
+	 * @return number of games played
+	 */
+	public int getGames() {
+		return games;
+	}
+
+	/**
+	 * @param endState GameSimulation.CRASHED_PLANET, CRASHED_SUN, OUT_OF_BATTERY or CLEARED
+	 * @return number of games that ended this way
+	 */
+	public int getEndStateCount(int endState) {
+		return endStateCounts[endState];
+	}
+
+	/**
+	 * @return number of games still running at the time limit
+	 */
+	public int getTimedOutCount() {
+		return timedOutCount;
+	}
+
+	/**
+	 * @return fraction of games that ended with an empty battery
+	 */
+	public double getBatteryDeathRate() {
+		return games == 0 ? 0 : (double) endStateCounts[GameSimulation.OUT_OF_BATTERY] / games;
+	}
+
+	/**
+	 * @return fraction of games that cleared the level
+	 */
+	public double getClearRate() {
+		return games == 0 ? 0 : (double) clearTimes.length / games;
+	}
+
+	/**
+	 * @param p percentile in range [0, 1]
+	 * @return time to clear the level in seconds at the given percentile of all clearing games, NaN if none cleared
+	 */
+	public double getClearTime(double p) {
+		return percentile(clearTimes, p);
+	}
+
+	/**
+	 * @param p percentile in range [0, 1]
+	 * @return credits per minute at the given percentile of all games
+	 */
+	public double getCreditsPerMinute(double p) {
+		return percentile(creditsPerMinute, p);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"games: %d%n"
+				+ "cleared: %d (%.1f%%), time to clear p10/p50/p90: %s / %s / %s%n"
+				+ "crashed planet: %d, crashed sun: %d, out of battery: %d (%.1f%%), timed out: %d%n"
+				+ "credits per minute p10/p50/p90: %.0f / %.0f / %.0f",
+				games,
+				clearTimes.length, getClearRate()*100, seconds(getClearTime(0.1)), seconds(getClearTime(0.5)), seconds(getClearTime(0.9)),
+				endStateCounts[GameSimulation.CRASHED_PLANET], endStateCounts[GameSimulation.CRASHED_SUN],
+				endStateCounts[GameSimulation.OUT_OF_BATTERY], getBatteryDeathRate()*100, timedOutCount,
+				getCreditsPerMinute(0.1), getCreditsPerMinute(0.5), getCreditsPerMinute(0.9));
+	}
+
+	/**
+	 * @return time formatted in seconds, n/a for NaN (no game to take it from)
+	 */
+	private static String seconds(double time) {
+		return Double.isNaN(time) ? "n/a" : String.format("%.1fs", time);
+	}
+
+	/**
+	 * @return nearest rank percentile of sorted values, NaN if empty
+	 */
+	private static double percentile(double[] sorted, double p) {
+		if (sorted.length == 0) {
+			return Double.NaN;
+		}
+		int ind = (int) Math.ceil(p*sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, ind))];
+	}
+}
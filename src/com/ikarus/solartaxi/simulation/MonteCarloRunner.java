@@ -0,0 +1,186 @@
+package com.ikarus.solartaxi.simulation;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ikarus.solartaxi.level.Level;
+import com.ikarus.solartaxi.level.Level1;
+import com.ikarus.solartaxi.level.LevelMetrics;
+
+/**
+ * Plays many seeded games of a level headless and in parallel to find out how
+ * hard it is, see {@link MonteCarloReport}. A game ends when the level is cleared,
+ * the taxi is lost or the time limit is reached.<br>
+ * Games are independent, each worker thread takes the next few games as soon as it is
+ * done and writes the results to its own slots, so throughput grows with the number
+ * of cores. Results only depend on the seed, not on the number of threads.
+ *
+ * @author Nikolaus Leopold
+ */
+public class MonteCarloRunner {
+
+	// games a worker takes at once, small enough to balance uneven game lengths
+	private final static int CHUNK_SIZE = 8;
+
+	/**
+	 * Creates a fresh level per game, levels hold game state (passengers)
+	 */
+	public interface LevelFactory {
+		public Level create(long seed);
+	}
+
+	/**
+	 * Creates the player input per game, e.g. a {@link RandomThrustPolicy} or a script
+	 */
+	public interface PolicyFactory {
+		public InputSource create(long seed);
+	}
+
+	private final LevelFactory levels;
+	private final PolicyFactory policies;
+
+	// simulated time step and time limit per game in seconds
+	private float dt = 1.0f/50;
+	private double maxTime = 600;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Constructor
+	 * @param levels creates the level to balance
+	 * @param policies creates the player input
+	 */
+	public MonteCarloRunner(LevelFactory levels, PolicyFactory policies) {
+		this.levels = levels;
+		this.policies = policies;
+	}
+
+	/**
+	 * @param dt simulated time step in seconds
+	 */
+	public void setTimeStep(float dt) {
+		this.dt = dt;
+	}
+
+	/**
+	 * @param maxTime simulated time after which a game is stopped, in seconds
+	 */
+	public void setMaxTime(double maxTime) {
+		this.maxTime = maxTime;
+	}
+
+	/**
+	 * @param threads number of worker threads, defaults to the number of cores
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Play all games, blocks until done.
+	 * @param games number of games
+	 * @param seed seed of the whole batch, each game gets its own seed derived from it
+	 * @return outcome distributions
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 */
+	public MonteCarloReport run(final int games, final long seed) throws InterruptedException {
+
+		// results per game, each slot written by exactly one worker
+		final int[] endStates = new int[games];
+		final double[] times = new double[games];
+		final int[] credits = new int[games];
+
+		final AtomicInteger nextGame = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<?>> workers = new ArrayList<Future<?>>(threads);
+		try {
+			for (int t = 0; t < threads; t++) {
+				workers.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						int start;
+						while ((start = nextGame.getAndAdd(CHUNK_SIZE)) < games) {
+							for (int g = start; g < Math.min(start + CHUNK_SIZE, games); g++) {
+								play(g, gameSeed(seed, g), endStates, times, credits);
+							}
+						}
+					}
+				}));
+			}
+
+			for (Future<?> worker : workers) {
+				worker.get();
+			}
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return new MonteCarloReport(endStates, times, credits);
+	}
+
+	/**
+	 * Play game g and store its result at index g
+	 */
+	private void play(int g, long seed, int[] endStates, double[] times, int[] credits) {
+
+		Level level = levels.create(seed);
+		GameSimulation simulation = new GameSimulation(level, policies.create(~seed));
+		simulation.setWaitForGravityField(true);
+
+		while (!simulation.isFinished() && simulation.getLevel() == level && simulation.getTime() < maxTime) {
+			simulation.step(dt);
+		}
+
+		// continuing with the next level counts as cleared
+		endStates[g] = simulation.getLevel() != level ? GameSimulation.CLEARED : simulation.getEndState();
+		times[g] = simulation.getTime();
+		credits[g] = simulation.getScore();
+	}
+
+	/**
+	 * Spread the game index over all bits, such that neighbouring games get unrelated seeds
+	 */
+	private static long gameSeed(long seed, int g) {
+		long z = seed + (g + 1)*0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30))*0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27))*0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Balance level 1 with random thrust on a desktop JVM.<br>
+	 * Arguments: [games] [seed] [thrust probability per step]
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+		final float probability = args.length > 2 ? Float.parseFloat(args[2]) : 0.1f;
+
+		// as on a device with density 2 (xhdpi)
+		final LevelMetrics metrics = LevelMetrics.forDensity(2);
+
+		MonteCarloRunner runner = new MonteCarloRunner(new LevelFactory() {
+			@Override
+			public Level create(long seed) {
+				return new Level1(metrics, seed);
+			}
+		}, new PolicyFactory() {
+			@Override
+			public InputSource create(long seed) {
+				return new RandomThrustPolicy(seed, metrics.taxiThrust, probability);
+			}
+		});
+
+		long start = System.nanoTime();
+		MonteCarloReport report = runner.run(games, seed);
+		System.out.println(report);
+		System.out.printf("%d threads, %.1fs%n", runner.threads, (System.nanoTime() - start)/1e9);
+	}
+}
@@ -0,0 +1,45 @@
+package com.ikarus.solartaxi.simulation;
+
+import java.util.Random;
+
+/**
+ * Input of a player pressing random thrusters: each step a thrust input is given
+ * with a fixed probability, left, right or both thrusters with equal chance.
+ *
+ * @author Nikolaus Leopold
+ */
+public class RandomThrustPolicy implements InputSource {
+
+	private final Random random;
+	private final float thrust, probability;
+
+	/**
+	 * Constructor
+	 * @param seed seed of the thrust sequence
+	 * @param thrust thrust per thruster, as R.dimen.taxi_speed
+	 * @param probability chance of a thrust input per step in range [0, 1]
+	 */
+	public RandomThrustPolicy(long seed, float thrust, float probability) {
+		this.random = new Random(seed);
+		this.thrust = thrust;
+		this.probability = probability;
+	}
+
+	@Override
+	public void poll(GameSimulation simulation, long tick) {
+		if (random.nextFloat() >= probability) {
+			return;
+		}
+
+		switch (random.nextInt(3)) {
+		case 0:
+			simulation.applyThrust(0, thrust);
+			break;
+		case 1:
+			simulation.applyThrust(thrust, 0);
+			break;
+		default:
+			simulation.applyThrust(thrust, thrust);
+		}
+	}
+}